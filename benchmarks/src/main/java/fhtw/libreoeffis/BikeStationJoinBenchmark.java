@@ -0,0 +1,62 @@
+package fhtw.libreoeffis;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks für das Zusammenführen der GBFS-Feeds von WienMobil
+ * und die Umkreissuche im Stationsindex.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BikeStationJoinBenchmark {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private byte[] informationBytes;
+    private byte[] statusBytes;
+    private JsonNode information;
+    private JsonNode status;
+    private BikeStationIndex index;
+
+    @Setup
+    public void setup() throws Exception {
+        informationBytes = Fixtures.resource("station_information.json");
+        statusBytes = Fixtures.resource("station_status.json");
+        information = mapper.readTree(informationBytes);
+        status = mapper.readTree(statusBytes);
+        index = new BikeStationIndex(WienMobileRadAPI.joinStations(information, status));
+    }
+
+    @Benchmark
+    public List<BikeStation> join() {
+        return WienMobileRadAPI.joinStations(information, status);
+    }
+
+    @Benchmark
+    public List<BikeStation> parseAndJoin() throws Exception {
+        return WienMobileRadAPI.joinStations(mapper.readTree(informationBytes), mapper.readTree(statusBytes));
+    }
+
+    @Benchmark
+    public List<BikeStationIndex.Match> nearest() {
+        // Karlsplatz; die Fixture-Stationen liegen weiter gestreut als im echten Netz
+        return index.nearest(48.200758, 16.3676, 5, 2000);
+    }
+}
@@ -0,0 +1,56 @@
+package fhtw.libreoeffis;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Lädt die Testdaten für die Benchmarks.
+ * Die JSON-Fixtures liegen als Ressourcen im Benchmark-Modul, die Haltepunkte-CSV
+ * wird aus dem Hauptprojekt gelesen.
+ */
+final class Fixtures {
+
+    private static final String HALTEPUNKTE_CSV = "src/main/java/fhtw/libreoeffis/files/wienerlinien-ogd-haltepunkte.csv";
+
+    private Fixtures() {
+    }
+
+    /**
+     * Liest eine Ressource aus dem Ordner fixtures.
+     * @param name Der Dateiname.
+     * @return Der Inhalt als Bytes.
+     * @throws IOException Wenn die Ressource fehlt.
+     */
+    static byte[] resource(String name) throws IOException {
+        try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name)) {
+            if (in == null) {
+                throw new IOException("Fixture nicht gefunden: " + name);
+            }
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Liest die Haltepunkte wie die GUI als "Name (ID: id)"-Einträge.
+     * Gesucht wird relativ zum Benchmark-Modul und zum Projektverzeichnis.
+     * @return Die sortierten Einträge.
+     * @throws IOException Wenn die CSV nicht gefunden wird.
+     */
+    static List<String> haltepunkte() throws IOException {
+        for (Path candidate : List.of(Path.of("..", HALTEPUNKTE_CSV), Path.of(HALTEPUNKTE_CSV))) {
+            if (Files.exists(candidate)) {
+                return Files.readAllLines(candidate).stream()
+                        .skip(1)
+                        .map(line -> line.split(";"))
+                        .filter(parts -> parts.length >= 2)
+                        .map(parts -> parts[1].trim() + " (ID: " + parts[0].trim() + ")")
+                        .sorted()
+                        .toList();
+            }
+        }
+        throw new IOException("Haltepunkte-CSV nicht gefunden: " + HALTEPUNKTE_CSV);
+    }
+}
@@ -0,0 +1,57 @@
+package fhtw.libreoeffis;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks für die Verarbeitung einer Monitor-Antwort der Wiener Linien:
+ * Dekodieren, Umwandeln in Transportmittel und Formatieren für die Ausgabe.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MonitorBenchmark {
+
+    private byte[] response;
+    private List<Monitor> monitors;
+
+    @Setup
+    public void setup() throws Exception {
+        response = Fixtures.resource("monitor.json");
+        monitors = MonitorDecoder.decode(new ByteArrayInputStream(response));
+    }
+
+    @Benchmark
+    public List<Monitor> decode() throws Exception {
+        return MonitorDecoder.decode(new ByteArrayInputStream(response));
+    }
+
+    @Benchmark
+    public List<Transportmittel> parseTransportmittel() {
+        return TransportmittelHelper.parseTransportmittel(monitors);
+    }
+
+    @Benchmark
+    public String formatEchtzeitDaten() {
+        return WienerLinienAPI.formatEchtzeitDaten(monitors);
+    }
+
+    @Benchmark
+    public String decodeAndFormat() throws Exception {
+        return WienerLinienAPI.formatEchtzeitDaten(MonitorDecoder.decode(new ByteArrayInputStream(response)));
+    }
+}
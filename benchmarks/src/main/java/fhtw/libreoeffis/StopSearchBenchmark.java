@@ -0,0 +1,58 @@
+package fhtw.libreoeffis;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks für die Haltestellensuche der GUI über alle Haltepunkte.
+ * Vergleicht die frühere lineare Suche (Kleinschreibung und Fuzzy-Match pro Eintrag)
+ * mit dem {@link StopSearchIndex}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StopSearchBenchmark {
+
+    @Param({"karl", "schwedenplatz", "xyz"})
+    public String searchText;
+
+    private List<String> items;
+    private StopSearchIndex index;
+
+    @Setup
+    public void setup() throws Exception {
+        items = Fixtures.haltepunkte();
+        index = new StopSearchIndex(items);
+    }
+
+    @Benchmark
+    public List<String> linearScan() {
+        return items.stream()
+                .filter(item -> StopSearchIndex.fuzzyMatch(item.toLowerCase(), searchText))
+                .toList();
+    }
+
+    @Benchmark
+    public List<String> indexSearch() {
+        return index.search(searchText, 100);
+    }
+
+    @Benchmark
+    public StopSearchIndex buildIndex() {
+        return new StopSearchIndex(items);
+    }
+}
@@ -0,0 +1,75 @@
+package fhtw.libreoeffis;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Vergleicht eine Anfrage an den TCP-Server über den Loopback-Socket ({@link TCPClient})
+ * mit dem direkten Aufruf in derselben JVM ({@link InProcessTransport}).
+ * Die Upstream-API wird durch die Monitor-Fixture ersetzt; nach der ersten Anfrage
+ * kommen die Daten aus dem Cache, gemessen wird also nur der Weg zum Server und zurück.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TcpTransportBenchmark {
+
+    private static final String STOP_ID = "4600";
+
+    private TCPCommunication server;
+    private TCPClient loopback;
+    private EchtzeitTransport direct;
+
+    @Setup
+    public void setup() throws Exception {
+        byte[] response = Fixtures.resource("monitor.json");
+        HttpTransport fixtureTransport = new HttpTransport() {
+            @Override
+            public CompletableFuture<InputStream> getStreamAsync(String url, Map<String, String> headers) {
+                return CompletableFuture.completedFuture(new ByteArrayInputStream(response));
+            }
+        };
+        WienerLinienAPI api = new WienerLinienAPI(new EchtzeitCache(), fixtureTransport);
+
+        // Port 0: freier Port, damit der Benchmark neben einer laufenden Anwendung funktioniert
+        server = new TCPCommunication(api, new TCPCommunication.ServerConfig(0, 50, Duration.ofMinutes(5), 10, Duration.ofSeconds(1)));
+        server.start();
+        loopback = new TCPClient("localhost", server.getPort());
+        direct = server.getLocalTransport();
+        loopback.request(STOP_ID);
+    }
+
+    @TearDown
+    public void tearDown() {
+        loopback.close();
+        server.shutdown();
+    }
+
+    @Benchmark
+    public String loopback() throws Exception {
+        return loopback.request(STOP_ID);
+    }
+
+    @Benchmark
+    public String direct() throws Exception {
+        return direct.request(STOP_ID);
+    }
+}
@@ -0,0 +1,121 @@
+package fhtw.libreoeffis;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Gemeinsame Dienste der Anwendung. Oberfläche, TCP-Server und Hilfsklassen verwenden
+ * dieselbe Instanz jedes Upstream-Clients und teilen sich damit HTTP-Verbindungen,
+ * den Echtzeit-Cache, das Anfragebudget, die Schutzschichten und den Poller.
+ * Der {@link ObjectMapper} ist nach der Konfiguration threadsicher und wird ebenfalls geteilt.
+ * Beim Start werden die Dienste in den gemeinsamen {@link Metrics} registriert und über
+ * den {@link MetricsServer} zum Abruf bereitgestellt.
+ */
+public final class AppContext implements AutoCloseable {
+
+    private static AppContext shared;
+
+    private final HttpTransport transport;
+    private final ObjectMapper objectMapper;
+    private final EchtzeitCache echtzeitCache;
+    private final WienerLinienAPI wienerLinienAPI;
+    private final WienMobileRadAPI wienMobileRadAPI;
+    private final HotStopPoller hotStopPoller;
+    private MetricsServer metricsServer;
+    private boolean started;
+
+    public AppContext() {
+        this(HttpTransport.shared());
+    }
+
+    /**
+     * Erstellt alle Dienste über eine vorgegebene HTTP-Schicht, z. B. für Benchmarks.
+     * @param transport Die HTTP-Schicht für alle Upstream-Clients.
+     */
+    public AppContext(HttpTransport transport) {
+        this.transport = transport;
+        this.objectMapper = new ObjectMapper();
+        this.echtzeitCache = new EchtzeitCache();
+        this.wienerLinienAPI = new WienerLinienAPI(echtzeitCache, transport);
+        this.wienMobileRadAPI = new WienMobileRadAPI(transport, objectMapper);
+        this.hotStopPoller = new HotStopPoller(wienerLinienAPI);
+    }
+
+    /**
+     * Gibt den gemeinsamen Kontext der Anwendung zurück und legt ihn beim ersten Aufruf an.
+     * @return Der gemeinsame Kontext.
+     */
+    public static synchronized AppContext shared() {
+        if (shared == null) {
+            shared = new AppContext();
+        }
+        return shared;
+    }
+
+    /**
+     * Startet die Hintergrunddienste: den {@link HotStopPoller} und den Metrik-Endpunkt.
+     * Ein erneuter Aufruf hat keine Wirkung.
+     */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        hotStopPoller.start();
+        registerMetrics();
+        metricsServer = MetricsServer.startConfigured();
+    }
+
+    private void registerMetrics() {
+        Metrics metrics = Metrics.shared();
+        metrics.bindEchtzeitCache("echtzeit", echtzeitCache);
+        for (UpstreamGuard guard : UpstreamGuard.all()) {
+            metrics.bindUpstreamGuard(guard);
+        }
+        RequestBudget budget = wienerLinienAPI.getRequestBudget();
+        metrics.gauge("libreoeffis_request_budget_available", "Verfügbare Anfragen im Budget der Monitor-API", budget::available);
+        metrics.counterFunction("libreoeffis_poller_refreshed_stops_total", "Vom HotStopPoller neu geladene Haltestellen",
+                hotStopPoller::getRefreshedStops);
+        RequestLogger logger = RequestLogger.shared();
+        if (logger != null) {
+            metrics.counterFunction("libreoeffis_request_log_dropped_total", "Wegen vollem Puffer verworfene Protokolleinträge",
+                    logger::getDropped);
+        }
+    }
+
+    /**
+     * Beendet die Hintergrunddienste.
+     */
+    @Override
+    public synchronized void close() {
+        hotStopPoller.stop();
+        if (metricsServer != null) {
+            metricsServer.close();
+            metricsServer = null;
+        }
+        started = false;
+    }
+
+    public HttpTransport getTransport() {
+        return transport;
+    }
+
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    public EchtzeitCache getEchtzeitCache() {
+        return echtzeitCache;
+    }
+
+    public WienerLinienAPI getWienerLinienAPI() {
+        return wienerLinienAPI;
+    }
+
+    public WienMobileRadAPI getWienMobileRadAPI() {
+        return wienMobileRadAPI;
+    }
+
+    public HotStopPoller getHotStopPoller() {
+        return hotStopPoller;
+    }
+}
@@ -0,0 +1,131 @@
+package fhtw.libreoeffis;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Räumlicher Index über Radstationen als gleichmäßiges Gitter.
+ * Die Koordinaten werden lokal in Meter projiziert und in Zellen fester Größe
+ * eingeteilt, sodass eine Umkreissuche nur die Zellen im Suchradius prüft.
+ * Der Index ist unveränderlich und wird bei jedem neuen Stationsstand neu gebaut.
+ */
+final class BikeStationIndex {
+
+    /**
+     * Ein Suchtreffer mit Entfernung zum Suchpunkt.
+     * @param station Die gefundene Station.
+     * @param distanceMeters Die Entfernung in Metern.
+     */
+    record Match(BikeStation station, double distanceMeters) {
+    }
+
+    static final BikeStationIndex EMPTY = new BikeStationIndex(List.of());
+
+    private static final double CELL_SIZE_METERS = 250.0;
+    private static final double EARTH_RADIUS_METERS = 6_371_000.0;
+    private static final double METERS_PER_DEGREE = Math.PI * EARTH_RADIUS_METERS / 180.0;
+    // Bezugsbreite für die Projektion (Wien); genau genug für Entfernungen im Stadtgebiet
+    private static final double REFERENCE_LATITUDE = 48.2;
+    private static final double METERS_PER_DEGREE_LON = METERS_PER_DEGREE * Math.cos(Math.toRadians(REFERENCE_LATITUDE));
+
+    private final List<BikeStation> stations;
+    private final double[] x;
+    private final double[] y;
+    private final Map<Long, int[]> cells;
+
+    BikeStationIndex(List<BikeStation> stations) {
+        this.stations = List.copyOf(stations);
+        this.x = new double[this.stations.size()];
+        this.y = new double[this.stations.size()];
+
+        Map<Long, List<Integer>> buckets = new HashMap<>();
+        for (int i = 0; i < this.stations.size(); i++) {
+            BikeStation station = this.stations.get(i);
+            x[i] = station.getLongitude() * METERS_PER_DEGREE_LON;
+            y[i] = station.getLatitude() * METERS_PER_DEGREE;
+            buckets.computeIfAbsent(cellKey(cell(x[i]), cell(y[i])), key -> new ArrayList<>()).add(i);
+        }
+
+        this.cells = new HashMap<>(buckets.size() * 2);
+        buckets.forEach((key, members) -> cells.put(key, members.stream().mapToInt(Integer::intValue).toArray()));
+    }
+
+    /**
+     * Sucht die nächstgelegenen Stationen um einen Punkt.
+     * @param latitude Die geografische Breite des Suchpunkts.
+     * @param longitude Die geografische Länge des Suchpunkts.
+     * @param k Die maximale Anzahl an Treffern.
+     * @param radiusMeters Der maximale Suchradius in Metern.
+     * @return Die Treffer, aufsteigend nach Entfernung sortiert.
+     */
+    List<Match> nearest(double latitude, double longitude, int k, double radiusMeters) {
+        if (k <= 0 || stations.isEmpty() || Double.isNaN(latitude) || Double.isNaN(longitude)) {
+            return List.of();
+        }
+
+        double qx = longitude * METERS_PER_DEGREE_LON;
+        double qy = latitude * METERS_PER_DEGREE;
+        double radiusSquared = radiusMeters * radiusMeters;
+
+        // Max-Heap über die Entfernung, enthält höchstens k Kandidaten
+        PriorityQueue<double[]> best = new PriorityQueue<>(k + 1, (a, b) -> Double.compare(b[0], a[0]));
+        long minCellX = cell(qx - radiusMeters);
+        long maxCellX = cell(qx + radiusMeters);
+        long minCellY = cell(qy - radiusMeters);
+        long maxCellY = cell(qy + radiusMeters);
+
+        // Bei sehr großem Radius ist es günstiger, alle belegten Zellen zu prüfen
+        List<int[]> candidateCells = new ArrayList<>();
+        if ((maxCellX - minCellX + 1) * (maxCellY - minCellY + 1) > cells.size()) {
+            candidateCells.addAll(cells.values());
+        } else {
+            for (long cx = minCellX; cx <= maxCellX; cx++) {
+                for (long cy = minCellY; cy <= maxCellY; cy++) {
+                    int[] members = cells.get(cellKey(cx, cy));
+                    if (members != null) {
+                        candidateCells.add(members);
+                    }
+                }
+            }
+        }
+
+        for (int[] members : candidateCells) {
+            for (int i : members) {
+                double dx = x[i] - qx;
+                double dy = y[i] - qy;
+                double distanceSquared = dx * dx + dy * dy;
+                if (distanceSquared > radiusSquared) {
+                    continue;
+                }
+                if (best.size() < k) {
+                    best.add(new double[]{distanceSquared, i});
+                } else if (distanceSquared < best.peek()[0]) {
+                    best.poll();
+                    best.add(new double[]{distanceSquared, i});
+                }
+            }
+        }
+
+        List<Match> matches = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            double[] candidate = best.poll();
+            matches.add(0, new Match(stations.get((int) candidate[1]), Math.sqrt(candidate[0])));
+        }
+        return matches;
+    }
+
+    int size() {
+        return stations.size();
+    }
+
+    private static long cell(double meters) {
+        return (long) Math.floor(meters / CELL_SIZE_METERS);
+    }
+
+    private static long cellKey(long cellX, long cellY) {
+        return (cellX << 32) ^ (cellY & 0xffffffffL);
+    }
+}
@@ -0,0 +1,237 @@
+package fhtw.libreoeffis;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.util.Duration;
+
+/**
+ * Abfahrtstafel der Oberfläche als {@link ObservableList}, die nur an den geänderten Stellen
+ * aktualisiert wird: Jeder neue Stand einer Haltestelle wird mit dem angezeigten verglichen
+ * ({@link DepartureDelta}) und nur neue, geänderte oder weggefallene Zeilen werden ersetzt.
+ * Die angezeigten Haltestellen werden beim {@link HotStopPoller} angeheftet, dessen Durchläufe
+ * die Tafel aktuell halten; dazwischen zählt sie die Countdowns jede Sekunde lokal herunter.
+ * Alle Methoden außer dem Beobachter des Pollers laufen im JavaFX-Thread.
+ */
+final class DepartureBoard {
+
+    private static final Duration TICK = Duration.seconds(1);
+    private static final Comparator<DepartureRow> ORDER = Comparator.comparingLong(DepartureRow::departureMillis)
+            .thenComparing(DepartureRow::line).thenComparing(DepartureRow::key);
+
+    private final HotStopPoller poller;
+    private final ObservableList<DepartureRow> rows = FXCollections.observableArrayList();
+    // Die angezeigten Zeilen pro angefragter Stop-ID, nach Schlüssel
+    private final Map<String, Map<String, DepartureRow>> shown = new LinkedHashMap<>();
+    // Kopie der angezeigten Stop-IDs für den Beobachter im Thread des Pollers
+    private volatile Set<String> shownStops = Set.of();
+    private final Timeline ticker;
+    private long rowUpdates;
+
+    /**
+     * @param poller Der Poller, der die angezeigten Haltestellen regelmäßig neu lädt.
+     */
+    DepartureBoard(HotStopPoller poller) {
+        this.poller = poller;
+        this.ticker = new Timeline(new KeyFrame(TICK, event -> tick()));
+        ticker.setCycleCount(Animation.INDEFINITE);
+        poller.addRefreshListener(this::onRefresh);
+    }
+
+    /**
+     * @return Die angezeigten Abfahrten, sortiert nach Abfahrtszeit.
+     */
+    ObservableList<DepartureRow> getRows() {
+        return rows;
+    }
+
+    /**
+     * Zeigt die Abfahrten der angegebenen Haltestellen an. Haltestellen, die bisher angezeigt
+     * wurden und nicht mehr enthalten sind, werden entfernt.
+     * @param departures Die Abfahrten pro Stop-ID, z. B. aus {@link WienerLinienAPI#getDepartures}.
+     */
+    void show(Map<String, List<DepartureRow>> departures) {
+        List<String> dropped = new ArrayList<>();
+        for (String stopId : List.copyOf(shown.keySet())) {
+            if (!departures.containsKey(stopId)) {
+                update(stopId, List.of());
+                shown.remove(stopId);
+                dropped.add(stopId);
+            }
+        }
+        List<String> added = new ArrayList<>();
+        for (Map.Entry<String, List<DepartureRow>> entry : departures.entrySet()) {
+            if (!shown.containsKey(entry.getKey())) {
+                added.add(entry.getKey());
+            }
+            update(entry.getKey(), entry.getValue());
+        }
+        shownStops = Set.copyOf(shown.keySet());
+        poller.unpin(dropped);
+        poller.pin(added);
+
+        if (rows.isEmpty()) {
+            ticker.stop();
+        } else {
+            ticker.play();
+        }
+    }
+
+    /**
+     * Entfernt alle Abfahrten und gibt die Haltestellen beim Poller wieder frei.
+     */
+    void clear() {
+        show(Map.of());
+    }
+
+    /**
+     * Beobachter des Pollers: Übernimmt neu geladene Daten der angezeigten Haltestellen.
+     */
+    private void onRefresh(Map<String, List<Monitor>> daten) {
+        Set<String> stops = shownStops;
+        Map<String, List<Monitor>> relevant = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Monitor>> entry : daten.entrySet()) {
+            if (stops.contains(entry.getKey())) {
+                relevant.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (relevant.isEmpty()) {
+            return;
+        }
+        Map<String, List<DepartureRow>> departures = WienerLinienAPI.toDepartures(relevant);
+        Platform.runLater(() -> {
+            for (Map.Entry<String, List<DepartureRow>> entry : departures.entrySet()) {
+                // Inzwischen kann eine andere Haltestelle ausgewählt worden sein
+                if (shown.containsKey(entry.getKey())) {
+                    update(entry.getKey(), entry.getValue());
+                }
+            }
+        });
+    }
+
+    /**
+     * Gleicht die angezeigten Zeilen einer Haltestelle mit einem neuen Stand ab.
+     */
+    private void update(String stopId, List<DepartureRow> fresh) {
+        long now = System.currentTimeMillis();
+        List<DepartureRow> normalized = new ArrayList<>(fresh.size());
+        for (DepartureRow row : fresh) {
+            // Der Countdown kommt immer aus dem Abfahrtszeitpunkt, damit Abruf und lokales Zählen übereinstimmen
+            normalized.add(row.withCountdown(row.countdownAt(now)));
+        }
+        Map<String, DepartureRow> previous = shown.getOrDefault(stopId, Map.of());
+        Map<String, DepartureRow> current = DepartureDelta.index(normalized);
+        DepartureDelta delta = DepartureDelta.between(previous, current);
+
+        if (!delta.removed().isEmpty()) {
+            Set<String> removedKeys = new HashSet<>();
+            delta.removed().forEach(row -> removedKeys.add(row.key()));
+            rows.removeIf(row -> removedKeys.contains(row.key()));
+            rowUpdates += removedKeys.size();
+        }
+        for (DepartureRow row : delta.changed()) {
+            replace(row);
+        }
+        for (DepartureRow row : delta.added()) {
+            insert(row);
+        }
+
+        // Unveränderte Abfahrten behalten die angezeigte Instanz
+        Map<String, DepartureRow> displayed = new LinkedHashMap<>();
+        for (Map.Entry<String, DepartureRow> entry : current.entrySet()) {
+            DepartureRow before = previous.get(entry.getKey());
+            boolean changed = before == null || delta.changed().contains(entry.getValue());
+            displayed.put(entry.getKey(), changed ? entry.getValue() : before);
+        }
+        shown.put(stopId, displayed);
+    }
+
+    /**
+     * Zählt die Countdowns herunter und ersetzt nur die Zeilen, deren Minute sich geändert hat.
+     */
+    private void tick() {
+        long now = System.currentTimeMillis();
+        for (Map<String, DepartureRow> stop : shown.values()) {
+            for (Map.Entry<String, DepartureRow> entry : stop.entrySet()) {
+                DepartureRow row = entry.getValue();
+                int countdown = row.countdownAt(now);
+                if (countdown != row.countdown()) {
+                    DepartureRow ticked = row.withCountdown(countdown);
+                    entry.setValue(ticked);
+                    replace(ticked);
+                }
+            }
+        }
+    }
+
+    /**
+     * Ersetzt eine Zeile an ihrer Stelle; hat sich ihre Abfahrtszeit verschoben, wird sie neu einsortiert.
+     */
+    private void replace(DepartureRow row) {
+        int index = indexOf(row.key());
+        if (index < 0) {
+            insert(row);
+            return;
+        }
+        boolean inOrder = (index == 0 || ORDER.compare(rows.get(index - 1), row) <= 0)
+                && (index == rows.size() - 1 || ORDER.compare(row, rows.get(index + 1)) <= 0);
+        if (inOrder) {
+            rows.set(index, row);
+            rowUpdates++;
+        } else {
+            rows.remove(index);
+            insert(row);
+        }
+    }
+
+    private void insert(DepartureRow row) {
+        int low = 0;
+        int high = rows.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ORDER.compare(rows.get(middle), row) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        rows.add(low, row);
+        rowUpdates++;
+    }
+
+    private int indexOf(String key) {
+        for (int i = 0; i < rows.size(); i++) {
+            if (rows.get(i).key().equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return Wie viele Zeilen seit dem Start eingefügt, ersetzt oder entfernt wurden.
+     */
+    long getRowUpdates() {
+        return rowUpdates;
+    }
+
+    /**
+     * Beendet das lokale Herunterzählen und gibt die Haltestellen beim Poller frei.
+     */
+    void dispose() {
+        ticker.stop();
+        poller.unpin(List.copyOf(shown.keySet()));
+        shown.clear();
+        shownStops = Set.of();
+    }
+}
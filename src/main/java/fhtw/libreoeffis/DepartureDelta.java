@@ -0,0 +1,63 @@
+package fhtw.libreoeffis;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Die Änderungen zwischen zwei Ständen der Abfahrten, zugeordnet über {@link DepartureRow#key()}.
+ * @param added Abfahrten, die neu dazugekommen sind.
+ * @param changed Abfahrten mit geänderter Prognose oder geändertem Countdown, im neuen Stand.
+ * @param removed Abfahrten, die nicht mehr enthalten sind, im alten Stand.
+ */
+record DepartureDelta(List<DepartureRow> added, List<DepartureRow> changed, List<DepartureRow> removed) {
+
+    /**
+     * Vergleicht zwei Stände.
+     * @param previous Der bisherige Stand nach Schlüssel, siehe {@link #index(List)}.
+     * @param current Der neue Stand nach Schlüssel.
+     * @return Die Änderungen, leer wenn sich nichts geändert hat.
+     */
+    static DepartureDelta between(Map<String, DepartureRow> previous, Map<String, DepartureRow> current) {
+        List<DepartureRow> added = new ArrayList<>();
+        List<DepartureRow> changed = new ArrayList<>();
+        List<DepartureRow> removed = new ArrayList<>();
+        for (Map.Entry<String, DepartureRow> entry : current.entrySet()) {
+            DepartureRow before = previous.get(entry.getKey());
+            if (before == null) {
+                added.add(entry.getValue());
+            } else if (before.countdown() != entry.getValue().countdown()
+                    || !Objects.equals(before.timeReal(), entry.getValue().timeReal())) {
+                changed.add(entry.getValue());
+            }
+        }
+        for (Map.Entry<String, DepartureRow> entry : previous.entrySet()) {
+            if (!current.containsKey(entry.getKey())) {
+                removed.add(entry.getValue());
+            }
+        }
+        return new DepartureDelta(added, changed, removed);
+    }
+
+    /**
+     * Ordnet Abfahrten ihren Schlüsseln zu; die Reihenfolge bleibt erhalten.
+     * @param rows Die Abfahrten.
+     * @return Die Abfahrten nach Schlüssel.
+     */
+    static Map<String, DepartureRow> index(List<DepartureRow> rows) {
+        Map<String, DepartureRow> byKey = new LinkedHashMap<>();
+        for (DepartureRow row : rows) {
+            byKey.put(row.key(), row);
+        }
+        return byKey;
+    }
+
+    /**
+     * @return true, wenn sich nichts geändert hat.
+     */
+    boolean isEmpty() {
+        return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+    }
+}
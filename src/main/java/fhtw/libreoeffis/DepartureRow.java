@@ -0,0 +1,116 @@
+package fhtw.libreoeffis;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Eine Abfahrt als eigenständige Zeile, unabhängig von der Verschachtelung der API
+ * (Monitor → Linie → Abfahrt). Zwei Stände derselben Abfahrt werden über {@link #key()}
+ * zugeordnet, siehe {@link DepartureDelta}.
+ * @param stopId Die Stop-ID (RBL-Nummer) des Steigs.
+ * @param stopName Der Name der Haltestelle.
+ * @param line Der Name der Linie, z. B. "U1".
+ * @param towards Die Richtung der Linie.
+ * @param timePlanned Die geplante Abfahrtszeit im Format der API.
+ * @param timeReal Die prognostizierte Abfahrtszeit oder null, wenn keine Echtzeitdaten vorliegen.
+ * @param countdown Die Minuten bis zur Abfahrt.
+ * @param departureMillis Der erwartete Abfahrtszeitpunkt in Millisekunden seit 1970, aus dem
+ *                        der Countdown zwischen zwei Abrufen lokal weitergezählt wird.
+ */
+record DepartureRow(String stopId, String stopName, String line, String towards, String timePlanned,
+                    String timeReal, int countdown, long departureMillis) {
+
+    // Format der API, z. B. 2024-06-03T12:12:00.000+0200
+    private static final DateTimeFormatter API_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+    private static final DateTimeFormatter CLOCK = DateTimeFormatter.ofPattern("HH:mm").withZone(ZoneId.of("Europe/Vienna"));
+    // Weicht die lokale Uhr stärker von der API ab, wird nur der Countdown der API verwendet
+    private static final long MAX_CLOCK_SKEW_MILLIS = 90_000;
+
+    /**
+     * Wandelt die Monitore einer Haltestelle in Zeilen um.
+     * @param stopId Die angefragte Stop-ID, falls ein Monitor keine eigene enthält.
+     * @param monitors Die Monitore der Haltestelle.
+     * @param now Der Zeitpunkt des Abrufs in Millisekunden seit 1970.
+     * @return Die Abfahrten in der Reihenfolge der API.
+     */
+    static List<DepartureRow> fromMonitors(String stopId, List<Monitor> monitors, long now) {
+        List<DepartureRow> rows = new ArrayList<>();
+        for (Monitor monitor : monitors) {
+            String rowStopId = monitor.stopId() != null && !monitor.stopId().isEmpty() ? monitor.stopId() : stopId;
+            for (Line line : monitor.lines()) {
+                for (Departure departure : line.departures()) {
+                    rows.add(new DepartureRow(rowStopId, monitor.title(), line.name(), line.towards(),
+                            departure.timePlanned(), departure.timeReal(), departure.countdown(),
+                            departureMillis(departure, now)));
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Schätzt den Abfahrtszeitpunkt. Die Prognose der API wird nur übernommen, wenn sie zum
+     * Countdown passt; sonst geht die lokale Uhr falsch und es wird ab dem Abruf gezählt.
+     */
+    private static long departureMillis(Departure departure, long now) {
+        long fromCountdown = now + departure.countdown() * 60_000L + 30_000;
+        String time = departure.timeReal() != null ? departure.timeReal() : departure.timePlanned();
+        if (time == null) {
+            return fromCountdown;
+        }
+        try {
+            long parsed = ZonedDateTime.parse(time, API_TIME).toInstant().toEpochMilli();
+            return Math.abs(parsed - fromCountdown) <= MAX_CLOCK_SKEW_MILLIS ? parsed : fromCountdown;
+        } catch (DateTimeParseException e) {
+            return fromCountdown;
+        }
+    }
+
+    /**
+     * @return Der Schlüssel aus Steig, Linie, Richtung und geplanter Abfahrtszeit.
+     */
+    String key() {
+        return stopId + "\t" + line + "\t" + towards + "\t" + timePlanned;
+    }
+
+    /**
+     * @param now Der Zeitpunkt in Millisekunden seit 1970.
+     * @return Die ganzen Minuten bis zur Abfahrt, nie negativ.
+     */
+    int countdownAt(long now) {
+        return (int) Math.max(0, Math.floorDiv(departureMillis - now, 60_000L));
+    }
+
+    /**
+     * @param minutes Der neue Countdown.
+     * @return Dieselbe Abfahrt mit geändertem Countdown.
+     */
+    DepartureRow withCountdown(int minutes) {
+        return minutes == countdown ? this
+                : new DepartureRow(stopId, stopName, line, towards, timePlanned, timeReal, minutes, departureMillis);
+    }
+
+    /**
+     * @return Die Zeile für die Anzeige, z. B. "Karlsplatz: U1 Richtung LEOPOLDAU in 2 Minuten (12:12)".
+     */
+    String format() {
+        StringBuilder text = new StringBuilder();
+        text.append(stopName).append(": ").append(line).append(" Richtung ").append(towards);
+        text.append(countdown == 0 ? " jetzt" : " in " + countdown + (countdown == 1 ? " Minute" : " Minuten"));
+        text.append(" (").append(CLOCK.format(Instant.ofEpochMilli(departureMillis))).append(")");
+        if (timeReal == null) {
+            text.append(" laut Fahrplan");
+        }
+        return text.toString();
+    }
+
+    @Override
+    public String toString() {
+        return format();
+    }
+}
@@ -0,0 +1,307 @@
+package fhtw.libreoeffis;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Begrenzter Cache für Echtzeitantworten der Wiener Linien API, pro Haltestelle.
+ * Einträge sind bis zum Ablauf der TTL frisch. Danach werden sie noch für ein
+ * Stale-Fenster ausgeliefert, während im Hintergrund neu geladen wird.
+ * Gleichzeitige Fehlzugriffe auf dieselbe Haltestelle teilen sich eine Anfrage.
+ * Schlägt das Laden fehl, wird der letzte bekannte Eintrag ausgeliefert, auch wenn er
+ * älter als das Stale-Fenster ist, solange er noch nicht verdrängt wurde.
+ */
+public class EchtzeitCache {
+
+    /**
+     * Lädt die Monitore einer Haltestelle von der API.
+     */
+    @FunctionalInterface
+    public interface Loader {
+        List<Monitor> load(String stopId) throws Exception;
+    }
+
+    /**
+     * Lädt die Monitore mehrerer Haltestellen mit möglichst wenigen Anfragen.
+     */
+    @FunctionalInterface
+    public interface BatchLoader {
+        Map<String, List<Monitor>> loadAll(List<String> stopIds) throws Exception;
+    }
+
+    private static final Duration DEFAULT_TTL = Duration.ofSeconds(15);
+    private static final Duration DEFAULT_STALE = Duration.ofSeconds(45);
+    private static final int DEFAULT_MAX_ENTRIES = 512;
+
+    private final long ttlMillis;
+    private final long staleMillis;
+    private final int maxEntries;
+
+    // LRU-Reihenfolge über accessOrder, geschützt durch synchronized(entries)
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<String, CompletableFuture<List<Monitor>>> inFlight = new ConcurrentHashMap<>();
+    private final Executor refreshExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("echtzeit-refresh-", 0).factory());
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    private record Entry(List<Monitor> value, long loadedAt) {
+    }
+
+    public EchtzeitCache() {
+        this(DEFAULT_TTL, DEFAULT_STALE, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param ttl Wie lange ein Eintrag als frisch gilt.
+     * @param staleWindow Wie lange ein abgelaufener Eintrag noch ausgeliefert wird, während neu geladen wird.
+     * @param maxEntries Maximale Anzahl an Haltestellen im Cache.
+     */
+    public EchtzeitCache(Duration ttl, Duration staleWindow, int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries muss mindestens 1 sein.");
+        }
+        this.ttlMillis = ttl.toMillis();
+        this.staleMillis = staleWindow.toMillis();
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Gibt die Daten einer Haltestelle zurück und lädt sie bei Bedarf über den Loader.
+     * @param stopId Die ID der Haltestelle.
+     * @param loader Lädt die Daten, falls kein gültiger Eintrag vorhanden ist.
+     * @return Die (ggf. leicht veralteten) Monitore.
+     * @throws Exception Wenn das Laden fehlschlägt und kein verwendbarer Eintrag existiert.
+     */
+    public List<Monitor> get(String stopId, Loader loader) throws Exception {
+        Entry entry = lookup(stopId);
+        long now = System.currentTimeMillis();
+
+        if (entry != null) {
+            long age = now - entry.loadedAt();
+            if (age < ttlMillis) {
+                hits.incrementAndGet();
+                return entry.value();
+            }
+            if (age < ttlMillis + staleMillis) {
+                staleHits.incrementAndGet();
+                refreshExecutor.execute(() -> load(stopId, loader));
+                return entry.value();
+            }
+        }
+
+        misses.incrementAndGet();
+        try {
+            return await(load(stopId, loader));
+        } catch (Exception e) {
+            if (entry != null) {
+                fallbacks.incrementAndGet();
+                return entry.value();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Gibt die Daten mehrerer Haltestellen zurück. Alle fehlenden Haltestellen werden
+     * gemeinsam über den BatchLoader geladen, veraltete im Hintergrund aktualisiert.
+     * @param stopIds Die IDs der Haltestellen.
+     * @param loader Lädt die fehlenden Haltestellen gesammelt.
+     * @return Die Monitore pro Stop-ID, in der Reihenfolge der Anfrage.
+     * @throws Exception Wenn das Laden fehlschlägt.
+     */
+    public Map<String, List<Monitor>> getAll(Collection<String> stopIds, BatchLoader loader) throws Exception {
+        Map<String, List<Monitor>> found = new HashMap<>();
+        List<String> stale = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        long now = System.currentTimeMillis();
+
+        Collection<String> distinct = new LinkedHashSet<>(stopIds);
+        for (String stopId : distinct) {
+            Entry entry = lookup(stopId);
+            long age = entry != null ? now - entry.loadedAt() : Long.MAX_VALUE;
+            if (age < ttlMillis) {
+                hits.incrementAndGet();
+                found.put(stopId, entry.value());
+            } else if (age < ttlMillis + staleMillis) {
+                staleHits.incrementAndGet();
+                found.put(stopId, entry.value());
+                stale.add(stopId);
+            } else {
+                misses.incrementAndGet();
+                missing.add(stopId);
+            }
+        }
+
+        if (!stale.isEmpty()) {
+            refreshExecutor.execute(() -> loadAll(stale, loader));
+        }
+        Map<String, CompletableFuture<List<Monitor>>> pending = loadAll(missing, loader);
+        for (Map.Entry<String, CompletableFuture<List<Monitor>>> entry : pending.entrySet()) {
+            try {
+                found.put(entry.getKey(), await(entry.getValue()));
+            } catch (Exception e) {
+                Entry lastKnown = lookup(entry.getKey());
+                if (lastKnown == null) {
+                    throw e;
+                }
+                fallbacks.incrementAndGet();
+                found.put(entry.getKey(), lastKnown.value());
+            }
+        }
+
+        Map<String, List<Monitor>> result = new LinkedHashMap<>();
+        for (String stopId : distinct) {
+            result.put(stopId, found.get(stopId));
+        }
+        return result;
+    }
+
+    /**
+     * Legt Daten für eine Haltestelle ab, z. B. nach einer Sammelabfrage.
+     * @param stopId Die ID der Haltestelle.
+     * @param value Die Monitore.
+     */
+    public void put(String stopId, List<Monitor> value) {
+        synchronized (entries) {
+            entries.put(stopId, new Entry(value, System.currentTimeMillis()));
+            if (entries.size() > maxEntries) {
+                Iterator<String> eldest = entries.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private Entry lookup(String stopId) {
+        synchronized (entries) {
+            return entries.get(stopId);
+        }
+    }
+
+    /**
+     * Startet das Laden einer Haltestelle oder schließt sich einem laufenden Ladevorgang an.
+     */
+    private CompletableFuture<List<Monitor>> load(String stopId, Loader loader) {
+        CompletableFuture<List<Monitor>> created = new CompletableFuture<>();
+        CompletableFuture<List<Monitor>> existing = inFlight.putIfAbsent(stopId, created);
+        if (existing != null) {
+            return existing;
+        }
+
+        try {
+            List<Monitor> value = loader.load(stopId);
+            put(stopId, value);
+            created.complete(value);
+        } catch (Exception e) {
+            created.completeExceptionally(e);
+        } finally {
+            inFlight.remove(stopId, created);
+        }
+        return created;
+    }
+
+    /**
+     * Lädt mehrere Haltestellen gemeinsam. Haltestellen, die bereits geladen werden,
+     * werden nicht erneut angefragt, sondern teilen sich den laufenden Ladevorgang.
+     */
+    private Map<String, CompletableFuture<List<Monitor>>> loadAll(List<String> stopIds, BatchLoader loader) {
+        Map<String, CompletableFuture<List<Monitor>>> futures = new LinkedHashMap<>();
+        Map<String, CompletableFuture<List<Monitor>>> owned = new LinkedHashMap<>();
+        for (String stopId : stopIds) {
+            CompletableFuture<List<Monitor>> created = new CompletableFuture<>();
+            CompletableFuture<List<Monitor>> existing = inFlight.putIfAbsent(stopId, created);
+            futures.put(stopId, existing != null ? existing : created);
+            if (existing == null) {
+                owned.put(stopId, created);
+            }
+        }
+        if (owned.isEmpty()) {
+            return futures;
+        }
+
+        try {
+            Map<String, List<Monitor>> values = loader.loadAll(new ArrayList<>(owned.keySet()));
+            for (Map.Entry<String, CompletableFuture<List<Monitor>>> entry : owned.entrySet()) {
+                List<Monitor> value = values.get(entry.getKey());
+                if (value != null) {
+                    put(entry.getKey(), value);
+                    entry.getValue().complete(value);
+                } else {
+                    entry.getValue().completeExceptionally(
+                            new Exception("Keine Daten für Stop-ID " + entry.getKey() + " erhalten."));
+                }
+            }
+        } catch (Exception e) {
+            owned.values().forEach(future -> future.completeExceptionally(e));
+        } finally {
+            owned.forEach(inFlight::remove);
+        }
+        return futures;
+    }
+
+    private static List<Monitor> await(CompletableFuture<List<Monitor>> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getStaleHits() {
+        return staleHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return Wie oft nach einem fehlgeschlagenen Laden der letzte bekannte Eintrag ausgeliefert wurde.
+     */
+    public long getFallbacks() {
+        return fallbacks.get();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "EchtzeitCache[Treffer=" + getHits() + ", veraltet=" + getStaleHits()
+                + ", Fehlzugriffe=" + getMisses() + ", Verdrängungen=" + getEvictions()
+                + ", Ersatzantworten=" + getFallbacks() + ", Einträge=" + size() + "]";
+    }
+}
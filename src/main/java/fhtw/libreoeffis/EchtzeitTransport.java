@@ -0,0 +1,30 @@
+package fhtw.libreoeffis;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Weg, auf dem formatierte Echtzeitdaten beim TCP-Server angefragt werden.
+ * Externe Clients verwenden das gerahmte Protokoll über einen Socket ({@link TCPClient}),
+ * Aufrufer in derselben JVM wie der Server den direkten Aufruf ({@link InProcessTransport}).
+ * Beide liefern dieselben Antworten und Fehlermeldungen.
+ */
+public interface EchtzeitTransport {
+
+    /**
+     * Sendet eine Anfrage, ohne auf die Antwort zu warten.
+     * @param stopIds Eine oder mehrere Stop-IDs, getrennt durch Komma, oder ein Haltestellenname.
+     * @return Die Future mit den formatierten Echtzeitdaten; bei einer Fehlerantwort
+     *         wird sie mit einer {@link TCPClient.ServerException} abgeschlossen.
+     */
+    CompletableFuture<String> requestAsync(String stopIds);
+
+    /**
+     * Sendet eine Anfrage und wartet auf die Antwort.
+     * @param stopIds Eine oder mehrere Stop-IDs, getrennt durch Komma, oder ein Haltestellenname.
+     * @return Die formatierten Echtzeitdaten.
+     * @throws Exception Wenn die Anfrage fehlschlägt oder der Server einen Fehler meldet.
+     */
+    default String request(String stopIds) throws Exception {
+        return HttpTransport.await(requestAsync(stopIds));
+    }
+}
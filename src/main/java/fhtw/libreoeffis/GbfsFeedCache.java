@@ -0,0 +1,164 @@
+package fhtw.libreoeffis;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache für GBFS-Feeds (z. B. station_information und station_status von WienMobil).
+ * Ein Feed wird erst neu geladen, wenn seine im Feed angegebene ttl abgelaufen ist,
+ * begrenzt durch eine minimale und maximale Gültigkeit pro Feed. Beim Neuladen
+ * werden ETag und Last-Modified für bedingte Anfragen mitgeschickt.
+ * Schlägt das Neuladen fehl (z. B. weil der {@link UpstreamGuard} offen ist),
+ * wird die zuletzt geladene Version weiter ausgeliefert.
+ */
+class GbfsFeedCache {
+
+    /**
+     * Grenzen für die Gültigkeit eines Feeds, unabhängig von der ttl im Feed.
+     * @param minTtl Mindestdauer, bevor der Feed erneut angefragt wird.
+     * @param maxTtl Höchstdauer, auch wenn der Feed eine längere ttl angibt.
+     */
+    record Policy(Duration minTtl, Duration maxTtl) {
+    }
+
+    private record Feed(JsonNode data, long expiresAt, String etag, String lastModified) {
+    }
+
+    // Die Feeds sind groß und der Testserver langsam, daher großzügigere Timeouts und ein kleines Bulkhead
+    private static final UpstreamGuard.Policy GBFS_POLICY = new UpstreamGuard.Policy(
+            Duration.ofSeconds(2), Duration.ofSeconds(15), 1, 0.1, 4, 3, Duration.ofSeconds(30));
+
+    private static final Metrics.Timer PARSE_TIME = Metrics.parseTime("gbfs");
+    private static final Metrics.Counter HITS = Metrics.cacheRequests("gbfs", "hit");
+    private static final Metrics.Counter MISSES = Metrics.cacheRequests("gbfs", "miss");
+    private static final Metrics.Counter FALLBACKS = Metrics.cacheRequests("gbfs", "fallback");
+
+    private final HttpTransport transport;
+    private final UpstreamGuard guard = UpstreamGuard.forEndpoint("wienmobil-gbfs", GBFS_POLICY);
+    private final ObjectMapper mapper;
+    private final Map<String, String> headers;
+    private final Map<String, Feed> feeds = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<JsonNode>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * @param transport Die HTTP-Schicht für die Anfragen.
+     * @param mapper Der ObjectMapper zum Lesen der Feeds.
+     * @param headers Header, die bei jeder Anfrage mitgeschickt werden.
+     */
+    GbfsFeedCache(HttpTransport transport, ObjectMapper mapper, Map<String, String> headers) {
+        this.transport = transport;
+        this.mapper = mapper;
+        this.headers = headers;
+    }
+
+    /**
+     * Gibt einen Feed zurück. Solange er gültig ist, wird keine Anfrage gestellt.
+     * Gleichzeitige Abrufe desselben abgelaufenen Feeds teilen sich eine Anfrage.
+     * @param url Die URL des Feeds.
+     * @param policy Die Grenzen für die Gültigkeit.
+     * @return Die Future mit dem Feed als JSON-Baum.
+     */
+    CompletableFuture<JsonNode> getAsync(String url, Policy policy) {
+        Feed feed = feeds.get(url);
+        if (feed != null && System.currentTimeMillis() < feed.expiresAt()) {
+            HITS.increment();
+            return CompletableFuture.completedFuture(feed.data());
+        }
+        MISSES.increment();
+
+        CompletableFuture<JsonNode> created = new CompletableFuture<>();
+        CompletableFuture<JsonNode> existing = inFlight.putIfAbsent(url, created);
+        if (existing != null) {
+            return existing;
+        }
+        refresh(url, policy).whenComplete((data, error) -> {
+            inFlight.remove(url, created);
+            if (error != null && feed != null) {
+                FALLBACKS.increment();
+                created.complete(feed.data());
+            } else if (error != null) {
+                created.completeExceptionally(error);
+            } else {
+                created.complete(data);
+            }
+        });
+        return created;
+    }
+
+    private CompletableFuture<JsonNode> refresh(String url, Policy policy) {
+        Feed previous = feeds.get(url);
+        Map<String, String> requestHeaders = new HashMap<>(headers);
+        if (previous != null && previous.etag() != null) {
+            requestHeaders.put("If-None-Match", previous.etag());
+        }
+        if (previous != null && previous.lastModified() != null) {
+            requestHeaders.put("If-Modified-Since", previous.lastModified());
+        }
+
+        Metrics.Timer latency = Metrics.upstreamLatency(feedName(url));
+        return guard.call(() -> {
+            long startedAt = System.nanoTime();
+            return transport.sendAsync(url, requestHeaders).thenApply(response -> {
+                long now = System.currentTimeMillis();
+                if (response.isNotModified()) {
+                    if (previous == null) {
+                        throw new CompletionException(new IOException("Unerwartete 304-Antwort für " + url));
+                    }
+                    // Inhalt unverändert: nur die Gültigkeit verlängern
+                    feeds.put(url, new Feed(previous.data(), expiresAt(previous.data(), policy, now),
+                            previous.etag(), previous.lastModified()));
+                    return previous.data();
+                }
+
+                long parseStartedAt = System.nanoTime();
+                try (InputStream in = response.body()) {
+                    JsonNode data = mapper.readTree(in);
+                    PARSE_TIME.recordSince(parseStartedAt);
+                    feeds.put(url, new Feed(data, expiresAt(data, policy, now),
+                            response.headers().firstValue("ETag").orElse(null),
+                            response.headers().firstValue("Last-Modified").orElse(null)));
+                    return data;
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }).whenComplete((data, error) -> {
+                latency.recordSince(startedAt);
+                if (error != null) {
+                    Metrics.upstreamErrors(feedName(url), Metrics.errorStatus(error)).increment();
+                }
+            });
+        });
+    }
+
+    /**
+     * Leitet den Namen eines Feeds aus seiner URL ab, z. B. {@code station_status}.
+     */
+    private static String feedName(String url) {
+        String name = url.substring(url.lastIndexOf('/') + 1);
+        return name.endsWith(".json") ? name.substring(0, name.length() - ".json".length()) : name;
+    }
+
+    /**
+     * Berechnet den Ablaufzeitpunkt aus last_updated und ttl des Feeds.
+     * Liegt last_updated + ttl in der Vergangenheit oder fehlt, gilt die Mindestdauer.
+     */
+    private static long expiresAt(JsonNode data, Policy policy, long now) {
+        long ttlMillis = data.path("ttl").asLong(0) * 1000;
+        long lastUpdatedMillis = data.path("last_updated").asLong(0) * 1000;
+
+        long feedExpiry = lastUpdatedMillis > 0 && lastUpdatedMillis <= now
+                ? lastUpdatedMillis + ttlMillis
+                : now + ttlMillis;
+        long min = now + policy.minTtl().toMillis();
+        long max = now + policy.maxTtl().toMillis();
+        return Math.min(max, Math.max(min, feedExpiry));
+    }
+}
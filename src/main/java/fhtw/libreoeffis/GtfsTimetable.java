@@ -0,0 +1,543 @@
+package fhtw.libreoeffis;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fahrplan aus einem lokal gespeicherten GTFS-Datensatz (z. B. dem GTFS-Export der Wiener Linien).
+ * Beim Laden werden alle Fahrten in elementare Verbindungen (Abfahrt an einem Halt, Ankunft am
+ * nächsten Halt derselben Fahrt) zerlegt und nach Abfahrtszeit sortiert in int-Arrays abgelegt,
+ * wie es der Connection Scan Algorithm in {@link JourneyPlanner} erwartet.
+ * Benötigt werden stops.txt, routes.txt, trips.txt und stop_times.txt; calendar.txt,
+ * calendar_dates.txt und transfers.txt werden verwendet, wenn vorhanden.
+ */
+final class GtfsTimetable {
+
+    private static final DateTimeFormatter GTFS_DATE = DateTimeFormatter.BASIC_ISO_DATE;
+
+    // Haltepunkte
+    final String[] stopIds;
+    final String[] stopNames;
+    final Map<String, Integer> stopIndex;
+
+    // Fahrten
+    final String[] tripLines;
+    final String[] tripHeadsigns;
+    private final int[] tripServices;
+
+    // Verbindungen, aufsteigend nach Abfahrtszeit (Sekunden ab Mitternacht des Betriebstags)
+    final int[] departureStops;
+    final int[] arrivalStops;
+    final int[] departureTimes;
+    final int[] arrivalTimes;
+    final int[] trips;
+
+    // Fußwege zwischen Haltepunkten in CSR-Form: Ziele von Halt i stehen in footpathTargets[footpathStart[i] .. footpathStart[i + 1])
+    final int[] footpathStart;
+    final int[] footpathTargets;
+    final int[] footpathSeconds;
+
+    // Betriebstage
+    private final String[] serviceIds;
+    private final boolean[][] serviceWeekdays;
+    private final int[] serviceStart;
+    private final int[] serviceEnd;
+    private final Map<Integer, Map<Integer, Boolean>> serviceExceptions;
+
+    private GtfsTimetable(Builder builder) {
+        this.stopIds = builder.stopIds.toArray(String[]::new);
+        this.stopNames = builder.stopNames.toArray(String[]::new);
+        this.stopIndex = builder.stopIndex;
+        this.tripLines = builder.tripLines.toArray(String[]::new);
+        this.tripHeadsigns = builder.tripHeadsigns.toArray(String[]::new);
+        this.tripServices = builder.tripServices.stream().mapToInt(Integer::intValue).toArray();
+        this.departureStops = builder.departureStops;
+        this.arrivalStops = builder.arrivalStops;
+        this.departureTimes = builder.departureTimes;
+        this.arrivalTimes = builder.arrivalTimes;
+        this.trips = builder.trips;
+        this.footpathStart = builder.footpathStart;
+        this.footpathTargets = builder.footpathTargets;
+        this.footpathSeconds = builder.footpathSeconds;
+        this.serviceIds = builder.serviceIds.toArray(String[]::new);
+        this.serviceWeekdays = builder.serviceWeekdays.toArray(boolean[][]::new);
+        this.serviceStart = builder.serviceStart.stream().mapToInt(Integer::intValue).toArray();
+        this.serviceEnd = builder.serviceEnd.stream().mapToInt(Integer::intValue).toArray();
+        this.serviceExceptions = builder.serviceExceptions;
+    }
+
+    /**
+     * Lädt einen GTFS-Datensatz aus einem Verzeichnis.
+     * @param directory Das Verzeichnis mit den entpackten GTFS-Dateien.
+     * @param transferSeconds Umstiegszeit zwischen Haltepunkten mit demselben Namen bzw. derselben Station.
+     * @return Der geladene Fahrplan.
+     * @throws IOException Wenn eine Pflichtdatei fehlt oder nicht gelesen werden kann.
+     */
+    static GtfsTimetable load(Path directory, int transferSeconds) throws IOException {
+        Builder builder = new Builder();
+        builder.readStops(directory.resolve("stops.txt"));
+        builder.readServices(directory.resolve("calendar.txt"), directory.resolve("calendar_dates.txt"));
+        builder.readTrips(directory.resolve("routes.txt"), directory.resolve("trips.txt"));
+        builder.readStopTimes(directory.resolve("stop_times.txt"));
+        builder.buildFootpaths(directory.resolve("transfers.txt"), transferSeconds);
+        return new GtfsTimetable(builder);
+    }
+
+    int stopCount() {
+        return stopIds.length;
+    }
+
+    int connectionCount() {
+        return departureTimes.length;
+    }
+
+    /**
+     * Bestimmt, welche Fahrten an einem Tag verkehren.
+     * @param date Der Betriebstag.
+     * @return Pro Fahrt, ob sie an diesem Tag verkehrt.
+     */
+    boolean[] activeTrips(LocalDate date) {
+        int day = Integer.parseInt(date.format(GTFS_DATE));
+        int weekday = date.getDayOfWeek().getValue() - 1;
+        boolean[] activeServices = new boolean[serviceIds.length];
+        for (int service = 0; service < serviceIds.length; service++) {
+            boolean active = serviceWeekdays[service][weekday] && day >= serviceStart[service] && day <= serviceEnd[service];
+            Map<Integer, Boolean> exceptions = serviceExceptions.get(service);
+            if (exceptions != null && exceptions.containsKey(day)) {
+                active = exceptions.get(day);
+            }
+            activeServices[service] = active;
+        }
+        boolean[] active = new boolean[tripServices.length];
+        for (int trip = 0; trip < active.length; trip++) {
+            // Fahrten ohne bekannten Betriebstag gelten als täglich
+            active[trip] = tripServices[trip] < 0 || activeServices[tripServices[trip]];
+        }
+        return active;
+    }
+
+    /**
+     * Erste Verbindung, die nicht vor der angegebenen Zeit abfährt (Binärsuche).
+     * @param time Die Zeit in Sekunden ab Mitternacht.
+     * @return Der Index der Verbindung.
+     */
+    int firstConnectionAfter(int time) {
+        int low = 0;
+        int high = departureTimes.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (departureTimes[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Sammelt die Daten beim Einlesen, bevor sie in die endgültigen Arrays übernommen werden.
+     */
+    private static final class Builder {
+        private final List<String> stopIds = new ArrayList<>();
+        private final List<String> stopNames = new ArrayList<>();
+        private final List<String> stopStations = new ArrayList<>();
+        private final Map<String, Integer> stopIndex = new HashMap<>();
+
+        private final List<String> serviceIds = new ArrayList<>();
+        private final Map<String, Integer> serviceIndex = new HashMap<>();
+        private final List<boolean[]> serviceWeekdays = new ArrayList<>();
+        private final List<Integer> serviceStart = new ArrayList<>();
+        private final List<Integer> serviceEnd = new ArrayList<>();
+        private final Map<Integer, Map<Integer, Boolean>> serviceExceptions = new HashMap<>();
+
+        private final List<String> tripLines = new ArrayList<>();
+        private final List<String> tripHeadsigns = new ArrayList<>();
+        private final List<Integer> tripServices = new ArrayList<>();
+        private final Map<String, Integer> tripIndex = new HashMap<>();
+
+        private int[] departureStops;
+        private int[] arrivalStops;
+        private int[] departureTimes;
+        private int[] arrivalTimes;
+        private int[] trips;
+
+        private int[] footpathStart;
+        private int[] footpathTargets;
+        private int[] footpathSeconds;
+
+        void readStops(Path file) throws IOException {
+            try (GtfsReader reader = new GtfsReader(file)) {
+                int id = reader.column("stop_id");
+                int name = reader.column("stop_name");
+                int parent = reader.optionalColumn("parent_station");
+                int locationType = reader.optionalColumn("location_type");
+                String[] row;
+                while ((row = reader.next()) != null) {
+                    // Stationen (location_type 1) und Eingänge haben keine Abfahrten
+                    String type = reader.value(row, locationType);
+                    if (!type.isEmpty() && !type.equals("0")) {
+                        continue;
+                    }
+                    stopIndex.put(row[id], stopIds.size());
+                    stopIds.add(row[id]);
+                    stopNames.add(reader.value(row, name));
+                    stopStations.add(reader.value(row, parent));
+                }
+            }
+        }
+
+        void readServices(Path calendar, Path calendarDates) throws IOException {
+            if (Files.exists(calendar)) {
+                try (GtfsReader reader = new GtfsReader(calendar)) {
+                    int id = reader.column("service_id");
+                    int[] days = new int[7];
+                    for (DayOfWeek day : DayOfWeek.values()) {
+                        days[day.getValue() - 1] = reader.column(day.name().toLowerCase());
+                    }
+                    int start = reader.column("start_date");
+                    int end = reader.column("end_date");
+                    String[] row;
+                    while ((row = reader.next()) != null) {
+                        int service = service(row[id]);
+                        for (int day = 0; day < 7; day++) {
+                            serviceWeekdays.get(service)[day] = row[days[day]].equals("1");
+                        }
+                        serviceStart.set(service, Integer.parseInt(row[start]));
+                        serviceEnd.set(service, Integer.parseInt(row[end]));
+                    }
+                }
+            }
+            if (Files.exists(calendarDates)) {
+                try (GtfsReader reader = new GtfsReader(calendarDates)) {
+                    int id = reader.column("service_id");
+                    int date = reader.column("date");
+                    int type = reader.column("exception_type");
+                    String[] row;
+                    while ((row = reader.next()) != null) {
+                        serviceExceptions.computeIfAbsent(service(row[id]), key -> new HashMap<>())
+                                .put(Integer.parseInt(row[date]), row[type].equals("1"));
+                    }
+                }
+            }
+        }
+
+        /**
+         * Legt einen Betriebstag an. Ohne Eintrag in calendar.txt verkehrt er nur an
+         * den Tagen aus calendar_dates.txt.
+         */
+        private int service(String id) {
+            Integer existing = serviceIndex.get(id);
+            if (existing != null) {
+                return existing;
+            }
+            int index = serviceIds.size();
+            serviceIndex.put(id, index);
+            serviceIds.add(id);
+            serviceWeekdays.add(new boolean[7]);
+            serviceStart.add(0);
+            serviceEnd.add(0);
+            return index;
+        }
+
+        void readTrips(Path routesFile, Path tripsFile) throws IOException {
+            Map<String, String> lineNames = new HashMap<>();
+            try (GtfsReader reader = new GtfsReader(routesFile)) {
+                int id = reader.column("route_id");
+                int shortName = reader.optionalColumn("route_short_name");
+                int longName = reader.optionalColumn("route_long_name");
+                String[] row;
+                while ((row = reader.next()) != null) {
+                    String name = reader.value(row, shortName);
+                    lineNames.put(row[id], name.isEmpty() ? reader.value(row, longName) : name);
+                }
+            }
+            boolean hasCalendar = !serviceIds.isEmpty();
+            try (GtfsReader reader = new GtfsReader(tripsFile)) {
+                int route = reader.column("route_id");
+                int service = reader.column("service_id");
+                int trip = reader.column("trip_id");
+                int headsign = reader.optionalColumn("trip_headsign");
+                String[] row;
+                while ((row = reader.next()) != null) {
+                    tripIndex.put(row[trip], tripLines.size());
+                    tripLines.add(lineNames.getOrDefault(row[route], row[route]));
+                    tripHeadsigns.add(reader.value(row, headsign));
+                    Integer serviceId = serviceIndex.get(row[service]);
+                    tripServices.add(serviceId != null ? serviceId : hasCalendar ? service(row[service]) : -1);
+                }
+            }
+        }
+
+        void readStopTimes(Path file) throws IOException {
+            IntArray rowTrips = new IntArray();
+            IntArray rowSequences = new IntArray();
+            IntArray rowStops = new IntArray();
+            IntArray rowArrivals = new IntArray();
+            IntArray rowDepartures = new IntArray();
+            try (GtfsReader reader = new GtfsReader(file)) {
+                int trip = reader.column("trip_id");
+                int arrival = reader.column("arrival_time");
+                int departure = reader.column("departure_time");
+                int stop = reader.column("stop_id");
+                int sequence = reader.column("stop_sequence");
+                String[] row;
+                while ((row = reader.next()) != null) {
+                    Integer tripId = tripIndex.get(row[trip]);
+                    Integer stopId = stopIndex.get(row[stop]);
+                    if (tripId == null || stopId == null || row[arrival].isEmpty() || row[departure].isEmpty()) {
+                        // Zeitpunkte ohne Zeitangabe (nur Zwischenhalte ohne Fahrplan) werden ausgelassen
+                        continue;
+                    }
+                    rowTrips.add(tripId);
+                    rowSequences.add(Integer.parseInt(row[sequence]));
+                    rowStops.add(stopId);
+                    rowArrivals.add(parseTime(row[arrival]));
+                    rowDepartures.add(parseTime(row[departure]));
+                }
+            }
+
+            // stop_times.txt ist meist nach Fahrt und Reihenfolge sortiert; sonst hier nachholen
+            int rows = rowTrips.size;
+            int[] order = new int[rows];
+            boolean sorted = true;
+            for (int i = 0; i < rows; i++) {
+                order[i] = i;
+                sorted &= i == 0 || compareRows(rowTrips, rowSequences, i - 1, i) <= 0;
+            }
+            if (!sorted) {
+                order = Arrays.stream(order).boxed()
+                        .sorted((a, b) -> compareRows(rowTrips, rowSequences, a, b))
+                        .mapToInt(Integer::intValue)
+                        .toArray();
+            }
+
+            // Aufeinanderfolgende Halte derselben Fahrt ergeben eine Verbindung
+            IntArray fromRows = new IntArray();
+            IntArray toRows = new IntArray();
+            for (int i = 1; i < rows; i++) {
+                if (rowTrips.values[order[i - 1]] == rowTrips.values[order[i]]) {
+                    fromRows.add(order[i - 1]);
+                    toRows.add(order[i]);
+                }
+            }
+
+            // Nach Abfahrtszeit sortieren, bei gleicher Zeit in Fahrtreihenfolge
+            int count = fromRows.size;
+            long[] byDeparture = new long[count];
+            for (int i = 0; i < count; i++) {
+                byDeparture[i] = (long) rowDepartures.values[fromRows.values[i]] << 32 | i;
+            }
+            Arrays.sort(byDeparture);
+
+            departureStops = new int[count];
+            arrivalStops = new int[count];
+            departureTimes = new int[count];
+            arrivalTimes = new int[count];
+            trips = new int[count];
+            for (int i = 0; i < count; i++) {
+                int connection = (int) byDeparture[i];
+                int from = fromRows.values[connection];
+                int to = toRows.values[connection];
+                departureStops[i] = rowStops.values[from];
+                arrivalStops[i] = rowStops.values[to];
+                departureTimes[i] = rowDepartures.values[from];
+                arrivalTimes[i] = rowArrivals.values[to];
+                trips[i] = rowTrips.values[from];
+            }
+        }
+
+        private static int compareRows(IntArray rowTrips, IntArray rowSequences, int a, int b) {
+            int byTrip = Integer.compare(rowTrips.values[a], rowTrips.values[b]);
+            return byTrip != 0 ? byTrip : Integer.compare(rowSequences.values[a], rowSequences.values[b]);
+        }
+
+        /**
+         * Fußwege: alle Haltepunkte derselben Station bzw. mit demselben Namen sind
+         * untereinander mit der Umstiegszeit erreichbar, dazu die Einträge aus transfers.txt.
+         */
+        void buildFootpaths(Path transfersFile, int transferSeconds) throws IOException {
+            Map<String, List<Integer>> groups = new HashMap<>();
+            for (int stop = 0; stop < stopIds.size(); stop++) {
+                String station = stopStations.get(stop);
+                if (station.isEmpty() && stopNames.get(stop).isBlank()) {
+                    continue;
+                }
+                String key = station.isEmpty() ? "name:" + StopSearchIndex.normalize(stopNames.get(stop)) : "station:" + station;
+                groups.computeIfAbsent(key, k -> new ArrayList<>()).add(stop);
+            }
+
+            List<Map<Integer, Integer>> edges = new ArrayList<>(stopIds.size());
+            for (int stop = 0; stop < stopIds.size(); stop++) {
+                edges.add(new HashMap<>());
+            }
+            for (List<Integer> members : groups.values()) {
+                for (int from : members) {
+                    for (int to : members) {
+                        if (from != to) {
+                            edges.get(from).put(to, transferSeconds);
+                        }
+                    }
+                }
+            }
+            if (Files.exists(transfersFile)) {
+                try (GtfsReader reader = new GtfsReader(transfersFile)) {
+                    int from = reader.column("from_stop_id");
+                    int to = reader.column("to_stop_id");
+                    int type = reader.optionalColumn("transfer_type");
+                    int minTime = reader.optionalColumn("min_transfer_time");
+                    String[] row;
+                    while ((row = reader.next()) != null) {
+                        Integer fromStop = stopIndex.get(row[from]);
+                        Integer toStop = stopIndex.get(row[to]);
+                        if (fromStop == null || toStop == null || fromStop.equals(toStop) || reader.value(row, type).equals("3")) {
+                            continue;
+                        }
+                        String seconds = reader.value(row, minTime);
+                        edges.get(fromStop).put(toStop, seconds.isEmpty() ? transferSeconds : Integer.parseInt(seconds));
+                    }
+                }
+            }
+
+            footpathStart = new int[stopIds.size() + 1];
+            for (int stop = 0; stop < stopIds.size(); stop++) {
+                footpathStart[stop + 1] = footpathStart[stop] + edges.get(stop).size();
+            }
+            footpathTargets = new int[footpathStart[stopIds.size()]];
+            footpathSeconds = new int[footpathTargets.length];
+            for (int stop = 0; stop < stopIds.size(); stop++) {
+                int position = footpathStart[stop];
+                for (Map.Entry<Integer, Integer> edge : edges.get(stop).entrySet()) {
+                    footpathTargets[position] = edge.getKey();
+                    footpathSeconds[position] = edge.getValue();
+                    position++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Wandelt eine GTFS-Zeit (HH:MM:SS, auch über 24 Uhr hinaus) in Sekunden um.
+     */
+    static int parseTime(String time) {
+        int first = time.indexOf(':');
+        int second = time.indexOf(':', first + 1);
+        return Integer.parseInt(time.substring(0, first).trim()) * 3600
+                + Integer.parseInt(time.substring(first + 1, second)) * 60
+                + Integer.parseInt(time.substring(second + 1).trim());
+    }
+
+    /**
+     * Wachsendes int-Array, damit stop_times.txt ohne Boxing eingelesen wird.
+     */
+    private static final class IntArray {
+        private int[] values = new int[1024];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    /**
+     * Liest eine GTFS-Datei (CSV mit Kopfzeile, Felder optional in Anführungszeichen).
+     */
+    private static final class GtfsReader implements AutoCloseable {
+        private final Path file;
+        private final BufferedReader reader;
+        private final List<String> header;
+
+        GtfsReader(Path file) throws IOException {
+            if (!Files.exists(file)) {
+                throw new IOException("GTFS-Datei fehlt: " + file);
+            }
+            this.file = file;
+            this.reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+            String line = reader.readLine();
+            if (line == null) {
+                throw new IOException("Leere GTFS-Datei: " + file);
+            }
+            this.header = Arrays.stream(split(line.replace("\uFEFF", ""))).map(String::trim).toList();
+        }
+
+        int column(String name) throws IOException {
+            int index = header.indexOf(name);
+            if (index < 0) {
+                throw new IOException("Spalte " + name + " fehlt in " + file);
+            }
+            return index;
+        }
+
+        int optionalColumn(String name) {
+            return header.indexOf(name);
+        }
+
+        String value(String[] row, int column) {
+            return column >= 0 && column < row.length ? row[column] : "";
+        }
+
+        String[] next() throws IOException {
+            String line;
+            do {
+                line = reader.readLine();
+            } while (line != null && line.isBlank());
+            if (line == null) {
+                return null;
+            }
+            String[] row = split(line);
+            // Fehlende Felder am Zeilenende wie leere Felder behandeln
+            if (row.length < header.size()) {
+                String[] padded = Arrays.copyOf(row, header.size());
+                Arrays.fill(padded, row.length, padded.length, "");
+                return padded;
+            }
+            return row;
+        }
+
+        private static String[] split(String line) {
+            if (line.indexOf('"') < 0) {
+                return line.split(",", -1);
+            }
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (c == '"') {
+                    if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = !quoted;
+                    }
+                } else if (c == ',' && !quoted) {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else {
+                    field.append(c);
+                }
+            }
+            fields.add(field.toString());
+            return fields.toArray(String[]::new);
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
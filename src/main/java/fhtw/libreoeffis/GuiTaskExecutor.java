@@ -0,0 +1,212 @@
+package fhtw.libreoeffis;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Führt die Hintergrundabrufe der Benutzeroberfläche aus.
+ * Pro Bereich (z. B. "echtzeit" oder "route") zählt nur der zuletzt gestartete Abruf:
+ * <ul>
+ *   <li>Ein erneuter Klick mit derselben Eingabe, während der Abruf noch läuft, wird
+ *       zusammengefasst und startet keinen zweiten Abruf.</li>
+ *   <li>Eine neue Eingabe verdrängt den laufenden Abruf. Wartet er noch auf einen freien
+ *       Platz, entfällt er ganz; läuft er bereits, wird sein Ergebnis verworfen.</li>
+ * </ul>
+ * Laufende Abrufe werden bewusst nicht unterbrochen, da sie sich im {@link EchtzeitCache}
+ * mit Anfragen anderer Aufrufer eine Upstream-Anfrage teilen können.
+ * Höchstens {@code maxConcurrent} Abrufe laufen gleichzeitig, die übrigen warten.
+ */
+final class GuiTaskExecutor {
+
+    /**
+     * Ein Abruf, der im Hintergrund ausgeführt wird.
+     */
+    @FunctionalInterface
+    interface Work<T> {
+        T call() throws Exception;
+    }
+
+    /**
+     * Der zuletzt gestartete Abruf eines Bereichs.
+     */
+    private static final class Slot {
+        private final Object key;
+        private volatile boolean done;
+
+        private Slot(Object key) {
+            this.key = key;
+        }
+    }
+
+    private final Executor uiExecutor;
+    private final Semaphore permits;
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("gui-task-", 0).factory());
+    // Geschützt durch synchronized(this)
+    private final Map<String, Slot> slots = new HashMap<>();
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong superseded = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    /**
+     * @param maxConcurrent Die maximale Anzahl gleichzeitig laufender Abrufe.
+     * @param uiExecutor Führt die Ergebnisse im UI-Thread aus, z. B. {@code Platform::runLater}.
+     */
+    GuiTaskExecutor(int maxConcurrent, Executor uiExecutor) {
+        this.permits = new Semaphore(maxConcurrent);
+        this.uiExecutor = uiExecutor;
+    }
+
+    /**
+     * Startet einen Abruf für einen Bereich.
+     * @param panel Der Bereich der Oberfläche.
+     * @param key Die Eingabe des Abrufs; gleiche Eingaben werden zusammengefasst.
+     * @param work Der Abruf, läuft in einem virtuellen Thread.
+     * @param onSuccess Erhält das Ergebnis im UI-Thread, sofern der Abruf noch aktuell ist.
+     * @param onError Erhält den Fehler im UI-Thread, sofern der Abruf noch aktuell ist.
+     * @return false, wenn der Klick mit einem laufenden Abruf zusammengefasst wurde.
+     */
+    <T> boolean submit(String panel, Object key, Work<T> work, Consumer<? super T> onSuccess, Consumer<? super Exception> onError) {
+        Slot slot = new Slot(key);
+        synchronized (this) {
+            Slot current = slots.get(panel);
+            if (current != null && !current.done) {
+                if (Objects.equals(current.key, key)) {
+                    coalesced.incrementAndGet();
+                    return false;
+                }
+                superseded.incrementAndGet();
+            }
+            slots.put(panel, slot);
+        }
+        submitted.incrementAndGet();
+        long startedAt = System.nanoTime();
+        queued.incrementAndGet();
+        executor.execute(() -> run(panel, slot, startedAt, work, onSuccess, onError));
+        return true;
+    }
+
+    private <T> void run(String panel, Slot slot, long startedAt, Work<T> work,
+                         Consumer<? super T> onSuccess, Consumer<? super Exception> onError) {
+        permits.acquireUninterruptibly();
+        queued.decrementAndGet();
+        try {
+            // Während des Wartens verdrängt: gar nicht erst anfragen
+            if (!isCurrent(panel, slot)) {
+                return;
+            }
+            active.incrementAndGet();
+            try {
+                T result = work.call();
+                completed.incrementAndGet();
+                deliver(panel, slot, () -> onSuccess.accept(result));
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                deliver(panel, slot, () -> onError.accept(e));
+            } finally {
+                active.decrementAndGet();
+                long latency = System.nanoTime() - startedAt;
+                totalLatencyNanos.addAndGet(latency);
+                maxLatencyNanos.accumulateAndGet(latency, Math::max);
+            }
+        } finally {
+            slot.done = true;
+            permits.release();
+        }
+    }
+
+    private void deliver(String panel, Slot slot, Runnable action) {
+        uiExecutor.execute(() -> {
+            // Erst im UI-Thread prüfen, damit ein inzwischen gestarteter Abruf nicht überschrieben wird
+            if (isCurrent(panel, slot)) {
+                action.run();
+            }
+        });
+    }
+
+    private synchronized boolean isCurrent(String panel, Slot slot) {
+        return slots.get(panel) == slot;
+    }
+
+    /**
+     * @return Die Anzahl der Abrufe, die auf einen freien Platz warten.
+     */
+    int getQueueDepth() {
+        return queued.get();
+    }
+
+    /**
+     * @return Die Anzahl der gerade laufenden Abrufe.
+     */
+    int getActive() {
+        return active.get();
+    }
+
+    long getSubmitted() {
+        return submitted.get();
+    }
+
+    long getCoalesced() {
+        return coalesced.get();
+    }
+
+    long getSuperseded() {
+        return superseded.get();
+    }
+
+    long getCompleted() {
+        return completed.get();
+    }
+
+    long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return Die durchschnittliche Zeit vom Klick bis zum Ergebnis in Millisekunden, inklusive Wartezeit.
+     */
+    double getAverageLatencyMillis() {
+        long finished = completed.get() + failed.get();
+        return finished == 0 ? 0 : totalLatencyNanos.get() / 1e6 / finished;
+    }
+
+    /**
+     * @return Die längste Zeit vom Klick bis zum Ergebnis in Millisekunden.
+     */
+    double getMaxLatencyMillis() {
+        return maxLatencyNanos.get() / 1e6;
+    }
+
+    /**
+     * Beendet den Executor; laufende Abrufe werden noch abgeschlossen, aber nicht mehr angezeigt.
+     */
+    void shutdown() {
+        synchronized (this) {
+            slots.clear();
+        }
+        executor.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("GuiTaskExecutor: %d wartend, %d aktiv, %d gestartet, %d zusammengefasst, "
+                        + "%d verdrängt, %d fertig, %d Fehler, Latenz Ø %.1f ms / max %.1f ms",
+                queued.get(), active.get(), submitted.get(), coalesced.get(), superseded.get(),
+                completed.get(), failed.get(), getAverageLatencyMillis(), getMaxLatencyMillis());
+    }
+}
@@ -0,0 +1,253 @@
+package fhtw.libreoeffis;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Hält die Echtzeitdaten beliebter Haltestellen im Cache warm.
+ * Jeder Zugriff über die {@link WienerLinienAPI} erhöht die Beliebtheit einer Haltestelle,
+ * pro Durchlauf verfällt sie wieder ein Stück. In festen Abständen (mit Jitter, damit
+ * mehrere Instanzen nicht gleichzeitig anfragen) werden die beliebtesten Haltestellen
+ * gesammelt neu geladen, knapp bevor ihre Einträge im {@link EchtzeitCache} ablaufen.
+ * Das Vorladen nutzt nur freie Marken des {@link RequestBudget} und lässt eine Reserve
+ * für Anfragen von Benutzern übrig.
+ * Angeheftete Haltestellen (z. B. mit TCP-Abonnenten) werden unabhängig von ihrer
+ * Beliebtheit in jedem Durchlauf zuerst geladen; Beobachter erhalten die frischen Daten.
+ */
+public class HotStopPoller {
+
+    private static final int DEFAULT_TOP_N = 30;
+    // Etwas kürzer als die TTL des Caches, damit beliebte Haltestellen nie ablaufen
+    private static final Duration DEFAULT_INTERVAL = Duration.ofSeconds(12);
+    private static final double JITTER = 0.2;
+    private static final double DECAY = 0.9;
+    private static final double MIN_SCORE = 0.05;
+
+    private final WienerLinienAPI api;
+    private final int topN;
+    private final long intervalMillis;
+    private final Map<String, Double> scores = new ConcurrentHashMap<>();
+    private final Map<String, Integer> pinned = new ConcurrentHashMap<>();
+    private final List<Consumer<Map<String, List<Monitor>>>> refreshListeners = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService scheduler;
+
+    private final AtomicLong cycles = new AtomicLong();
+    private final AtomicLong skippedCycles = new AtomicLong();
+    private final AtomicLong refreshedStops = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    private volatile boolean running;
+
+    /**
+     * Erstellt einen Poller mit den Standardwerten (30 Haltestellen alle 12 Sekunden).
+     * @param api Die API, deren Cache warm gehalten wird.
+     */
+    public HotStopPoller(WienerLinienAPI api) {
+        this(api, DEFAULT_TOP_N, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Erstellt einen Poller und registriert ihn als Beobachter der Zugriffe auf die API.
+     * @param api Die API, deren Cache warm gehalten wird.
+     * @param topN Die Anzahl der Haltestellen, die pro Durchlauf neu geladen werden.
+     * @param interval Der mittlere Abstand zwischen zwei Durchläufen.
+     */
+    public HotStopPoller(WienerLinienAPI api, int topN, Duration interval) {
+        this.api = api;
+        this.topN = topN;
+        this.intervalMillis = interval.toMillis();
+        api.addStopAccessListener(this::recordAccess);
+    }
+
+    /**
+     * Startet die regelmäßigen Durchläufe. Ein erneuter Aufruf hat keine Wirkung,
+     * nach {@link #stop()} kann der Poller wieder gestartet werden.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+                Thread.ofVirtual().name("hot-stop-poller").factory());
+        // Nach stop() soll kein bereits geplanter Durchlauf mehr starten
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        scheduler = executor;
+        scheduleNext(executor);
+    }
+
+    /**
+     * Beendet die Durchläufe. Ein laufender Durchlauf wird noch abgeschlossen,
+     * der nächste geplante entfällt.
+     */
+    public synchronized void stop() {
+        running = false;
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Verbucht einen Zugriff auf eine Haltestelle.
+     * @param stopId Die ID der Haltestelle.
+     */
+    public void recordAccess(String stopId) {
+        if (stopId != null && stopId.matches("\\d+")) {
+            scores.merge(stopId, 1.0, Double::sum);
+        }
+    }
+
+    /**
+     * Gibt Haltestellen eine Anfangsbeliebtheit, z. B. aus den häufig besuchten Haltestellen.
+     * @param stopIds Die IDs der Haltestellen.
+     * @param weight Die Beliebtheit, die jeder Haltestelle gutgeschrieben wird.
+     */
+    public void seed(Collection<String> stopIds, double weight) {
+        for (String stopId : stopIds) {
+            if (stopId != null && stopId.matches("\\d+")) {
+                scores.merge(stopId, weight, Double::sum);
+            }
+        }
+    }
+
+    /**
+     * Heftet Haltestellen an, sodass sie in jedem Durchlauf geladen werden.
+     * Mehrfaches Anheften wird gezählt und muss ebenso oft gelöst werden.
+     * @param stopIds Die IDs der Haltestellen.
+     */
+    public void pin(Collection<String> stopIds) {
+        for (String stopId : stopIds) {
+            pinned.merge(stopId, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Löst mit {@link #pin(Collection)} angeheftete Haltestellen wieder.
+     * @param stopIds Die IDs der Haltestellen.
+     */
+    public void unpin(Collection<String> stopIds) {
+        for (String stopId : stopIds) {
+            pinned.computeIfPresent(stopId, (id, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    /**
+     * Registriert einen Beobachter, der nach jedem Durchlauf die neu geladenen
+     * Monitore pro Stop-ID erhält. Er läuft im Thread des Pollers und sollte nicht blockieren.
+     * @param listener Der Beobachter.
+     */
+    public void addRefreshListener(Consumer<Map<String, List<Monitor>>> listener) {
+        refreshListeners.add(listener);
+    }
+
+    /**
+     * Gibt die derzeit beliebtesten Haltestellen zurück.
+     * @param limit Die maximale Anzahl.
+     * @return Die Stop-IDs, absteigend nach Beliebtheit.
+     */
+    public List<String> getHotStops(int limit) {
+        return scores.entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue(Comparator.reverseOrder()))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    /**
+     * Plant den nächsten Durchlauf auf dem Scheduler, auf dem auch der vorige lief,
+     * damit ein Durchlauf aus der Zeit vor stop() nicht in einem neuen Start weiterläuft.
+     */
+    private void scheduleNext(ScheduledExecutorService executor) {
+        double factor = 1 + ThreadLocalRandom.current().nextDouble(-JITTER, JITTER);
+        try {
+            executor.schedule(() -> {
+                try {
+                    runCycle();
+                } finally {
+                    scheduleNext(executor);
+                }
+            }, Math.round(intervalMillis * factor), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // stop() wurde während des Durchlaufs aufgerufen
+        }
+    }
+
+    /**
+     * Ein Durchlauf: Beliebtheit verfallen lassen, die angehefteten und beliebtesten
+     * Haltestellen auswählen und so viele davon neu laden, wie das Anfragebudget erlaubt.
+     */
+    void runCycle() {
+        try {
+            cycles.incrementAndGet();
+            scores.replaceAll((stopId, score) -> score * DECAY);
+            scores.values().removeIf(score -> score < MIN_SCORE);
+
+            List<String> hotStops = new ArrayList<>(pinned.keySet());
+            for (String stopId : getHotStops(topN)) {
+                if (!pinned.containsKey(stopId)) {
+                    hotStops.add(stopId);
+                }
+            }
+            if (hotStops.isEmpty()) {
+                return;
+            }
+
+            // Bei knappem Budget zuerst die weniger beliebte Hälfte weglassen
+            RequestBudget budget = api.getRequestBudget();
+            int reserve = budget.getCapacity() / 4;
+            while (!hotStops.isEmpty() && !budget.tryAcquire(api.countRequests(hotStops), reserve)) {
+                hotStops.subList(hotStops.size() / 2, hotStops.size()).clear();
+            }
+            if (hotStops.isEmpty()) {
+                skippedCycles.incrementAndGet();
+                return;
+            }
+
+            Map<String, List<Monitor>> daten = api.refreshEchtzeitDaten(hotStops);
+            refreshedStops.addAndGet(hotStops.size());
+            for (Consumer<Map<String, List<Monitor>>> listener : refreshListeners) {
+                listener.accept(daten);
+            }
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            System.err.println("Fehler beim Vorladen beliebter Haltestellen: " + e.getMessage());
+        }
+    }
+
+    public long getCycles() {
+        return cycles.get();
+    }
+
+    public long getSkippedCycles() {
+        return skippedCycles.get();
+    }
+
+    public long getRefreshedStops() {
+        return refreshedStops.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    @Override
+    public String toString() {
+        return "HotStopPoller: " + scores.size() + " beobachtet, " + cycles.get() + " Durchläufe, "
+                + skippedCycles.get() + " übersprungen, " + refreshedStops.get() + " Haltestellen geladen, "
+                + failures.get() + " Fehler";
+    }
+}
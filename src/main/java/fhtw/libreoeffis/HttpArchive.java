@@ -0,0 +1,218 @@
+package fhtw.libreoeffis;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Kompaktes Archiv aufgezeichneter Upstream-Antworten für {@link RecordingTransport} und
+ * {@link ReplayTransport}. Die Datei ist gzip-komprimiert und enthält nacheinander
+ * Antwortkörper und Anfragen; ein Körper wird nur beim ersten Auftreten gespeichert und
+ * danach über seine Nummer referenziert, da sich z. B. GBFS-Feeds selten ändern.
+ * <pre>
+ * Kopf:     int MAGIC, int VERSION
+ * Körper:   byte 1, int länge, länge Bytes (entpackt)
+ * Anfrage:  byte 2, UTF url, int status, long dauer µs, short anzahl, (UTF name, UTF wert)*, int körper oder -1
+ * </pre>
+ * Status 0 steht für einen Fehler ohne HTTP-Antwort, die Meldung steht dann im Header {@link #ERROR_HEADER}.
+ */
+final class HttpArchive {
+
+    private static final int MAGIC = 0x4C4F4841; // "LOHA"
+    private static final int VERSION = 1;
+    private static final byte BODY = 1;
+    private static final byte EXCHANGE = 2;
+    static final String ERROR_HEADER = ":error";
+
+    /**
+     * Eine aufgezeichnete Anfrage.
+     * @param url Die URL der Anfrage.
+     * @param statusCode Der HTTP-Status oder 0 bei einem Fehler ohne Antwort.
+     * @param latencyMicros Die Dauer bis zur vollständig gelesenen Antwort in Mikrosekunden.
+     * @param headers Die aufbewahrten Antwort-Header.
+     * @param body Der entpackte Antwortkörper oder null.
+     */
+    record Exchange(String url, int statusCode, long latencyMicros, Map<String, String> headers, byte[] body) {
+    }
+
+    private HttpArchive() {
+    }
+
+    /**
+     * Liest alle Anfragen eines Archivs.
+     * @param path Der Pfad zum Archiv.
+     * @return Die Anfragen in der Reihenfolge der Aufzeichnung.
+     * @throws IOException Wenn die Datei nicht gelesen werden kann oder kein Archiv ist.
+     */
+    static List<Exchange> read(Path path) throws IOException {
+        List<Exchange> exchanges = new ArrayList<>();
+        List<byte[]> bodies = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(path))))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Keine Aufzeichnung: " + path);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Nicht unterstützte Version " + version + " der Aufzeichnung: " + path);
+            }
+            while (true) {
+                int type;
+                try {
+                    type = in.readByte();
+                } catch (EOFException e) {
+                    // Auch eine nicht ordentlich geschlossene Aufzeichnung ist bis hierher verwendbar
+                    break;
+                }
+                if (type == BODY) {
+                    int length = in.readInt();
+                    if (length < 0) {
+                        throw new IOException("Beschädigte Aufzeichnung: " + path);
+                    }
+                    byte[] body = new byte[length];
+                    in.readFully(body);
+                    bodies.add(body);
+                } else if (type == EXCHANGE) {
+                    String url = in.readUTF();
+                    int status = in.readInt();
+                    long latency = in.readLong();
+                    int headerCount = in.readUnsignedShort();
+                    Map<String, String> headers = new LinkedHashMap<>();
+                    for (int i = 0; i < headerCount; i++) {
+                        headers.put(in.readUTF(), in.readUTF());
+                    }
+                    int bodyId = in.readInt();
+                    if (bodyId >= bodies.size()) {
+                        throw new IOException("Beschädigte Aufzeichnung, unbekannter Körper " + bodyId + ": " + path);
+                    }
+                    exchanges.add(new Exchange(url, status, latency, headers, bodyId >= 0 ? bodies.get(bodyId) : null));
+                } else {
+                    throw new IOException("Beschädigte Aufzeichnung: " + path);
+                }
+            }
+        } catch (EOFException e) {
+            // Abgebrochen mitten in einem Eintrag, z. B. beim Beenden der JVM: bisherige Einträge verwenden
+        }
+        return exchanges;
+    }
+
+    /**
+     * Schreibt Anfragen fortlaufend in ein neues Archiv. Die Methoden sind threadsicher.
+     */
+    static final class Writer implements AutoCloseable {
+
+        private static final int MAX_UTF_CHARS = 65535 / 3;
+
+        private final DataOutputStream out;
+        // Prüfsumme eines Körpers → Nummer, damit gleiche Körper nur einmal gespeichert werden
+        private final Map<ByteBuffer, Integer> bodyIds = new HashMap<>();
+        private long written;
+        private boolean closed;
+
+        /**
+         * Legt das Archiv an; eine vorhandene Datei wird überschrieben.
+         * @param path Der Pfad zum Archiv.
+         * @throws IOException Wenn die Datei nicht angelegt werden kann.
+         */
+        Writer(Path path) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(path))));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        }
+
+        /**
+         * Hängt eine Anfrage an.
+         * @param exchange Die Anfrage.
+         * @throws IOException Wenn nicht geschrieben werden kann.
+         */
+        synchronized void append(Exchange exchange) throws IOException {
+            if (closed) {
+                return;
+            }
+            int bodyId = -1;
+            if (exchange.body() != null) {
+                ByteBuffer digest = ByteBuffer.wrap(sha256(exchange.body()));
+                Integer known = bodyIds.get(digest);
+                if (known == null) {
+                    bodyId = bodyIds.size();
+                    bodyIds.put(digest, bodyId);
+                    out.writeByte(BODY);
+                    out.writeInt(exchange.body().length);
+                    out.write(exchange.body());
+                } else {
+                    bodyId = known;
+                }
+            }
+            out.writeByte(EXCHANGE);
+            out.writeUTF(limit(exchange.url()));
+            out.writeInt(exchange.statusCode());
+            out.writeLong(exchange.latencyMicros());
+            out.writeShort(exchange.headers().size());
+            for (Map.Entry<String, String> header : exchange.headers().entrySet()) {
+                out.writeUTF(limit(header.getKey()));
+                out.writeUTF(limit(header.getValue()));
+            }
+            out.writeInt(bodyId);
+            written++;
+        }
+
+        /**
+         * Kürzt einen Text so, dass er in writeUTF passt (höchstens 65535 Bytes, also
+         * sicher bei 21845 Zeichen); lange Fehlermeldungen würden sonst den Eintrag verwerfen.
+         */
+        private static String limit(String value) {
+            if (value.length() <= MAX_UTF_CHARS) {
+                return value;
+            }
+            int end = Character.isHighSurrogate(value.charAt(MAX_UTF_CHARS - 1)) ? MAX_UTF_CHARS - 1 : MAX_UTF_CHARS;
+            return value.substring(0, end);
+        }
+
+        /**
+         * @return Die Anzahl der geschriebenen Anfragen.
+         */
+        synchronized long getWritten() {
+            return written;
+        }
+
+        /**
+         * @return Die Anzahl der unterschiedlichen gespeicherten Körper.
+         */
+        synchronized int getBodies() {
+            return bodyIds.size();
+        }
+
+        /**
+         * Schließt das Archiv und schreibt das Ende des gzip-Stroms.
+         */
+        @Override
+        public synchronized void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                out.close();
+            }
+        }
+
+        private static byte[] sha256(byte[] data) {
+            try {
+                return MessageDigest.getInstance("SHA-256").digest(data);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
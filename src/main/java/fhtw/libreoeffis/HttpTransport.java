@@ -0,0 +1,292 @@
+package fhtw.libreoeffis;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Gemeinsame HTTP-Schicht für die Upstream-APIs (Wiener Linien und WienMobil).
+ * Basiert auf {@link HttpClient} mit HTTP/2, wiederverwendeten Verbindungen,
+ * Timeouts und gzip-Komprimierung und bietet eine asynchrone Schnittstelle.
+ * Über System-Properties kann die gemeinsame Instanz Antworten aufzeichnen
+ * ({@code libreoeffis.http.record=<datei>}) oder ohne Netzwerk abspielen
+ * ({@code libreoeffis.http.replay=<datei>}), siehe {@link RecordingTransport} und {@link ReplayTransport}.
+ */
+public class HttpTransport {
+
+    private static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+    static final String RECORD_PROPERTY = "libreoeffis.http.record";
+    static final String REPLAY_PROPERTY = "libreoeffis.http.replay";
+    static final String REPLAY_LATENCY_SCALE_PROPERTY = "libreoeffis.http.replay.latencyScale";
+    static final String REPLAY_LATENCY_MILLIS_PROPERTY = "libreoeffis.http.replay.latencyMillis";
+
+    private static volatile HttpTransport shared;
+
+    // Schließt Antwort-Streams, deren Frist abgelaufen ist
+    private static final ScheduledThreadPoolExecutor DEADLINES = createDeadlineTimer();
+
+    private final HttpClient client;
+    private final Duration requestTimeout;
+
+    /**
+     * Fehler für Antworten mit einem HTTP-Status ungleich 200.
+     */
+    public static class HttpStatusException extends IOException {
+        private final int statusCode;
+
+        public HttpStatusException(int statusCode) {
+            super("Fehler bei der API-Anfrage: HTTP " + statusCode);
+            this.statusCode = statusCode;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+    }
+
+    /**
+     * Antwort einer Anfrage mit Status 200 oder 304.
+     * @param statusCode Der HTTP-Status.
+     * @param body Der (ggf. entpackte) Antwort-Stream, bei 304 null.
+     * @param headers Die Antwort-Header, z. B. ETag oder Last-Modified.
+     */
+    public record Response(int statusCode, InputStream body, HttpHeaders headers) implements AutoCloseable {
+        public boolean isNotModified() {
+            return statusCode == 304;
+        }
+
+        /**
+         * Schließt den Antwortkörper, falls vorhanden, und gibt damit die Verbindung frei.
+         */
+        @Override
+        public void close() throws IOException {
+            if (body != null) {
+                body.close();
+            }
+        }
+    }
+
+    public HttpTransport() {
+        this(DEFAULT_CONNECT_TIMEOUT, DEFAULT_REQUEST_TIMEOUT);
+    }
+
+    /**
+     * @param connectTimeout Maximale Dauer für den Verbindungsaufbau.
+     * @param requestTimeout Maximale Dauer bis zum Eintreffen der Antwort-Header und, ab dann gerechnet,
+     *                       bis der Antwortkörper vollständig gelesen ist.
+     */
+    public HttpTransport(Duration connectTimeout, Duration requestTimeout) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * Gibt die gemeinsam genutzte Instanz zurück, damit alle API-Klassen denselben Verbindungspool verwenden.
+     * Ist eine Aufzeichnung oder ein Abspielen konfiguriert, wird die entsprechende Schicht geliefert.
+     * @return Die gemeinsame HttpTransport-Instanz.
+     * @throws IllegalStateException Wenn die Aufzeichnung nicht angelegt oder gelesen werden kann.
+     */
+    public static HttpTransport shared() {
+        HttpTransport instance = shared;
+        if (instance == null) {
+            synchronized (HttpTransport.class) {
+                instance = shared;
+                if (instance == null) {
+                    instance = createConfigured();
+                    shared = instance;
+                }
+            }
+        }
+        return instance;
+    }
+
+    private static ScheduledThreadPoolExecutor createDeadlineTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1,
+                Thread.ofPlatform().name("http-deadline").daemon(true).factory());
+        // Normalerweise wird der Stream rechtzeitig geschlossen, die Frist also abgebrochen
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    private static HttpTransport createConfigured() {
+        String replay = System.getProperty(REPLAY_PROPERTY);
+        String record = System.getProperty(RECORD_PROPERTY);
+        try {
+            if (replay != null) {
+                // Nie auf das Netzwerk ausweichen: ein Lasttest soll die echten Endpunkte nicht erreichen
+                double scale = Double.parseDouble(System.getProperty(REPLAY_LATENCY_SCALE_PROPERTY, "0"));
+                Duration extra = Duration.ofMillis(Long.getLong(REPLAY_LATENCY_MILLIS_PROPERTY, 0));
+                ReplayTransport transport = ReplayTransport.load(Paths.get(replay), scale, extra);
+                System.out.println("Upstream-Antworten werden abgespielt aus " + replay + ": " + transport);
+                return transport;
+            }
+            if (record != null) {
+                RecordingTransport transport = new RecordingTransport(new HttpTransport(), Paths.get(record));
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    transport.close();
+                    System.out.println(transport);
+                }, "http-record-shutdown"));
+                System.out.println("Upstream-Antworten werden aufgezeichnet in " + record);
+                return transport;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Fehler beim Öffnen der Aufzeichnung: " + e.getMessage(), e);
+        }
+        return new HttpTransport();
+    }
+
+    /**
+     * Führt eine GET-Anfrage asynchron aus. Antworten mit Status 200 und 304 werden
+     * zurückgegeben, damit bedingte Anfragen (If-None-Match, If-Modified-Since) möglich sind.
+     * Bei jedem anderen Status wird der Stream geschlossen und die Future mit
+     * einer {@link HttpStatusException} abgeschlossen.
+     * @param url Die URL der Anfrage.
+     * @param headers Zusätzliche Header, z. B. User-Agent oder If-None-Match.
+     * @return Die Future mit der Antwort, deren Stream der Aufrufer schließen muss.
+     */
+    public CompletableFuture<Response> sendAsync(String url, Map<String, String> headers) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(requestTimeout)
+                .header("Accept-Encoding", "gzip")
+                .GET();
+        headers.forEach(builder::header);
+
+        return client.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofInputStream())
+                .thenApply(response -> {
+                    try {
+                        if (response.statusCode() == 304) {
+                            response.body().close();
+                            return new Response(304, null, response.headers());
+                        }
+                        if (response.statusCode() != 200) {
+                            response.body().close();
+                            throw new HttpStatusException(response.statusCode());
+                        }
+                        // Frist für den Körper ab den Headern, damit ein stockender Server den Leser nicht ewig blockiert
+                        InputStream body = new DeadlineInputStream(response.body(), requestTimeout);
+                        return new Response(200, decode(body, response.headers()), response.headers());
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                });
+    }
+
+    /**
+     * Führt eine GET-Anfrage asynchron aus und liefert den (ggf. entpackten) Antwort-Stream.
+     * @param url Die URL der Anfrage.
+     * @param headers Zusätzliche Header, z. B. User-Agent.
+     * @return Die Future mit dem Antwort-Stream, den der Aufrufer schließen muss.
+     */
+    public CompletableFuture<InputStream> getStreamAsync(String url, Map<String, String> headers) {
+        return sendAsync(url, headers).thenApply(Response::body);
+    }
+
+    private static InputStream decode(InputStream body, HttpHeaders headers) throws IOException {
+        String encoding = headers.firstValue("Content-Encoding").orElse("");
+        if (!encoding.equalsIgnoreCase("gzip")) {
+            return body;
+        }
+        try {
+            return new GZIPInputStream(body);
+        } catch (IOException e) {
+            // Ungültiger gzip-Kopf: der Stream gehört noch niemandem und muss hier geschlossen werden
+            body.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Antwort-Stream mit einer Frist: Ist der Körper bis dahin nicht gelesen und geschlossen,
+     * wird der Stream von einem Timer geschlossen. Ein blockierter Leser erhält dann eine
+     * {@link HttpTimeoutException}, wie sie der {@link UpstreamGuard} als Timeout zählt.
+     */
+    private static final class DeadlineInputStream extends FilterInputStream {
+        private final ScheduledFuture<?> deadline;
+        private volatile boolean expired;
+
+        DeadlineInputStream(InputStream in, Duration timeout) {
+            super(in);
+            this.deadline = DEADLINES.schedule(this::expire, timeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        private void expire() {
+            expired = true;
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Der Stream ist ohnehin unbrauchbar
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
+            } catch (IOException e) {
+                throw translate(e);
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            try {
+                return super.read(buffer, offset, length);
+            } catch (IOException e) {
+                throw translate(e);
+            }
+        }
+
+        private IOException translate(IOException e) {
+            return expired ? new HttpTimeoutException("Zeitüberschreitung beim Lesen der Antwort") : e;
+        }
+
+        @Override
+        public void close() throws IOException {
+            deadline.cancel(false);
+            super.close();
+        }
+    }
+
+    /**
+     * Wartet auf eine Future und gibt die eigentliche Fehlerursache weiter.
+     * @param future Die Future.
+     * @return Das Ergebnis der Future.
+     * @throws Exception Die Ursache, falls die Future fehlgeschlagen ist.
+     */
+    static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            while (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof Exception exception) {
+                throw exception;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package fhtw.libreoeffis;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Direkter Aufruf eines TCP-Servers in derselben JVM, ohne Socket, Rahmen und Kopien
+ * durch die Socket-Puffer. Die Antworten entsprechen denen des gerahmten Protokolls.
+ */
+final class InProcessTransport implements EchtzeitTransport {
+
+    private static final ExecutorService EXECUTOR = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("tcp-inprocess-", 0).factory());
+
+    private final TCPCommunication server;
+
+    /**
+     * @param server Der Server, dessen Anfragen direkt beantwortet werden.
+     */
+    InProcessTransport(TCPCommunication server) {
+        this.server = server;
+    }
+
+    @Override
+    public CompletableFuture<String> requestAsync(String stopIds) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        EXECUTOR.execute(() -> {
+            try {
+                future.complete(request(stopIds));
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Beantwortet die Anfrage im aufrufenden Thread.
+     */
+    @Override
+    public String request(String stopIds) throws TCPClient.ServerException {
+        return server.answerInProcess(stopIds);
+    }
+}
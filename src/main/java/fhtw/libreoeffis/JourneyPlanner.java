@@ -0,0 +1,371 @@
+package fhtw.libreoeffis;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Routenplaner auf Basis eines lokalen GTFS-Fahrplans ({@link GtfsTimetable}).
+ * Sucht mit dem Connection Scan Algorithm die früheste Ankunft inklusive Umstiegen,
+ * ganz ohne Netzwerkanfragen. Start und Ziel können als GTFS-Stop-ID, als Stop-ID der
+ * Haltepunkte-CSV (über den Namen im {@link StopRegistry}) oder als Haltestellenname
+ * angegeben werden; alle Steige einer Haltestelle gelten dann als Start bzw. Ziel.
+ * Das GTFS-Verzeichnis wird über die System-Property {@value #GTFS_DIR_PROPERTY} festgelegt.
+ */
+public class JourneyPlanner {
+
+    static final String GTFS_DIR_PROPERTY = "libreoeffis.gtfs.dir";
+    static final String DEFAULT_GTFS_DIR = "src/main/java/fhtw/libreoeffis/files/gtfs";
+    static final ZoneId ZONE = ZoneId.of("Europe/Vienna");
+
+    private static final int TRANSFER_SECONDS = 120;
+    private static final int MAX_JOURNEY_SECONDS = 4 * 3600;
+    private static final int UNREACHED = Integer.MAX_VALUE;
+    private static final int DAY_SECONDS = 24 * 3600;
+
+    private static CompletableFuture<JourneyPlanner> shared;
+
+    private final GtfsTimetable timetable;
+    private final Map<String, int[]> stopsByName;
+
+    /**
+     * Ein Abschnitt einer Verbindung: eine Fahrt mit einer Linie oder ein Fußweg.
+     * @param line Die Linie oder null bei einem Fußweg.
+     * @param headsign Das Fahrtziel der Linie.
+     * @param from Der Name des Einstiegs.
+     * @param to Der Name des Ausstiegs.
+     * @param departure Die Abfahrt in Sekunden ab Mitternacht des angefragten Tags, am Folgetag über 86400.
+     * @param arrival Die Ankunft in Sekunden ab Mitternacht des angefragten Tags, am Folgetag über 86400.
+     */
+    public record Leg(String line, String headsign, String from, String to, int departure, int arrival) {
+        public boolean isWalk() {
+            return line == null;
+        }
+    }
+
+    /**
+     * Eine gefundene Verbindung.
+     * @param legs Die Abschnitte in Fahrtreihenfolge.
+     */
+    public record Journey(List<Leg> legs) {
+        public int departure() {
+            return legs.get(0).departure();
+        }
+
+        public int arrival() {
+            return legs.get(legs.size() - 1).arrival();
+        }
+
+        public int transfers() {
+            return (int) Math.max(0, legs.stream().filter(leg -> !leg.isWalk()).count() - 1);
+        }
+
+        /**
+         * Formatiert die Verbindung für die Anzeige.
+         * @return Die formatierte Verbindung.
+         */
+        public String format() {
+            StringBuilder result = new StringBuilder("Verbindung laut Fahrplan:\n");
+            for (Leg leg : legs) {
+                if (leg.isWalk()) {
+                    if (leg.from().equals(leg.to())) {
+                        result.append("  Umstieg in ").append(leg.to());
+                    } else {
+                        result.append("  Fußweg von ").append(leg.from()).append(" nach ").append(leg.to());
+                    }
+                    result.append(" (").append(Math.max(1, (leg.arrival() - leg.departure()) / 60)).append(" Min.)\n");
+                    continue;
+                }
+                result.append("  ").append(leg.line());
+                if (!leg.headsign().isEmpty()) {
+                    result.append(" Richtung ").append(leg.headsign());
+                }
+                result.append("\n    ").append(formatTime(leg.departure())).append(" ab ").append(leg.from())
+                        .append("\n    ").append(formatTime(leg.arrival())).append(" an ").append(leg.to()).append("\n");
+            }
+            result.append("  Abfahrtszeit: ").append(formatTime(departure())).append("\n")
+                    .append("  Ankunftszeit: ").append(formatTime(arrival())).append("\n")
+                    .append("  Fahrtdauer: ").append((arrival() - departure()) / 60).append(" Minuten, Umstiege: ").append(transfers()).append(".");
+            return result.toString();
+        }
+    }
+
+    JourneyPlanner(GtfsTimetable timetable) {
+        this.timetable = timetable;
+        Map<String, List<Integer>> byName = new HashMap<>();
+        for (int stop = 0; stop < timetable.stopCount(); stop++) {
+            byName.computeIfAbsent(StopSearchIndex.normalize(timetable.stopNames[stop]), key -> new ArrayList<>()).add(stop);
+        }
+        this.stopsByName = new HashMap<>(byName.size() * 2);
+        byName.forEach((name, stops) -> stopsByName.put(name, stops.stream().mapToInt(Integer::intValue).toArray()));
+    }
+
+    /**
+     * Lädt den Fahrplan aus einem GTFS-Verzeichnis.
+     * @param directory Das Verzeichnis mit stops.txt, routes.txt, trips.txt und stop_times.txt.
+     * @return Der Routenplaner.
+     * @throws IOException Wenn der Datensatz nicht gelesen werden kann.
+     */
+    public static JourneyPlanner load(Path directory) throws IOException {
+        return new JourneyPlanner(GtfsTimetable.load(directory, TRANSFER_SECONDS));
+    }
+
+    /**
+     * Startet das Laden des gemeinsamen Routenplaners im Hintergrund, falls noch nicht geschehen.
+     * Ist kein GTFS-Datensatz vorhanden oder schlägt das Laden fehl, wird die Future mit null
+     * abgeschlossen und die Routenplanung fällt auf die Echtzeitdaten zurück.
+     * @return Die Future mit dem Routenplaner oder null.
+     */
+    public static synchronized CompletableFuture<JourneyPlanner> sharedAsync() {
+        if (shared == null) {
+            Path directory = Path.of(System.getProperty(GTFS_DIR_PROPERTY, DEFAULT_GTFS_DIR));
+            if (!Files.isDirectory(directory)) {
+                shared = CompletableFuture.completedFuture(null);
+                return shared;
+            }
+            CompletableFuture<JourneyPlanner> future = new CompletableFuture<>();
+            shared = future;
+            Thread.ofVirtual().name("gtfs-loader").start(() -> {
+                try {
+                    future.complete(load(directory));
+                } catch (Exception e) {
+                    System.err.println("Fehler beim Laden des GTFS-Fahrplans aus " + directory + ": " + e.getMessage());
+                    future.complete(null);
+                }
+            });
+        }
+        return shared;
+    }
+
+    /**
+     * Sucht die Verbindung mit der frühesten Ankunft.
+     * @param from Start als GTFS-Stop-ID, Stop-ID der Haltepunkte-CSV oder Haltestellenname.
+     * @param to Ziel in derselben Form.
+     * @param departure Der frühestmögliche Abfahrtszeitpunkt.
+     * @return Die Verbindung oder leer, wenn Start oder Ziel unbekannt sind oder keine Verbindung existiert.
+     */
+    public Optional<Journey> plan(String from, String to, ZonedDateTime departure) {
+        int[] sources = resolveStops(from);
+        int[] targets = resolveStops(to);
+        if (sources.length == 0 || targets.length == 0) {
+            return Optional.empty();
+        }
+        ZonedDateTime local = departure.withZoneSameInstant(ZONE);
+        return earliestArrival(sources, targets, local.toLocalDate(), local.toLocalTime().toSecondOfDay());
+    }
+
+    /**
+     * Connection Scan: Verbindungen ab der Abfahrtszeit der Reihe nach prüfen. Eine Verbindung
+     * ist nutzbar, wenn ihre Fahrt bereits erreicht wurde oder ihr Abfahrtshalt rechtzeitig
+     * erreichbar ist. Der Scan endet, sobald keine Verbindung mehr früher ankommen kann.
+     * Neben dem Betriebstag selbst werden der Vortag (Fahrten nach Mitternacht, in GTFS mit
+     * Zeiten ab 24:00) und der Folgetag (Abfahrten kurz vor Mitternacht) berücksichtigt; ihre
+     * Zeiten werden dafür um einen Tag verschoben und mit denen des Betriebstags zusammengeführt.
+     */
+    Optional<Journey> earliestArrival(int[] sources, int[] targets, LocalDate date, int startTime) {
+        int stops = timetable.stopCount();
+        int[] arrival = new int[stops];
+        int[] arrivedBy = new int[stops];
+        int[] arrivedDay = new int[stops];
+        int[] boardedAt = new int[stops];
+        int[] walkedFrom = new int[stops];
+        Arrays.fill(arrival, UNREACHED);
+        Arrays.fill(arrivedBy, -1);
+        Arrays.fill(walkedFrom, -1);
+        boolean[] isTarget = new boolean[stops];
+        for (int target : targets) {
+            isTarget[target] = true;
+        }
+
+        int best = UNREACHED;
+        for (int source : sources) {
+            arrival[source] = startTime;
+            if (isTarget[source]) {
+                best = startTime;
+            }
+        }
+        for (int source : sources) {
+            best = Math.min(best, relaxFootpaths(source, arrival, arrivedBy, walkedFrom, isTarget));
+        }
+
+        int latest = startTime + MAX_JOURNEY_SECONDS;
+        List<ServiceDay> days = new ArrayList<>(3);
+        for (int offset = -DAY_SECONDS; offset <= DAY_SECONDS; offset += DAY_SECONDS) {
+            int first = timetable.firstConnectionAfter(startTime - offset);
+            if (first < timetable.connectionCount() && timetable.departureTimes[first] + offset <= latest) {
+                days.add(new ServiceDay(offset, timetable.activeTrips(date.plusDays(offset / DAY_SECONDS)), first, timetable.tripLines.length));
+            }
+        }
+
+        while (true) {
+            // Die Verbindungen der Betriebstage sind je für sich sortiert; die früheste Abfahrt kommt zuerst dran
+            ServiceDay day = null;
+            for (ServiceDay candidate : days) {
+                if (candidate.next < timetable.connectionCount()
+                        && (day == null || candidate.departure(timetable) < day.departure(timetable))) {
+                    day = candidate;
+                }
+            }
+            if (day == null) {
+                break;
+            }
+            int c = day.next++;
+            int departureTime = timetable.departureTimes[c] + day.offset;
+            if (departureTime >= best || departureTime > latest) {
+                break;
+            }
+            int trip = timetable.trips[c];
+            if (!day.activeTrips[trip]) {
+                continue;
+            }
+            if (day.tripBoarding[trip] < 0) {
+                if (arrival[timetable.departureStops[c]] > departureTime) {
+                    continue;
+                }
+                day.tripBoarding[trip] = c;
+            }
+
+            int stop = timetable.arrivalStops[c];
+            int arrivalTime = timetable.arrivalTimes[c] + day.offset;
+            if (arrivalTime < arrival[stop]) {
+                arrival[stop] = arrivalTime;
+                arrivedBy[stop] = c;
+                arrivedDay[stop] = day.offset;
+                boardedAt[stop] = day.tripBoarding[trip];
+                walkedFrom[stop] = -1;
+                if (isTarget[stop]) {
+                    best = Math.min(best, arrivalTime);
+                }
+                best = Math.min(best, relaxFootpaths(stop, arrival, arrivedBy, walkedFrom, isTarget));
+            }
+        }
+
+        int reached = -1;
+        for (int target : targets) {
+            if (arrival[target] != UNREACHED && (reached < 0 || arrival[target] < arrival[reached])) {
+                reached = target;
+            }
+        }
+        if (reached < 0 || arrival[reached] == startTime) {
+            return Optional.empty();
+        }
+        return Optional.of(reconstruct(reached, arrival, arrivedBy, arrivedDay, boardedAt, walkedFrom));
+    }
+
+    /**
+     * Ein Betriebstag im Scan: Verschiebung gegenüber dem angefragten Tag, die dort
+     * verkehrenden Fahrten, die erreichten Fahrten und die nächste zu prüfende Verbindung.
+     */
+    private static final class ServiceDay {
+        final int offset;
+        final boolean[] activeTrips;
+        final int[] tripBoarding;
+        int next;
+
+        ServiceDay(int offset, boolean[] activeTrips, int first, int tripCount) {
+            this.offset = offset;
+            this.activeTrips = activeTrips;
+            this.tripBoarding = new int[tripCount];
+            Arrays.fill(tripBoarding, -1);
+            this.next = first;
+        }
+
+        int departure(GtfsTimetable timetable) {
+            return timetable.departureTimes[next] + offset;
+        }
+    }
+
+    /**
+     * Überträgt eine verbesserte Ankunft über die Fußwege auf benachbarte Haltepunkte.
+     * @return Die früheste dabei erreichte Ankunft an einem Ziel.
+     */
+    private int relaxFootpaths(int stop, int[] arrival, int[] arrivedBy, int[] walkedFrom, boolean[] isTarget) {
+        int best = UNREACHED;
+        for (int i = timetable.footpathStart[stop]; i < timetable.footpathStart[stop + 1]; i++) {
+            int neighbour = timetable.footpathTargets[i];
+            int time = arrival[stop] + timetable.footpathSeconds[i];
+            if (time < arrival[neighbour]) {
+                arrival[neighbour] = time;
+                arrivedBy[neighbour] = -1;
+                walkedFrom[neighbour] = stop;
+                if (isTarget[neighbour]) {
+                    best = Math.min(best, time);
+                }
+            }
+        }
+        return best;
+    }
+
+    private Journey reconstruct(int target, int[] arrival, int[] arrivedBy, int[] arrivedDay, int[] boardedAt, int[] walkedFrom) {
+        List<Leg> legs = new ArrayList<>();
+        int stop = target;
+        while (arrivedBy[stop] >= 0 || walkedFrom[stop] >= 0) {
+            if (walkedFrom[stop] >= 0) {
+                int from = walkedFrom[stop];
+                legs.add(new Leg(null, "", timetable.stopNames[from], timetable.stopNames[stop], arrival[from], arrival[stop]));
+                stop = from;
+            } else {
+                int exit = arrivedBy[stop];
+                int entry = boardedAt[stop];
+                int trip = timetable.trips[exit];
+                int offset = arrivedDay[stop];
+                legs.add(new Leg(timetable.tripLines[trip], timetable.tripHeadsigns[trip],
+                        timetable.stopNames[timetable.departureStops[entry]], timetable.stopNames[stop],
+                        timetable.departureTimes[entry] + offset, timetable.arrivalTimes[exit] + offset));
+                stop = timetable.departureStops[entry];
+            }
+        }
+        Collections.reverse(legs);
+        // Umstiege am Start oder Ziel sind für die Anzeige ohne Bedeutung
+        while (!legs.isEmpty() && legs.get(0).isWalk() && legs.get(0).from().equals(legs.get(0).to())) {
+            legs.remove(0);
+        }
+        while (!legs.isEmpty() && legs.get(legs.size() - 1).isWalk() && legs.get(legs.size() - 1).from().equals(legs.get(legs.size() - 1).to())) {
+            legs.remove(legs.size() - 1);
+        }
+        return new Journey(List.copyOf(legs));
+    }
+
+    /**
+     * Übersetzt eine Eingabe in GTFS-Haltepunkte.
+     */
+    int[] resolveStops(String input) {
+        String trimmed = input == null ? "" : input.trim();
+        Integer exact = timetable.stopIndex.get(trimmed);
+        if (exact != null) {
+            return new int[]{exact};
+        }
+        String name = trimmed;
+        if (trimmed.matches("\\d+")) {
+            // Stop-IDs der Haltepunkte-CSV (RBL) sind keine GTFS-IDs; die Zuordnung erfolgt über den Namen
+            StopRegistry registry = StopRegistry.sharedAsync().getNow(null);
+            name = registry != null ? registry.getName(Integer.parseInt(trimmed)) : null;
+            if (name == null) {
+                return new int[0];
+            }
+        }
+        int[] stops = stopsByName.get(StopSearchIndex.normalize(name));
+        return stops != null ? stops : new int[0];
+    }
+
+    static String formatTime(int secondsOfDay) {
+        int minutes = secondsOfDay / 60;
+        return String.format("%02d:%02d", (minutes / 60) % 24, minutes % 60);
+    }
+
+    @Override
+    public String toString() {
+        return "JourneyPlanner{Haltepunkte=" + timetable.stopCount() + ", Verbindungen=" + timetable.connectionCount() + "}";
+    }
+}
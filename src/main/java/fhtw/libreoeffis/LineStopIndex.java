@@ -0,0 +1,314 @@
+package fhtw.libreoeffis;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Statischer Index, welche Linien welche Haltepunkte bedienen, aus den OGD-Dateien
+ * wienerlinien-ogd-linien.csv und wienerlinien-ogd-fahrwegverlaeufe.csv.
+ * Beide Richtungen liegen im CSR-Format in int-Arrays: die Nachbarn von Element i
+ * stehen in targets[start[i] .. start[i + 1]). Fragen wie "welche Linien halten hier"
+ * oder "teilen sich zwei Haltepunkte eine Linie" werden so lokal in O(Grad) beantwortet;
+ * Echtzeitdaten werden nur noch für die Abfahrtszeiten gebraucht.
+ */
+public final class LineStopIndex {
+
+    static final String DEFAULT_LINES_PATH = "src/main/java/fhtw/libreoeffis/files/wienerlinien-ogd-linien.csv";
+    static final String DEFAULT_ROUTES_PATH = "src/main/java/fhtw/libreoeffis/files/wienerlinien-ogd-fahrwegverlaeufe.csv";
+
+    private static CompletableFuture<LineStopIndex> shared;
+
+    // Linien, Index = Position in lineNames
+    private final String[] lineNames;
+    private final String[] lineTypes;
+    private final Map<String, Integer> lineIndex;
+
+    // Haltepunkte, aufsteigend sortierte Stop-IDs
+    private final int[] stopIds;
+
+    // Linie → Haltepunkte (Indizes in stopIds) in Fahrtreihenfolge
+    private final int[] lineStopStart;
+    private final int[] lineStops;
+
+    // Haltepunkt → Linien, aufsteigend sortiert
+    private final int[] stopLineStart;
+    private final int[] stopLines;
+
+    private LineStopIndex(String[] lineNames, String[] lineTypes, int[] stopIds,
+                          int[] lineStopStart, int[] lineStops, int[] stopLineStart, int[] stopLines) {
+        this.lineNames = lineNames;
+        this.lineTypes = lineTypes;
+        this.stopIds = stopIds;
+        this.lineStopStart = lineStopStart;
+        this.lineStops = lineStops;
+        this.stopLineStart = stopLineStart;
+        this.stopLines = stopLines;
+        this.lineIndex = new HashMap<>(lineNames.length * 2);
+        for (int i = 0; i < lineNames.length; i++) {
+            lineIndex.putIfAbsent(lineNames[i], i);
+        }
+    }
+
+    /**
+     * Lädt den Index aus den OGD-Dateien (Semikolon als Trennzeichen, Spalten über die Kopfzeile).
+     * @param linesCsv wienerlinien-ogd-linien.csv mit LineID, LineText und optional MeansOfTransport.
+     * @param routesCsv wienerlinien-ogd-fahrwegverlaeufe.csv mit LineID, PatternID, StopSeqCount und StopID.
+     * @return Der Index.
+     * @throws IOException Wenn eine Datei nicht gelesen werden kann oder Spalten fehlen.
+     */
+    public static LineStopIndex load(Path linesCsv, Path routesCsv) throws IOException {
+        Map<String, Integer> lineById = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        List<String> types = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(linesCsv, StandardCharsets.UTF_8)) {
+            List<String> columns = header(reader, linesCsv);
+            int id = column(columns, "lineid", linesCsv);
+            int text = column(columns, "linetext", linesCsv);
+            int type = columns.indexOf("meansoftransport");
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(";", -1);
+                if (parts.length <= Math.max(id, text)) {
+                    continue;
+                }
+                lineById.put(unquote(parts[id]), names.size());
+                names.add(unquote(parts[text]));
+                types.add(type >= 0 && type < parts.length ? unquote(parts[type]) : "");
+            }
+        }
+
+        // Pro Linie alle Halte in der Reihenfolge (Richtung, Fahrweg, Position), jeden nur einmal
+        List<List<long[]>> rowsByLine = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            rowsByLine.add(new ArrayList<>());
+        }
+        Set<Integer> allStops = new TreeSet<>();
+        try (BufferedReader reader = Files.newBufferedReader(routesCsv, StandardCharsets.UTF_8)) {
+            List<String> columns = header(reader, routesCsv);
+            int lineId = column(columns, "lineid", routesCsv);
+            int patternId = column(columns, "patternid", routesCsv);
+            int sequence = column(columns, "stopseqcount", routesCsv);
+            int stopId = column(columns, "stopid", routesCsv);
+            int direction = columns.indexOf("direction");
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(";", -1);
+                if (parts.length <= Math.max(Math.max(lineId, patternId), Math.max(sequence, stopId))) {
+                    continue;
+                }
+                Integer lineIndex = lineById.get(unquote(parts[lineId]));
+                try {
+                    int stop = Integer.parseInt(unquote(parts[stopId]));
+                    int pattern = Integer.parseInt(unquote(parts[patternId]));
+                    int position = Integer.parseInt(unquote(parts[sequence]));
+                    int dir = direction >= 0 && direction < parts.length && !parts[direction].isBlank()
+                            ? Integer.parseInt(unquote(parts[direction])) : 0;
+                    if (lineIndex != null) {
+                        rowsByLine.get(lineIndex).add(new long[]{dir, pattern, position, stop});
+                        allStops.add(stop);
+                    }
+                } catch (NumberFormatException e) {
+                    // Zeilen ohne gültige Zahlen überspringen
+                }
+            }
+        }
+
+        int[] stopIds = allStops.stream().mapToInt(Integer::intValue).toArray();
+        int[] lineStopStart = new int[names.size() + 1];
+        List<int[]> stopsPerLine = new ArrayList<>(names.size());
+        for (int line = 0; line < names.size(); line++) {
+            List<long[]> rows = rowsByLine.get(line);
+            rows.sort((a, b) -> Arrays.compare(a, b));
+            Set<Integer> ordered = new LinkedHashSet<>();
+            for (long[] row : rows) {
+                ordered.add(Arrays.binarySearch(stopIds, (int) row[3]));
+            }
+            int[] stops = ordered.stream().mapToInt(Integer::intValue).toArray();
+            stopsPerLine.add(stops);
+            lineStopStart[line + 1] = lineStopStart[line] + stops.length;
+        }
+        int[] lineStops = new int[lineStopStart[names.size()]];
+        for (int line = 0; line < names.size(); line++) {
+            System.arraycopy(stopsPerLine.get(line), 0, lineStops, lineStopStart[line], stopsPerLine.get(line).length);
+        }
+
+        // Umkehrung: Linien pro Haltepunkt zählen, Startpositionen bilden, dann in Linienreihenfolge füllen
+        int[] stopLineStart = new int[stopIds.length + 1];
+        for (int stop : lineStops) {
+            stopLineStart[stop + 1]++;
+        }
+        for (int stop = 0; stop < stopIds.length; stop++) {
+            stopLineStart[stop + 1] += stopLineStart[stop];
+        }
+        int[] fill = Arrays.copyOf(stopLineStart, stopIds.length);
+        int[] stopLines = new int[lineStops.length];
+        for (int line = 0; line < names.size(); line++) {
+            for (int i = lineStopStart[line]; i < lineStopStart[line + 1]; i++) {
+                stopLines[fill[lineStops[i]]++] = line;
+            }
+        }
+
+        return new LineStopIndex(names.toArray(String[]::new), types.toArray(String[]::new), stopIds,
+                lineStopStart, lineStops, stopLineStart, stopLines);
+    }
+
+    /**
+     * Startet das Laden des gemeinsamen Index im Hintergrund, falls noch nicht geschehen.
+     * Fehlen die OGD-Dateien oder schlägt das Laden fehl, wird die Future mit null abgeschlossen.
+     * @return Die Future mit dem Index oder null.
+     */
+    public static synchronized CompletableFuture<LineStopIndex> sharedAsync() {
+        if (shared == null) {
+            Path linesCsv = Path.of(DEFAULT_LINES_PATH);
+            Path routesCsv = Path.of(DEFAULT_ROUTES_PATH);
+            if (!Files.exists(linesCsv) || !Files.exists(routesCsv)) {
+                shared = CompletableFuture.completedFuture(null);
+                return shared;
+            }
+            CompletableFuture<LineStopIndex> future = new CompletableFuture<>();
+            shared = future;
+            Thread.ofVirtual().name("line-index-loader").start(() -> {
+                try {
+                    future.complete(load(linesCsv, routesCsv));
+                } catch (Exception e) {
+                    System.err.println("Fehler beim Laden der Linien und Fahrwege: " + e.getMessage());
+                    future.complete(null);
+                }
+            });
+        }
+        return shared;
+    }
+
+    /**
+     * Gibt den gemeinsamen Index zurück, sofern er bereits geladen ist.
+     * @return Der Index oder null, wenn er (noch) nicht verfügbar ist.
+     */
+    public static LineStopIndex sharedIfLoaded() {
+        return sharedAsync().getNow(null);
+    }
+
+    /**
+     * @param stopId Die Stop-ID.
+     * @return Die Namen der Linien, die den Haltepunkt bedienen.
+     */
+    public List<String> getLines(int stopId) {
+        int stop = Arrays.binarySearch(stopIds, stopId);
+        if (stop < 0) {
+            return List.of();
+        }
+        List<String> lines = new ArrayList<>(stopLineStart[stop + 1] - stopLineStart[stop]);
+        for (int i = stopLineStart[stop]; i < stopLineStart[stop + 1]; i++) {
+            lines.add(lineNames[stopLines[i]]);
+        }
+        return lines;
+    }
+
+    /**
+     * @param lineName Der Name der Linie, z. B. "U1".
+     * @return Die Stop-IDs der Linie in Fahrtreihenfolge, leer wenn die Linie unbekannt ist.
+     */
+    public int[] getStops(String lineName) {
+        Integer line = lineIndex.get(lineName);
+        if (line == null) {
+            return new int[0];
+        }
+        int[] stops = new int[lineStopStart[line + 1] - lineStopStart[line]];
+        for (int i = 0; i < stops.length; i++) {
+            stops[i] = stopIds[lineStops[lineStopStart[line] + i]];
+        }
+        return stops;
+    }
+
+    /**
+     * @param lineName Der Name der Linie.
+     * @return Das Verkehrsmittel laut OGD-Daten (z. B. "ptMetro") oder ein leerer String.
+     */
+    public String getLineType(String lineName) {
+        Integer line = lineIndex.get(lineName);
+        return line != null ? lineTypes[line] : "";
+    }
+
+    /**
+     * Bestimmt die Linien, die beide Haltepunkte bedienen. Die Linienlisten sind sortiert,
+     * daher genügt ein Durchlauf über beide (O(Grad)).
+     * @param firstStopId Die erste Stop-ID.
+     * @param secondStopId Die zweite Stop-ID.
+     * @return Die gemeinsamen Linien.
+     */
+    public List<String> getCommonLines(int firstStopId, int secondStopId) {
+        int first = Arrays.binarySearch(stopIds, firstStopId);
+        int second = Arrays.binarySearch(stopIds, secondStopId);
+        if (first < 0 || second < 0) {
+            return List.of();
+        }
+        List<String> common = new ArrayList<>();
+        int i = stopLineStart[first];
+        int j = stopLineStart[second];
+        while (i < stopLineStart[first + 1] && j < stopLineStart[second + 1]) {
+            if (stopLines[i] < stopLines[j]) {
+                i++;
+            } else if (stopLines[i] > stopLines[j]) {
+                j++;
+            } else {
+                if (!common.contains(lineNames[stopLines[i]])) {
+                    common.add(lineNames[stopLines[i]]);
+                }
+                i++;
+                j++;
+            }
+        }
+        return common;
+    }
+
+    /**
+     * @param stopId Die Stop-ID.
+     * @return true, wenn der Haltepunkt in den Fahrwegen vorkommt.
+     */
+    public boolean contains(int stopId) {
+        return Arrays.binarySearch(stopIds, stopId) >= 0;
+    }
+
+    private static List<String> header(BufferedReader reader, Path file) throws IOException {
+        String header = reader.readLine();
+        if (header == null) {
+            throw new IOException("Leere Datei: " + file);
+        }
+        return Arrays.stream(header.replace("\uFEFF", "").split(";"))
+                .map(column -> unquote(column).toLowerCase(Locale.ROOT))
+                .toList();
+    }
+
+    private static int column(List<String> columns, String name, Path file) throws IOException {
+        int index = columns.indexOf(name);
+        if (index < 0) {
+            throw new IOException("Spalte " + name + " fehlt in " + file);
+        }
+        return index;
+    }
+
+    private static String unquote(String value) {
+        String trimmed = value.trim();
+        if (trimmed.length() >= 2 && trimmed.startsWith("\"") && trimmed.endsWith("\"")) {
+            return trimmed.substring(1, trimmed.length() - 1);
+        }
+        return trimmed;
+    }
+
+    @Override
+    public String toString() {
+        return "LineStopIndex{Linien=" + lineNames.length + ", Haltepunkte=" + stopIds.length + "}";
+    }
+}
@@ -6,12 +6,12 @@ import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
 import javafx.stage.Stage;
-import org.json.JSONObject;
 
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Hauptklasse der LibreOeffis-Applikation.
@@ -20,7 +20,12 @@ import java.util.*;
  */
 public class Main extends Application {
 
+    private AppContext context;
     private WienerLinienAPI api;
+    private HotStopPoller hotStopPoller;
+    private DepartureBoard departureBoard;
+    // Gemeinsamer Executor für alle Abrufe der Oberfläche, ein aktueller Abruf pro Bereich
+    private final GuiTaskExecutor backgroundTasks = new GuiTaskExecutor(MAX_PARALLEL_FETCHES, javafx.application.Platform::runLater);
     private final String favoritesFilePath = "src/main/java/fhtw/libreoeffis/files/favorites.txt";
     private final String frequentedFilePath = "src/main/java/fhtw/libreoeffis/files/frequented.txt";
 
@@ -33,6 +38,12 @@ public class Main extends Application {
     private final Set<String> frequentedStops = new HashSet<>();
 
     private final Map<String, Integer> stopUsageCount = new HashMap<>();
+
+    private static final int SEARCH_RESULT_LIMIT = 100;
+    private static final int MAX_PARALLEL_FETCHES = 4;
+
+    private List<String> stopDisplayNames = List.of();
+    private StopSearchIndex stopSearchIndex = new StopSearchIndex(List.of());
     /**
      * Startet die JavaFX-Anwendung.
      *
@@ -42,15 +53,28 @@ public class Main extends Application {
     @Override
     public void start(Stage primaryStage) {
         try {
-            // Initialisierung der WienerLinienAPI
-            api = new WienerLinienAPI();
+            // Gemeinsame Dienste für Oberfläche und TCP-Server
+            context = AppContext.shared();
+            api = context.getWienerLinienAPI();
+            hotStopPoller = context.getHotStopPoller();
+            departureBoard = new DepartureBoard(hotStopPoller);
         } catch (Exception e) {
             showErrorDialog("Fehler beim Laden der API: " + e.getMessage());
             return;
         }
 
-        // Starte den TCP-Server für Echtzeitkommunikation
-        TCPCommunication.startTCPServer();
+        // Haltepunkte im Hintergrund laden, damit das Fenster sofort erscheint
+        CompletableFuture<StopRegistry> stopRegistry = StopRegistry.sharedAsync();
+        // Den lokalen Fahrplan für die Routenplanung vorladen, sofern ein GTFS-Datensatz vorhanden ist
+        JourneyPlanner.sharedAsync();
+        LineStopIndex.sharedAsync();
+
+        // Beliebte Haltestellen im Hintergrund aktuell halten, damit Abfragen aus dem Cache kommen
+        context.start();
+        registerMetrics();
+
+        // Starte den TCP-Server für Echtzeitkommunikation, er teilt sich Cache und Poller mit der Oberfläche
+        TCPCommunication.startTCPServer(context);
 
         primaryStage.setTitle("LibreOeffis - Öffentliche Verkehrsmittel");
 
@@ -66,30 +90,39 @@ public class Main extends Application {
         VBox realtimeBox = new VBox(8);
         realtimeBox.setStyle("-fx-padding: 10; -fx-border-color: black; -fx-border-width: 1;");
         Label lblRealtime = new Label("Echtzeitinformationen:");
-        Label lblStopId = new Label("Stop-ID:");
+        Label lblStopId = new Label("Stop-ID oder Haltestelle:");
         TextField txtStopId = new TextField();
         Button btnRealtime = new Button("Echtzeitdaten abrufen");
-        TextArea realtimeOutput = new TextArea();
-        realtimeOutput.setEditable(false);
-        realtimeBox.getChildren().addAll(lblRealtime, lblStopId, txtStopId, btnRealtime, realtimeOutput);
+        Label realtimeStatus = new Label();
+        ListView<DepartureRow> realtimeOutput = new ListView<>(departureBoard.getRows());
+        realtimeBox.getChildren().addAll(lblRealtime, lblStopId, txtStopId, btnRealtime, realtimeStatus, realtimeOutput);
 
         btnRealtime.setOnAction(event -> {
             String stopId = txtStopId.getText().trim();
 
             if (stopId.isEmpty()) {
-                realtimeOutput.setText("Bitte geben Sie eine Stop-ID ein.");
+                realtimeStatus.setText("Bitte geben Sie eine Stop-ID ein.");
                 return;
             }
 
-            // Abruf der Echtzeitdaten im Hintergrund
-            new Thread(() -> {
-                try {
-                    String formattedData = api.getFormattedEchtzeitDaten(stopId);
-                    javafx.application.Platform.runLater(() -> realtimeOutput.setText(formattedData));
-                } catch (Exception e) {
-                    javafx.application.Platform.runLater(() -> realtimeOutput.setText("Fehler: " + e.getMessage()));
+            // Abruf der Echtzeitdaten im Hintergrund, eine neue Eingabe verdrängt den laufenden Abruf
+            backgroundTasks.submit("echtzeit", stopId, () -> {
+                List<String> stopIds = resolveStopIds(stopId);
+                return stopIds.isEmpty() ? Map.<String, List<DepartureRow>>of() : api.getDepartures(stopIds);
+            }, departures -> {
+                // Die Tafel ersetzt nur geänderte Zeilen, danach halten Poller und lokaler Countdown sie aktuell
+                departureBoard.show(departures);
+                if (departures.isEmpty()) {
+                    realtimeStatus.setText("Keine Haltestelle mit diesem Namen gefunden.");
+                } else if (departureBoard.getRows().isEmpty()) {
+                    realtimeStatus.setText("Keine Echtzeitdaten für diese Haltestelle verfügbar.");
+                } else {
+                    realtimeStatus.setText("Echtzeitinformationen:");
                 }
-            }).start();
+            }, e -> {
+                departureBoard.clear();
+                realtimeStatus.setText("Fehler: " + e.getMessage());
+            });
         });
 
 
@@ -117,23 +150,15 @@ public class Main extends Application {
             }
 
             // Abruf der Transportmittel im Hintergrund
-            new Thread(() -> {
-                try {
-                    String rawData = api.getEchtzeitDaten(stopId);
-                    JSONObject apiData = new JSONObject(rawData).getJSONObject("data");
-                    List<Transportmittel> transportmittelList = TransportmittelHelper.parseTransportmittel(apiData);
-
-                    if (transportmittelList.isEmpty()) {
-                        javafx.application.Platform.runLater(() -> transportOutput.setText("Keine Transportmittel verfügbar."));
-                        return;
-                    }
+            backgroundTasks.submit("transport", stopId, () -> {
+                List<Monitor> monitors = api.getEchtzeitDaten(stopId);
+                List<Transportmittel> transportmittelList = TransportmittelHelper.parseTransportmittel(monitors);
 
-                    String formattedTransportmittel = TransportmittelHelper.formatTransportmittel(transportmittelList);
-                    javafx.application.Platform.runLater(() -> transportOutput.setText(formattedTransportmittel));
-                } catch (Exception e) {
-                    javafx.application.Platform.runLater(() -> transportOutput.setText("Fehler: " + e.getMessage()));
+                if (transportmittelList.isEmpty()) {
+                    return "Keine Transportmittel verfügbar.";
                 }
-            }).start();
+                return TransportmittelHelper.formatTransportmittel(transportmittelList);
+            }, transportOutput::setText, e -> transportOutput.setText("Fehler: " + e.getMessage()));
         });
 
 
@@ -164,14 +189,9 @@ public class Main extends Application {
             }
 
             // Routenberechnung im Hintergrund
-            new Thread(() -> {
-                try {
-                    String routeDetails = api.calculateRoute(startStopId, zielStopId);
-                    javafx.application.Platform.runLater(() -> routeOutput.setText(routeDetails));
-                } catch (Exception e) {
-                    javafx.application.Platform.runLater(() -> routeOutput.setText("Fehler: " + e.getMessage()));
-                }
-            }).start();
+            backgroundTasks.submit("route", List.of(startStopId, zielStopId),
+                    () -> api.calculateRoute(startStopId, zielStopId),
+                    routeOutput::setText, e -> routeOutput.setText("Fehler: " + e.getMessage()));
         });
 
         /**
@@ -197,14 +217,8 @@ public class Main extends Application {
             }
 
             // Abruf der Daten über TCP im Hintergrund
-            new Thread(() -> {
-                try {
-                    String response = TCPCommunication.sendTCPMessage(stopId);
-                    javafx.application.Platform.runLater(() -> tcpOutput.setText(response));
-                } catch (Exception e) {
-                    javafx.application.Platform.runLater(() -> tcpOutput.setText("Fehler: " + e.getMessage()));
-                }
-            }).start();
+            backgroundTasks.submit("tcp", stopId, () -> TCPCommunication.sendTCPMessage(stopId),
+                    tcpOutput::setText, e -> tcpOutput.setText("Fehler: " + e.getMessage()));
         });
 
         btnTransport.setOnAction(event -> {
@@ -216,37 +230,36 @@ public class Main extends Application {
             }
 
             // Abruf der Transportmittel im Hintergrund
-            new Thread(() -> {
-                try {
-                    String rawData = api.getEchtzeitDaten(stopId);
-                    JSONObject apiData = new JSONObject(rawData).getJSONObject("data");
-                    List<Transportmittel> transportmittelList = TransportmittelHelper.parseTransportmittel(apiData);
-
-                    StringBuilder outputText = new StringBuilder();
-
-                    if (transportmittelList.isEmpty()) {
-                        outputText.append("Keine Transportmittel verfügbar.\n");
-                    } else {
-                        outputText.append(TransportmittelHelper.formatTransportmittel(transportmittelList)).append("\n");
+            backgroundTasks.submit("transport", stopId, () -> {
+                List<Monitor> monitors = api.getEchtzeitDaten(stopId);
+                List<Transportmittel> transportmittelList = TransportmittelHelper.parseTransportmittel(monitors);
+
+                StringBuilder outputText = new StringBuilder();
+
+                if (transportmittelList.isEmpty()) {
+                    outputText.append("Keine Transportmittel verfügbar.\n");
+                    // Ohne aktuelle Abfahrten zumindest die Linien laut Fahrwegen anzeigen
+                    LineStopIndex lineIndex = LineStopIndex.sharedIfLoaded();
+                    if (lineIndex != null && stopId.matches("\\d+") && lineIndex.contains(Integer.parseInt(stopId))) {
+                        outputText.append("Linien laut Fahrplan: ")
+                                .append(String.join(", ", lineIndex.getLines(Integer.parseInt(stopId)))).append("\n");
                     }
+                } else {
+                    outputText.append(TransportmittelHelper.formatTransportmittel(transportmittelList)).append("\n");
+                }
 
-                    // Abruf der alternativen Transportmittel
-                    List<AlternativeTransportmittel> alternativeList = AlternativeTransportHelper.getAlternativeTransportmittel();
-                    if (!alternativeList.isEmpty()) {
-                        outputText.append("\nAlternative Transportmittel:\n");
-                        for (AlternativeTransportmittel transport : alternativeList) {
-                            outputText.append("- ").append(transport.getDetails()).append("\n");
-                        }
-                    } else {
-                        outputText.append("\nKeine alternativen Transportmittel verfügbar.\n");
+                // Abruf der alternativen Transportmittel in der Nähe der Haltestelle
+                List<AlternativeTransportmittel> alternativeList = AlternativeTransportHelper.getAlternativeTransportmittel(monitors);
+                if (!alternativeList.isEmpty()) {
+                    outputText.append("\nAlternative Transportmittel:\n");
+                    for (AlternativeTransportmittel transport : alternativeList) {
+                        outputText.append("- ").append(transport.getDetails()).append("\n");
                     }
-
-                    javafx.application.Platform.runLater(() -> transportOutput.setText(outputText.toString()));
-
-                } catch (Exception e) {
-                    javafx.application.Platform.runLater(() -> transportOutput.setText("Fehler: " + e.getMessage()));
+                } else {
+                    outputText.append("\nKeine alternativen Transportmittel verfügbar.\n");
                 }
-            }).start();
+                return outputText.toString();
+            }, transportOutput::setText, e -> transportOutput.setText("Fehler: " + e.getMessage()));
         });
 
 
@@ -267,41 +280,35 @@ public class Main extends Application {
         Button btnAddFavorite = new Button("Zu Favoriten hinzufügen");
         TextArea selectedStopOutput = new TextArea();
         selectedStopOutput.setEditable(false);
-        List<String> dropdownItems = new ArrayList<>();
-        String csvPath = "src/main/java/fhtw/libreoeffis/files/wienerlinien-ogd-haltepunkte.csv";
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(csvPath))) {
-            String line;
-            boolean isHeader = true;
-            while ((line = reader.readLine()) != null) {
-                if (isHeader) {
-                    isHeader = false;
-                    continue;
-                }
-                String[] parts = line.split(";");
-                if (parts.length >= 2) {
-                    String stopId = parts[0].trim();
-                    String stopText = parts[1].trim();
-                    dropdownItems.add(stopText + " (ID: " + stopId + ")");
-                }
+        testStopsDropdown.setPromptText("Haltestellen werden geladen...");
+
+        // Anzeigenamen und Suchindex entstehen im Hintergrund und werden danach übernommen
+        stopRegistry.thenApply(registry -> {
+            List<String> displayNames = registry.getDisplayNames();
+            return Map.entry(displayNames, new StopSearchIndex(displayNames));
+        }).whenComplete((loaded, error) -> javafx.application.Platform.runLater(() -> {
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                testStopsDropdown.getItems().setAll("Fehler beim Laden der Stop-IDs aus der CSV: " + cause.getMessage());
+                return;
             }
-            dropdownItems.sort(String::compareTo);
-            testStopsDropdown.getItems().addAll(dropdownItems);
-        } catch (Exception e) {
-            testStopsDropdown.getItems().add("Fehler beim Laden der Stop-IDs aus der CSV: " + e.getMessage());
-        }
-
-        btnSearch.setOnAction(event -> {
-            String searchText = searchField.getText().toLowerCase().trim();
-            testStopsDropdown.getItems().clear();
-            if (searchText.isEmpty()) {
-                testStopsDropdown.getItems().addAll(dropdownItems);
+            stopDisplayNames = loaded.getKey();
+            stopSearchIndex = loaded.getValue();
+            testStopsDropdown.setPromptText(null);
+            testStopsDropdown.getItems().setAll(stopDisplayNames);
+        }));
+
+        Runnable runSearch = () -> {
+            String searchText = searchField.getText();
+            if (searchText.isBlank()) {
+                testStopsDropdown.getItems().setAll(stopDisplayNames);
             } else {
-                dropdownItems.stream()
-                        .filter(item -> fuzzyMatch(item.toLowerCase(), searchText))
-                        .forEach(filteredItem -> testStopsDropdown.getItems().add(filteredItem));
+                testStopsDropdown.getItems().setAll(stopSearchIndex.search(searchText, SEARCH_RESULT_LIMIT));
             }
-        });
+        };
+        btnSearch.setOnAction(event -> runSearch.run());
+        // Suche während der Eingabe, der Index liefert die Treffer ohne die ganze Liste zu durchlaufen
+        searchField.textProperty().addListener((observable, oldValue, newValue) -> runSearch.run());
 /**
  * Bereich 6: Alternative Transportmittel
  * Zeigt alternative Transportmittel an, die der Benutzer auswählen kann.
@@ -315,27 +322,21 @@ public class Main extends Application {
         alternativeTransportBox.getChildren().addAll(lblAlternativeTransport, btnShowAlternativeTransport, alternativeTransportOutput);
 
         btnShowAlternativeTransport.setOnAction(event -> {
-            // Abruf der alternativen Transportmittel im Hintergrund
-            new Thread(() -> {
-                try {
-                    List<AlternativeTransportmittel> alternativeList = AlternativeTransportHelper.getAlternativeTransportmittel();
-                    StringBuilder outputText = new StringBuilder();
-
-                    if (!alternativeList.isEmpty()) {
-                        outputText.append("Alternative Transportmittel:\n");
-                        for (AlternativeTransportmittel transport : alternativeList) {
-                            outputText.append("- ").append(transport.getDetails()).append("\n");
-                        }
-                    } else {
-                        outputText.append("Keine alternativen Transportmittel verfügbar.\n");
+            // Abruf der alternativen Transportmittel im Hintergrund, wiederholte Klicks werden zusammengefasst
+            backgroundTasks.submit("alternativen", "alle", () -> {
+                List<AlternativeTransportmittel> alternativeList = AlternativeTransportHelper.getAlternativeTransportmittel();
+                StringBuilder outputText = new StringBuilder();
+
+                if (!alternativeList.isEmpty()) {
+                    outputText.append("Alternative Transportmittel:\n");
+                    for (AlternativeTransportmittel transport : alternativeList) {
+                        outputText.append("- ").append(transport.getDetails()).append("\n");
                     }
-
-                    javafx.application.Platform.runLater(() -> alternativeTransportOutput.setText(outputText.toString()));
-
-                } catch (Exception e) {
-                    javafx.application.Platform.runLater(() -> alternativeTransportOutput.setText("Fehler: " + e.getMessage()));
+                } else {
+                    outputText.append("Keine alternativen Transportmittel verfügbar.\n");
                 }
-            }).start();
+                return outputText.toString();
+            }, alternativeTransportOutput::setText, e -> alternativeTransportOutput.setText("Fehler: " + e.getMessage()));
         });
 
 
@@ -355,6 +356,10 @@ public class Main extends Application {
                 selectedStopOutput.setText("Ausgewählte Haltestelle:\n" + selectedStop);
                 stopUsageCount.put(selectedStop, stopUsageCount.getOrDefault(selectedStop, 0) + 1);
                 updateFrequentedStops();
+                int stopId = StopRegistry.parseDisplayId(selectedStop);
+                if (stopId >= 0) {
+                    hotStopPoller.recordAccess(String.valueOf(stopId));
+                }
             }
         });
 
@@ -414,6 +419,49 @@ public class Main extends Application {
 
     }
 
+    /**
+     * Registriert die Auslastung der Hintergrundabrufe der Oberfläche in den {@link Metrics}.
+     */
+    private void registerMetrics() {
+        Metrics metrics = Metrics.shared();
+        metrics.gauge("libreoeffis_gui_task_queue_depth", "Wartende Abrufe der Oberfläche", backgroundTasks::getQueueDepth);
+        metrics.gauge("libreoeffis_gui_task_active", "Laufende Abrufe der Oberfläche", backgroundTasks::getActive);
+        metrics.counterFunction("libreoeffis_gui_tasks_superseded_total", "Durch neuere Abrufe ersetzte Abrufe der Oberfläche",
+                backgroundTasks::getSuperseded);
+        metrics.counterFunction("libreoeffis_gui_tasks_coalesced_total", "Mit einem laufenden Abruf zusammengelegte Abrufe",
+                backgroundTasks::getCoalesced);
+    }
+
+    /**
+     * Wird beim Schließen der Anwendung aufgerufen und fährt den TCP-Server sowie das Vorladen geordnet herunter.
+     */
+    @Override
+    public void stop() {
+        if (departureBoard != null) {
+            departureBoard.dispose();
+        }
+        TCPCommunication.stopTCPServer();
+        if (context != null) {
+            context.close();
+        }
+        backgroundTasks.shutdown();
+    }
+
+    /**
+     * Übersetzt die Eingabe in Stop-IDs. Reine Stop-IDs werden direkt übernommen,
+     * Haltestellennamen über das {@link StopRegistry} aufgelöst.
+     *
+     * @param input Stop-IDs oder ein Haltestellenname.
+     * @return Die Stop-IDs, leer wenn der Name unbekannt ist.
+     * @throws Exception Wenn die Haltepunkte nicht geladen werden konnten.
+     */
+    private List<String> resolveStopIds(String input) throws Exception {
+        if (StopRegistry.isStopIdList(input)) {
+            return Arrays.stream(input.trim().split("[,\\s]+")).toList();
+        }
+        return StopRegistry.shared().resolve(input);
+    }
+
     /**
      * Zeigt einen Fehlerdialog mit der gegebenen Nachricht an.
      *
@@ -484,6 +532,12 @@ public class Main extends Application {
             List<String> lines = Files.readAllLines(Paths.get(frequentedFilePath));
             frequentedStops.addAll(lines);
             frequentedStopsList.getItems().addAll(lines);
+            // Die häufig besuchten Haltestellen sind die ersten Kandidaten für das Vorladen
+            hotStopPoller.seed(lines.stream()
+                    .map(StopRegistry::parseDisplayId)
+                    .filter(stopId -> stopId >= 0)
+                    .map(String::valueOf)
+                    .toList(), 5.0);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -542,23 +596,6 @@ public class Main extends Application {
         return null;
     }
 
-    /**
-     * Fuzzy-Match-Funktion zum Filtern von Suchergebnissen.
-     *
-     * @param item Der zu durchsuchende Text.
-     * @param searchText Der Suchtext.
-     * @return true, wenn der Suchtext im Text gefunden wurde, sonst false.
-     * @author GitHub: YukkuriV2
-     */
-    private boolean fuzzyMatch(String item, String searchText) {
-        int searchIndex = 0;
-        for (int i = 0; item.length() > i && searchText.length() > searchIndex; i++) {
-            if (item.charAt(i) == searchText.charAt(searchIndex)) {
-                searchIndex++;
-            }
-        }
-        return searchIndex == searchText.length();
-    }
     /**
      * Main-Methode, um die Applikation zu starten.
      *
@@ -0,0 +1,367 @@
+package fhtw.libreoeffis;
+
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Einfache Metrik-Registry nach dem Vorbild von Micrometer, ohne zusätzliche Abhängigkeit.
+ * Zähler und Timer werden beim Anlegen einmal nachgeschlagen und danach ohne Sperren
+ * aktualisiert; Gauges lesen ihren Wert erst beim Abruf über einen Callback.
+ * {@link #scrape()} liefert alle Metriken im Textformat von Prometheus, siehe {@link MetricsServer}.
+ * Labels werden als Paare übergeben, z. B. {@code timer("name", "Hilfe", "endpoint", "monitor")}.
+ */
+public final class Metrics {
+
+    private static final Metrics SHARED = new Metrics();
+
+    // Obergrenzen der Histogramm-Buckets in Sekunden
+    private static final double[] BUCKETS = {0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private static final String CACHE_REQUESTS = "libreoeffis_cache_requests_total";
+    private static final String CACHE_REQUESTS_HELP = "Cache-Zugriffe nach Ergebnis";
+
+    private enum Type {
+        COUNTER("counter"), GAUGE("gauge"), HISTOGRAM("histogram");
+
+        private final String text;
+
+        Type(String text) {
+            this.text = text;
+        }
+    }
+
+    /**
+     * Alle Metriken mit demselben Namen, unterschieden durch ihre Labels.
+     */
+    private record Family(Type type, String help, Map<String, Object> children) {
+    }
+
+    /**
+     * Ein monoton steigender Zähler.
+     */
+    public static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void increment(long amount) {
+            value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    /**
+     * Misst Dauern in einem Histogramm mit festen Buckets.
+     */
+    public static final class Timer {
+        private final LongAdder[] buckets = new LongAdder[BUCKETS.length];
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder sumSeconds = new DoubleAdder();
+
+        private Timer() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Verbucht eine Dauer.
+         * @param nanos Die Dauer in Nanosekunden.
+         */
+        public void record(long nanos) {
+            double seconds = nanos / 1e9;
+            // Nur der erste passende Bucket zählt, kumuliert wird erst beim Abruf
+            for (int i = 0; i < BUCKETS.length; i++) {
+                if (seconds <= BUCKETS[i]) {
+                    buckets[i].increment();
+                    break;
+                }
+            }
+            count.increment();
+            sumSeconds.add(seconds);
+        }
+
+        /**
+         * Verbucht die Dauer seit einem Startzeitpunkt.
+         * @param startNanos Der Startzeitpunkt aus {@link System#nanoTime()}.
+         */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * Schätzt ein Quantil aus den Buckets durch lineare Interpolation innerhalb des Buckets.
+         * @param quantile Das Quantil zwischen 0 und 1, z. B. 0.99.
+         * @return Die geschätzte Dauer in Sekunden, 0 ohne Messwerte.
+         */
+        public double quantile(double quantile) {
+            long total = count.sum();
+            if (total == 0) {
+                return 0;
+            }
+            double rank = quantile * total;
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                long inBucket = buckets[i].sum();
+                if (cumulative + inBucket >= rank && inBucket > 0) {
+                    double lower = i == 0 ? 0 : BUCKETS[i - 1];
+                    return lower + (BUCKETS[i] - lower) * (rank - cumulative) / inBucket;
+                }
+                cumulative += inBucket;
+            }
+            // Im +Inf-Bucket ist keine Schätzung möglich, die größte Grenze ist die Untergrenze
+            return BUCKETS[BUCKETS.length - 1];
+        }
+    }
+
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    /**
+     * Gibt die gemeinsame Registry der Anwendung zurück.
+     * @return Die gemeinsame Registry.
+     */
+    public static Metrics shared() {
+        return SHARED;
+    }
+
+    /**
+     * Gibt einen Zähler zurück und legt ihn beim ersten Aufruf an.
+     * @param name Der Name der Metrik.
+     * @param help Die Beschreibung der Metrik.
+     * @param labels Die Labels als Paare aus Name und Wert.
+     * @return Der Zähler.
+     */
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, Type.COUNTER, help).children()
+                .computeIfAbsent(labelString(labels), key -> new Counter());
+    }
+
+    /**
+     * Gibt einen Timer zurück und legt ihn beim ersten Aufruf an.
+     * @param name Der Name der Metrik, üblicherweise mit der Endung {@code _seconds}.
+     * @param help Die Beschreibung der Metrik.
+     * @param labels Die Labels als Paare aus Name und Wert.
+     * @return Der Timer.
+     */
+    public Timer timer(String name, String help, String... labels) {
+        return (Timer) family(name, Type.HISTOGRAM, help).children()
+                .computeIfAbsent(labelString(labels), key -> new Timer());
+    }
+
+    /**
+     * Registriert einen Wert, der beim Abruf gelesen wird. Ein erneuter Aufruf mit
+     * denselben Labels ersetzt den bisherigen Callback.
+     * @param name Der Name der Metrik.
+     * @param help Die Beschreibung der Metrik.
+     * @param value Liefert den aktuellen Wert.
+     * @param labels Die Labels als Paare aus Name und Wert.
+     */
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, Type.GAUGE, help).children().put(labelString(labels), value);
+    }
+
+    /**
+     * Registriert einen Zähler, dessen Stand aus einem vorhandenen Zähler gelesen wird,
+     * z. B. den Trefferzählern des {@link EchtzeitCache}.
+     * @param name Der Name der Metrik, üblicherweise mit der Endung {@code _total}.
+     * @param help Die Beschreibung der Metrik.
+     * @param value Liefert den aktuellen Zählerstand.
+     * @param labels Die Labels als Paare aus Name und Wert.
+     */
+    public void counterFunction(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, Type.COUNTER, help).children().put(labelString(labels), value);
+    }
+
+    /**
+     * Gibt den Timer für die Dauer der Anfragen an einen Upstream-Endpunkt zurück,
+     * gemessen vom Senden bis zur dekodierten Antwort.
+     * @param endpoint Der Endpunkt, z. B. {@code monitor} oder {@code station_status}.
+     * @return Der Timer des Endpunkts in der gemeinsamen Registry.
+     */
+    static Timer upstreamLatency(String endpoint) {
+        return SHARED.timer("libreoeffis_upstream_request_duration_seconds",
+                "Dauer der Upstream-Anfragen inklusive Dekodieren der Antwort", "endpoint", endpoint);
+    }
+
+    /**
+     * Gibt den Zähler der fehlgeschlagenen Anfragen an einen Upstream-Endpunkt zurück.
+     * @param endpoint Der Endpunkt.
+     * @param status Der HTTP-Status oder eine kurze Fehlerbezeichnung, siehe {@link #errorStatus(Throwable)}.
+     * @return Der Zähler in der gemeinsamen Registry.
+     */
+    static Counter upstreamErrors(String endpoint, String status) {
+        return SHARED.counter("libreoeffis_upstream_errors_total",
+                "Fehlgeschlagene Upstream-Anfragen nach Status", "endpoint", endpoint, "status", status);
+    }
+
+    /**
+     * Gibt den Timer für das Dekodieren von JSON-Antworten zurück. Da direkt aus dem Stream
+     * gelesen wird, enthält die Dauer auch das Empfangen des Antwortkörpers.
+     * @param format Das Format, z. B. {@code monitor} oder {@code gbfs}.
+     * @return Der Timer in der gemeinsamen Registry.
+     */
+    static Timer parseTime(String format) {
+        return SHARED.timer("libreoeffis_json_parse_duration_seconds",
+                "Dauer des JSON-Dekodierens inklusive Lesen des Antwort-Streams", "format", format);
+    }
+
+    /**
+     * Gibt den Zähler für Cache-Zugriffe mit einem bestimmten Ergebnis zurück.
+     * @param cache Der Name des Caches.
+     * @param result Das Ergebnis, z. B. {@code hit}, {@code miss} oder {@code fallback}.
+     * @return Der Zähler in der gemeinsamen Registry.
+     */
+    static Counter cacheRequests(String cache, String result) {
+        return SHARED.counter(CACHE_REQUESTS, CACHE_REQUESTS_HELP, "cache", cache, "result", result);
+    }
+
+    /**
+     * Bildet einen Fehler auf eine kurze Bezeichnung ab: den HTTP-Status oder den Klassennamen.
+     * @param error Der Fehler, ggf. in einer {@link CompletionException} verpackt.
+     * @return Die Bezeichnung für Protokoll und Labels.
+     */
+    static String errorStatus(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof HttpTransport.HttpStatusException httpError
+                ? String.valueOf(httpError.getStatusCode())
+                : cause.getClass().getSimpleName();
+    }
+
+    /**
+     * Registriert die Zähler und die Trefferquote eines {@link EchtzeitCache}.
+     * @param name Der Name des Caches im Label {@code cache}.
+     * @param cache Der Cache.
+     */
+    void bindEchtzeitCache(String name, EchtzeitCache cache) {
+        counterFunction(CACHE_REQUESTS, CACHE_REQUESTS_HELP, cache::getHits, "cache", name, "result", "hit");
+        counterFunction(CACHE_REQUESTS, CACHE_REQUESTS_HELP, cache::getStaleHits, "cache", name, "result", "stale");
+        counterFunction(CACHE_REQUESTS, CACHE_REQUESTS_HELP, cache::getMisses, "cache", name, "result", "miss");
+        counterFunction(CACHE_REQUESTS, CACHE_REQUESTS_HELP, cache::getFallbacks, "cache", name, "result", "fallback");
+        gauge("libreoeffis_cache_hit_ratio", "Anteil der Cache-Zugriffe ohne Upstream-Anfrage seit dem Start", () -> {
+            double served = cache.getHits() + cache.getStaleHits();
+            double total = served + cache.getMisses();
+            return total == 0 ? 0 : served / total;
+        }, "cache", name);
+        gauge("libreoeffis_cache_entries", "Anzahl der Einträge im Cache", cache::size, "cache", name);
+    }
+
+    /**
+     * Registriert Zustand und Zähler einer {@link UpstreamGuard}.
+     * @param guard Die Schutzschicht.
+     */
+    void bindUpstreamGuard(UpstreamGuard guard) {
+        String endpoint = guard.getEndpoint();
+        gauge("libreoeffis_upstream_circuit_state", "Zustand des Circuit Breakers (0 geschlossen, 1 offen, 2 halboffen)",
+                () -> guard.getState().ordinal(), "endpoint", endpoint);
+        gauge("libreoeffis_upstream_in_flight", "Gerade laufende Upstream-Aufrufe", guard::getInFlight, "endpoint", endpoint);
+        gauge("libreoeffis_upstream_timeout_seconds", "Aktueller adaptiver Timeout",
+                () -> guard.currentTimeoutMillis() / 1000.0, "endpoint", endpoint);
+        counterFunction("libreoeffis_upstream_retries_total", "Wiederholte Upstream-Aufrufe", guard::getRetries, "endpoint", endpoint);
+        counterFunction("libreoeffis_upstream_short_circuited_total", "Wegen offenem Circuit Breaker abgelehnte Aufrufe",
+                guard::getShortCircuited, "endpoint", endpoint);
+        counterFunction("libreoeffis_upstream_rejected_total", "Wegen vollem Bulkhead abgelehnte Aufrufe",
+                guard::getRejected, "endpoint", endpoint);
+    }
+
+    private Family family(String name, Type type, String help) {
+        Family family = families.computeIfAbsent(name, key -> new Family(type, help, new ConcurrentSkipListMap<>()));
+        if (family.type() != type) {
+            throw new IllegalArgumentException("Metrik " + name + " ist bereits als " + family.type().text + " registriert.");
+        }
+        return family;
+    }
+
+    /**
+     * Gibt alle Metriken im Textformat von Prometheus (Version 0.0.4) aus.
+     * @return Der Text für den Scrape-Endpunkt.
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.append("# HELP ").append(name).append(' ').append(family.help().replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type().text).append('\n');
+            for (Map.Entry<String, Object> child : family.children().entrySet()) {
+                String labels = child.getKey();
+                if (child.getValue() instanceof Counter counter) {
+                    sample(out, name, labels, counter.get());
+                } else if (child.getValue() instanceof DoubleSupplier supplier) {
+                    sample(out, name, labels, supplier.getAsDouble());
+                } else if (child.getValue() instanceof Timer timer) {
+                    writeHistogram(out, name, labels, timer);
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private static void writeHistogram(StringBuilder out, String name, String labels, Timer timer) {
+        // Zuerst die Gesamtzahl lesen, damit die Buckets nie größer als +Inf erscheinen
+        long count = timer.count.sum();
+        double sum = timer.sumSeconds.sum();
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS.length; i++) {
+            cumulative += timer.buckets[i].sum();
+            sample(out, name + "_bucket", withLabel(labels, "le", formatValue(BUCKETS[i])), Math.min(cumulative, count));
+        }
+        sample(out, name + "_bucket", withLabel(labels, "le", "+Inf"), count);
+        sample(out, name + "_sum", labels, sum);
+        sample(out, name + "_count", labels, count);
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(formatValue(value)).append('\n');
+    }
+
+    private static String formatValue(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static String withLabel(String labels, String name, String value) {
+        String label = name + "=\"" + value + "\"";
+        return labels.isEmpty() ? label : labels + "," + label;
+    }
+
+    private static String labelString(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels müssen als Paare aus Name und Wert angegeben werden.");
+        }
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (!result.isEmpty()) {
+                result.append(',');
+            }
+            result.append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,102 @@
+package fhtw.libreoeffis;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+/**
+ * Eingebetteter HTTP-Endpunkt, über den Prometheus die {@link Metrics} abruft:
+ * {@code GET /metrics} liefert {@link Metrics#scrape()} im Textformat.
+ * Standardmäßig lauscht der Endpunkt nur auf localhost, Port 9464. Beides kann über die
+ * System-Properties {@code libreoeffis.metrics.host} und {@code libreoeffis.metrics.port}
+ * geändert werden; ein negativer Port schaltet den Endpunkt ab.
+ */
+public final class MetricsServer implements AutoCloseable {
+
+    static final String HOST_PROPERTY = "libreoeffis.metrics.host";
+    static final String PORT_PROPERTY = "libreoeffis.metrics.port";
+    private static final String DEFAULT_HOST = "127.0.0.1";
+    private static final int DEFAULT_PORT = 9464;
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final HttpServer server;
+
+    private MetricsServer(HttpServer server) {
+        this.server = server;
+    }
+
+    /**
+     * Startet den Endpunkt auf einer bestimmten Adresse.
+     * @param metrics Die Registry, deren Metriken ausgeliefert werden.
+     * @param address Die Adresse; Port 0 wählt einen freien Port.
+     * @return Der gestartete Endpunkt.
+     * @throws IOException Wenn der Port nicht gebunden werden kann.
+     */
+    public static MetricsServer start(Metrics metrics, InetSocketAddress address) throws IOException {
+        HttpServer server = HttpServer.create(address, 0);
+        server.createContext("/metrics", exchange -> handle(exchange, metrics));
+        server.setExecutor(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("metrics-", 0).factory()));
+        server.start();
+        System.out.println("Metriken verfügbar unter http://" + address.getHostString() + ":"
+                + server.getAddress().getPort() + "/metrics");
+        return new MetricsServer(server);
+    }
+
+    /**
+     * Startet den Endpunkt für die gemeinsame Registry mit der Konfiguration aus den System-Properties.
+     * @return Der gestartete Endpunkt oder null, wenn er abgeschaltet ist oder nicht starten konnte.
+     */
+    static MetricsServer startConfigured() {
+        int port = Integer.getInteger(PORT_PROPERTY, DEFAULT_PORT);
+        if (port < 0) {
+            return null;
+        }
+        String host = System.getProperty(HOST_PROPERTY, DEFAULT_HOST);
+        try {
+            return start(Metrics.shared(), new InetSocketAddress(host, port));
+        } catch (IOException e) {
+            System.err.println("Fehler beim Starten des Metrik-Endpunkts: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void handle(HttpExchange exchange, Metrics metrics) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            if (!method.equals("GET") && !method.equals("HEAD")) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = metrics.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if (method.equals("HEAD")) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    /**
+     * @return Der tatsächlich gebundene Port.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Beendet den Endpunkt, ohne auf laufende Abrufe zu warten.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
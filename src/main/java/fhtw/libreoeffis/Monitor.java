@@ -0,0 +1,34 @@
+package fhtw.libreoeffis;
+
+import java.util.List;
+
+/**
+ * Ein Monitor der Wiener Linien Echtzeit-API, also ein Steig einer Haltestelle
+ * mit den dort abfahrenden Linien.
+ * @param stopId Die Stop-ID (RBL-Nummer) des Steigs.
+ * @param title Der Name der Haltestelle.
+ * @param latitude Die geografische Breite oder {@link Double#NaN}, wenn unbekannt.
+ * @param longitude Die geografische Länge oder {@link Double#NaN}, wenn unbekannt.
+ * @param lines Die Linien, die an diesem Steig abfahren.
+ */
+record Monitor(String stopId, String title, double latitude, double longitude, List<Line> lines) {
+}
+
+/**
+ * Eine Linie eines Monitors mit ihren nächsten Abfahrten.
+ * @param name Der Name der Linie, z. B. "U1".
+ * @param towards Die Richtung der Linie.
+ * @param type Der Verkehrsmitteltyp laut API, z. B. "ptMetro".
+ * @param departures Die nächsten Abfahrten.
+ */
+record Line(String name, String towards, String type, List<Departure> departures) {
+}
+
+/**
+ * Eine einzelne Abfahrt einer Linie.
+ * @param timePlanned Die geplante Abfahrtszeit im Format der API.
+ * @param timeReal Die prognostizierte Abfahrtszeit oder null, wenn keine Echtzeitdaten vorliegen.
+ * @param countdown Die Minuten bis zur Abfahrt.
+ */
+record Departure(String timePlanned, String timeReal, int countdown) {
+}
@@ -0,0 +1,248 @@
+package fhtw.libreoeffis;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming-Decoder für die Antworten der Wiener Linien Monitor-API.
+ * Liest direkt aus dem Antwort-Stream mit Jacksons {@link JsonParser} in
+ * {@link Monitor}-, {@link Line}- und {@link Departure}-Records und überspringt
+ * alle Felder, die nicht benötigt werden.
+ */
+final class MonitorDecoder {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private MonitorDecoder() {
+    }
+
+    /**
+     * Liest die Monitore aus einer API-Antwort.
+     * @param in Der Antwort-Stream; wird nach dem Lesen geschlossen.
+     * @return Die Monitore der Antwort.
+     * @throws IOException Wenn die Antwort kein gültiges Monitor-JSON ist.
+     */
+    static List<Monitor> decode(InputStream in) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(in)) {
+            return readRoot(parser);
+        }
+    }
+
+    /**
+     * Liest die Monitore aus einer API-Antwort in Textform.
+     * @param json Die Antwort als JSON-String.
+     * @return Die Monitore der Antwort.
+     * @throws IOException Wenn die Antwort kein gültiges Monitor-JSON ist.
+     */
+    static List<Monitor> decode(String json) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(json)) {
+            return readRoot(parser);
+        }
+    }
+
+    private static List<Monitor> readRoot(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Ungültige API-Antwort: kein JSON-Objekt.");
+        }
+
+        List<Monitor> monitors = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if (field.equals("data") && parser.currentToken() == JsonToken.START_OBJECT) {
+                monitors = readData(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        if (monitors == null) {
+            throw new IOException("Ungültige API-Antwort: keine Monitordaten enthalten.");
+        }
+        return monitors;
+    }
+
+    private static List<Monitor> readData(JsonParser parser) throws IOException {
+        List<Monitor> monitors = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if (field.equals("monitors") && parser.currentToken() == JsonToken.START_ARRAY) {
+                monitors = new ArrayList<>();
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    monitors.add(readMonitor(parser));
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return monitors;
+    }
+
+    private static Monitor readMonitor(JsonParser parser) throws IOException {
+        String stopId = "";
+        String title = "";
+        double latitude = Double.NaN;
+        double longitude = Double.NaN;
+        List<Line> lines = List.of();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if (field.equals("locationStop") && parser.currentToken() == JsonToken.START_OBJECT) {
+                // locationStop ist ein GeoJSON-Feature: geometry.coordinates = [lon, lat]
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String stopField = parser.currentName();
+                    parser.nextToken();
+                    if (stopField.equals("geometry") && parser.currentToken() == JsonToken.START_OBJECT) {
+                        double[] coordinates = readCoordinates(parser);
+                        if (coordinates != null) {
+                            longitude = coordinates[0];
+                            latitude = coordinates[1];
+                        }
+                    } else if (stopField.equals("properties") && parser.currentToken() == JsonToken.START_OBJECT) {
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String propertyField = parser.currentName();
+                            parser.nextToken();
+                            if (propertyField.equals("title")) {
+                                title = parser.getValueAsString("");
+                            } else if (propertyField.equals("attributes") && parser.currentToken() == JsonToken.START_OBJECT) {
+                                stopId = readRbl(parser, stopId);
+                            } else {
+                                parser.skipChildren();
+                            }
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else if (field.equals("lines") && parser.currentToken() == JsonToken.START_ARRAY) {
+                lines = new ArrayList<>();
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    lines.add(readLine(parser));
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new Monitor(stopId, title, latitude, longitude, lines);
+    }
+
+    private static double[] readCoordinates(JsonParser parser) throws IOException {
+        double[] coordinates = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if (field.equals("coordinates") && parser.currentToken() == JsonToken.START_ARRAY) {
+                double[] values = new double[2];
+                int count = 0;
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    if (count < 2) {
+                        values[count] = parser.getValueAsDouble(Double.NaN);
+                    }
+                    count++;
+                    parser.skipChildren();
+                }
+                if (count >= 2) {
+                    coordinates = values;
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return coordinates;
+    }
+
+    private static String readRbl(JsonParser parser, String fallback) throws IOException {
+        String rbl = fallback;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if (field.equals("rbl")) {
+                rbl = parser.getValueAsString(fallback);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return rbl;
+    }
+
+    private static Line readLine(JsonParser parser) throws IOException {
+        String name = "";
+        String towards = "";
+        String type = "";
+        List<Departure> departures = List.of();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "name" -> name = parser.getValueAsString("");
+                case "towards" -> towards = parser.getValueAsString("");
+                case "type" -> type = parser.getValueAsString("");
+                case "departures" -> {
+                    if (parser.currentToken() == JsonToken.START_OBJECT) {
+                        departures = readDepartures(parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        return new Line(name, towards, type, departures);
+    }
+
+    private static List<Departure> readDepartures(JsonParser parser) throws IOException {
+        List<Departure> departures = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if (field.equals("departure") && parser.currentToken() == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    Departure departure = readDeparture(parser);
+                    if (departure != null) {
+                        departures.add(departure);
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return departures;
+    }
+
+    private static Departure readDeparture(JsonParser parser) throws IOException {
+        Departure departure = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if (field.equals("departureTime") && parser.currentToken() == JsonToken.START_OBJECT) {
+                String timePlanned = null;
+                String timeReal = null;
+                int countdown = 0;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String timeField = parser.currentName();
+                    parser.nextToken();
+                    switch (timeField) {
+                        case "timePlanned" -> timePlanned = parser.getValueAsString();
+                        case "timeReal" -> timeReal = parser.getValueAsString();
+                        case "countdown" -> countdown = parser.getValueAsInt(0);
+                        default -> parser.skipChildren();
+                    }
+                }
+                if (timePlanned != null) {
+                    departure = new Departure(timePlanned, timeReal, countdown);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return departure;
+    }
+}
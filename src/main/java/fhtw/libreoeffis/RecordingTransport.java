@@ -0,0 +1,99 @@
+package fhtw.libreoeffis;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP-Schicht, die alle Anfragen an eine echte {@link HttpTransport} weiterreicht und die
+ * Antworten in einem {@link HttpArchive} aufzeichnet, um sie später mit {@link ReplayTransport}
+ * ohne Netzwerk abzuspielen. Der Antwortkörper wird dafür vollständig gelesen, bevor er an den
+ * Aufrufer geht; das Dekodieren direkt aus dem Netzwerk-Stream entfällt beim Aufzeichnen.
+ */
+class RecordingTransport extends HttpTransport implements AutoCloseable {
+
+    // Nur diese Header werden für das Abspielen benötigt (bedingte Anfragen der GBFS-Feeds)
+    private static final List<String> KEPT_HEADERS = List.of("ETag", "Last-Modified", "Content-Type");
+
+    private final HttpTransport delegate;
+    private final HttpArchive.Writer writer;
+    private final Path path;
+
+    /**
+     * @param delegate Die HTTP-Schicht, die die Anfragen tatsächlich ausführt.
+     * @param path Der Pfad des Archivs; eine vorhandene Datei wird überschrieben.
+     * @throws IOException Wenn das Archiv nicht angelegt werden kann.
+     */
+    RecordingTransport(HttpTransport delegate, Path path) throws IOException {
+        this.delegate = delegate;
+        this.path = path;
+        this.writer = new HttpArchive.Writer(path);
+    }
+
+    @Override
+    public CompletableFuture<Response> sendAsync(String url, Map<String, String> headers) {
+        long startedAt = System.nanoTime();
+        return delegate.sendAsync(url, headers).handle((response, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                int status = cause instanceof HttpStatusException httpError ? httpError.getStatusCode() : 0;
+                Map<String, String> errorHeaders = status == 0
+                        ? Map.of(HttpArchive.ERROR_HEADER, String.valueOf(cause.getMessage()))
+                        : Map.of();
+                record(new HttpArchive.Exchange(url, status, elapsedMicros(startedAt), errorHeaders, null));
+                throw error instanceof CompletionException completion ? completion : new CompletionException(error);
+            }
+
+            byte[] body = null;
+            if (response.body() != null) {
+                try (InputStream in = response.body()) {
+                    body = in.readAllBytes();
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }
+            Map<String, String> kept = new LinkedHashMap<>();
+            for (String name : KEPT_HEADERS) {
+                response.headers().firstValue(name).ifPresent(value -> kept.put(name, value));
+            }
+            record(new HttpArchive.Exchange(url, response.statusCode(), elapsedMicros(startedAt), kept, body));
+            return new Response(response.statusCode(), body != null ? new ByteArrayInputStream(body) : null, response.headers());
+        });
+    }
+
+    private void record(HttpArchive.Exchange exchange) {
+        try {
+            writer.append(exchange);
+        } catch (IOException e) {
+            System.err.println("Fehler beim Aufzeichnen einer Antwort: " + e.getMessage());
+        }
+    }
+
+    private static long elapsedMicros(long startedAt) {
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startedAt);
+    }
+
+    /**
+     * Schließt das Archiv. Danach werden Anfragen weitergereicht, aber nicht mehr aufgezeichnet.
+     */
+    @Override
+    public void close() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            System.err.println("Fehler beim Schließen der Aufzeichnung: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RecordingTransport[" + path + ": " + writer.getWritten() + " Anfragen, " + writer.getBodies() + " Antwortkörper]";
+    }
+}
@@ -0,0 +1,135 @@
+package fhtw.libreoeffis;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.http.HttpHeaders;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP-Schicht, die aufgezeichnete Antworten aus einem {@link HttpArchive} abspielt, ohne das
+ * Netzwerk zu verwenden. Pro URL werden die Antworten in der Reihenfolge der Aufzeichnung
+ * geliefert und danach wieder von vorne; bei gleicher Anfragefolge ist das Ergebnis also
+ * jedes Mal gleich. Die Antwortzeit lässt sich einstellen: Faktor 0 ohne zusätzliche Dauer
+ * antwortet sofort (Lasttest mit voller Geschwindigkeit), Faktor 1 wie bei der Aufzeichnung.
+ */
+class ReplayTransport extends HttpTransport {
+
+    private final Map<String, List<HttpArchive.Exchange>> byUrl = new HashMap<>();
+    private final Map<String, AtomicInteger> positions = new ConcurrentHashMap<>();
+    private final double latencyScale;
+    private final long extraLatencyMicros;
+
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong missing = new AtomicLong();
+
+    /**
+     * @param exchanges Die aufgezeichneten Anfragen.
+     * @param latencyScale Der Faktor für die aufgezeichnete Antwortzeit, 0 für keine.
+     * @param extraLatency Eine zusätzliche feste Antwortzeit pro Anfrage.
+     */
+    ReplayTransport(List<HttpArchive.Exchange> exchanges, double latencyScale, Duration extraLatency) {
+        for (HttpArchive.Exchange exchange : exchanges) {
+            byUrl.computeIfAbsent(exchange.url(), url -> new ArrayList<>()).add(exchange);
+        }
+        this.latencyScale = latencyScale;
+        this.extraLatencyMicros = TimeUnit.NANOSECONDS.toMicros(extraLatency.toNanos());
+    }
+
+    /**
+     * Lädt ein Archiv zum Abspielen.
+     * @param path Der Pfad zum Archiv.
+     * @param latencyScale Der Faktor für die aufgezeichnete Antwortzeit, 0 für keine.
+     * @param extraLatency Eine zusätzliche feste Antwortzeit pro Anfrage.
+     * @return Die HTTP-Schicht.
+     * @throws IOException Wenn das Archiv nicht gelesen werden kann.
+     */
+    static ReplayTransport load(Path path, double latencyScale, Duration extraLatency) throws IOException {
+        return new ReplayTransport(HttpArchive.read(path), latencyScale, extraLatency);
+    }
+
+    @Override
+    public CompletableFuture<Response> sendAsync(String url, Map<String, String> headers) {
+        List<HttpArchive.Exchange> recorded = byUrl.get(url);
+        if (recorded == null) {
+            missing.incrementAndGet();
+            return CompletableFuture.failedFuture(new IOException("Keine Aufzeichnung für: " + url));
+        }
+        int position = Math.floorMod(positions.computeIfAbsent(url, key -> new AtomicInteger()).getAndIncrement(), recorded.size());
+        HttpArchive.Exchange exchange = recorded.get(position);
+        if (exchange.statusCode() == 304 && !headers.containsKey("If-None-Match") && !headers.containsKey("If-Modified-Since")) {
+            // Ohne bedingte Anfrage kennt der Aufrufer den Inhalt noch nicht: die letzte vollständige Antwort liefern
+            exchange = lastFullResponse(recorded, position);
+        }
+        replayed.incrementAndGet();
+
+        HttpArchive.Exchange selected = exchange;
+        long delayMicros = Math.round(selected.latencyMicros() * latencyScale) + extraLatencyMicros;
+        if (delayMicros <= 0) {
+            try {
+                return CompletableFuture.completedFuture(toResponse(selected));
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return toResponse(selected);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, CompletableFuture.delayedExecutor(delayMicros, TimeUnit.MICROSECONDS));
+    }
+
+    private static HttpArchive.Exchange lastFullResponse(List<HttpArchive.Exchange> recorded, int position) {
+        for (int i = 0; i < recorded.size(); i++) {
+            HttpArchive.Exchange candidate = recorded.get(Math.floorMod(position - i, recorded.size()));
+            if (candidate.statusCode() == 200) {
+                return candidate;
+            }
+        }
+        return recorded.get(position);
+    }
+
+    private static Response toResponse(HttpArchive.Exchange exchange) throws IOException {
+        if (exchange.statusCode() == 0) {
+            throw new IOException(exchange.headers().getOrDefault(HttpArchive.ERROR_HEADER, "Aufgezeichneter Fehler"));
+        }
+        if (exchange.statusCode() != 200 && exchange.statusCode() != 304) {
+            throw new HttpStatusException(exchange.statusCode());
+        }
+        Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        exchange.headers().forEach((name, value) -> headers.put(name, List.of(value)));
+        HttpHeaders httpHeaders = HttpHeaders.of(headers, (name, value) -> true);
+        if (exchange.statusCode() == 304) {
+            return new Response(304, null, httpHeaders);
+        }
+        byte[] body = exchange.body() != null ? exchange.body() : new byte[0];
+        return new Response(200, new ByteArrayInputStream(body), httpHeaders);
+    }
+
+    public long getReplayed() {
+        return replayed.get();
+    }
+
+    public long getMissing() {
+        return missing.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ReplayTransport[" + byUrl.size() + " URLs, " + replayed.get() + " abgespielt, "
+                + missing.get() + " ohne Aufzeichnung]";
+    }
+}
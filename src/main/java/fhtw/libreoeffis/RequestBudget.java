@@ -0,0 +1,102 @@
+package fhtw.libreoeffis;
+
+/**
+ * Token-Bucket für Anfragen an die Wiener Linien API.
+ * Jede Upstream-Anfrage verbraucht eine Marke, Marken füllen sich gleichmäßig nach.
+ * Anfragen von Benutzern werden immer ausgeführt und nur verbucht ({@link #record(int)}),
+ * optionale Arbeit wie das Vorladen beliebter Haltestellen holt sich dagegen vorher
+ * Marken ({@link #tryAcquire(int, int)}) und lässt dabei eine Reserve für Benutzer übrig.
+ */
+public class RequestBudget {
+
+    private static final int DEFAULT_REQUESTS_PER_MINUTE = 60;
+
+    private final double capacity;
+    private final double tokensPerNano;
+
+    // Geschützt durch synchronized(this)
+    private double tokens;
+    private long lastRefill;
+
+    private long recorded;
+    private long acquired;
+    private long denied;
+
+    public RequestBudget() {
+        this(DEFAULT_REQUESTS_PER_MINUTE);
+    }
+
+    /**
+     * Erstellt ein Budget, dessen Kapazität einer Minute entspricht.
+     * @param requestsPerMinute Die erlaubten Anfragen pro Minute.
+     */
+    public RequestBudget(int requestsPerMinute) {
+        if (requestsPerMinute <= 0) {
+            throw new IllegalArgumentException("Das Budget muss positiv sein: " + requestsPerMinute);
+        }
+        this.capacity = requestsPerMinute;
+        this.tokensPerNano = requestsPerMinute / 60_000_000_000.0;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Verbucht bereits ausgeführte Anfragen. Das Budget kann dabei ins Minus gehen,
+     * optionale Arbeit pausiert dann, bis es sich wieder aufgefüllt hat.
+     * @param requests Die Anzahl der Anfragen.
+     */
+    public synchronized void record(int requests) {
+        refill();
+        // Nicht beliebig tief ins Minus, sonst bliebe das Vorladen nach einer Lastspitze zu lange aus
+        tokens = Math.max(-capacity, tokens - requests);
+        recorded += requests;
+    }
+
+    /**
+     * Reserviert Marken für optionale Anfragen, sofern danach noch die Reserve übrig bleibt.
+     * Die Anfragen werden dabei bereits verbucht.
+     * @param requests Die Anzahl der geplanten Anfragen.
+     * @param reserve Die Marken, die für Benutzeranfragen frei bleiben sollen.
+     * @return true, wenn die Anfragen ausgeführt werden dürfen.
+     */
+    public synchronized boolean tryAcquire(int requests, int reserve) {
+        refill();
+        if (tokens - requests < reserve) {
+            denied++;
+            return false;
+        }
+        tokens -= requests;
+        acquired += requests;
+        return true;
+    }
+
+    /**
+     * Gibt die derzeit verfügbaren Marken zurück.
+     * @return Die abgerundete Anzahl verfügbarer Marken, mindestens 0.
+     */
+    public synchronized int available() {
+        refill();
+        return (int) Math.max(0, Math.floor(tokens));
+    }
+
+    /**
+     * Gibt die Kapazität zurück, also die erlaubten Anfragen pro Minute.
+     * @return Die Kapazität.
+     */
+    public int getCapacity() {
+        return (int) capacity;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+
+    @Override
+    public synchronized String toString() {
+        refill();
+        return String.format("Anfragebudget: %.1f/%d frei, %d verbucht, %d reserviert, %d abgelehnt",
+                Math.max(0, tokens), (int) capacity, recorded, acquired, denied);
+    }
+}
@@ -0,0 +1,277 @@
+package fhtw.libreoeffis;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchrones Protokoll der Upstream-Anfragen.
+ * Aufrufer legen Einträge ohne Sperren in einem begrenzten Ringpuffer ab; ein einzelner
+ * Schreib-Thread holt sie gesammelt ab und schreibt jede Gruppe mit einem Aufruf in den
+ * dauerhaft geöffneten {@link FileChannel}. Ist der Puffer voll, wird der Eintrag verworfen
+ * und gezählt, statt den Aufrufer warten zu lassen.
+ * Überschreitet die Datei die maximale Größe, wird sie rotiert
+ * ({@code requests.log} → {@code requests.log.1} → ... → {@code requests.log.<maxFiles>}).
+ * <pre>
+ * 2024-05-01T12:00:00.123+02:00 200 183 ms Anfrage: https://...
+ * </pre>
+ */
+public class RequestLogger implements AutoCloseable {
+
+    private static final String DEFAULT_LOG_FILE = "requests.log";
+    private static final int DEFAULT_CAPACITY = 8192;
+    private static final long DEFAULT_MAX_BYTES = 10L * 1024 * 1024;
+    private static final int DEFAULT_MAX_FILES = 5;
+    // Wie lange der Schreib-Thread bei leerem Puffer wartet, bestimmt die Größe einer Gruppe
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final int MAX_BATCH = 1024;
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ISO_OFFSET_DATE_TIME.withZone(ZoneId.systemDefault());
+
+    private static RequestLogger shared;
+
+    /**
+     * Ein Protokolleintrag.
+     * @param timestamp Der Zeitpunkt des Abschlusses in Millisekunden seit 1970.
+     * @param request Die Anfrage-URL.
+     * @param status Der HTTP-Status oder eine kurze Fehlerbezeichnung.
+     * @param latencyMillis Die Dauer der Anfrage in Millisekunden.
+     */
+    private record Entry(long timestamp, String request, String status, long latencyMillis) {
+    }
+
+    private final Path path;
+    private final long maxBytes;
+    private final int maxFiles;
+
+    // Ringpuffer nach Vyukov: Die Sequenz eines Slots gibt an, ob er frei oder belegt ist
+    private final Entry[] entries;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private long head; // nur vom Schreib-Thread verwendet
+
+    private final Thread writer;
+    private volatile boolean running = true;
+    private FileChannel channel;
+    private long fileSize;
+
+    private final AtomicLong logged = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong rotations = new AtomicLong();
+
+    /**
+     * Öffnet die Protokolldatei und startet den Schreib-Thread.
+     * @param path Der Pfad zur Protokolldatei.
+     * @param capacity Die Anzahl der Einträge im Ringpuffer, eine Zweierpotenz.
+     * @param maxBytes Die Größe, ab der die Datei rotiert wird.
+     * @param maxFiles Die Anzahl der aufbewahrten rotierten Dateien.
+     * @throws IOException Wenn die Datei nicht geöffnet werden kann.
+     */
+    public RequestLogger(Path path, int capacity, long maxBytes, int maxFiles) throws IOException {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Die Kapazität muss eine Zweierpotenz sein: " + capacity);
+        }
+        this.path = path;
+        this.maxBytes = maxBytes;
+        this.maxFiles = maxFiles;
+        this.entries = new Entry[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = capacity - 1;
+        open();
+        this.writer = Thread.ofPlatform().name("request-logger").daemon(true).start(this::writeLoop);
+    }
+
+    /**
+     * Gibt das gemeinsame Protokoll für {@code requests.log} zurück. Es wird beim Beenden
+     * der JVM geleert und geschlossen.
+     * @return Das gemeinsame Protokoll oder null, wenn die Datei nicht geöffnet werden konnte.
+     */
+    public static synchronized RequestLogger shared() {
+        if (shared == null) {
+            try {
+                RequestLogger created = new RequestLogger(Paths.get(DEFAULT_LOG_FILE), DEFAULT_CAPACITY, DEFAULT_MAX_BYTES, DEFAULT_MAX_FILES);
+                Runtime.getRuntime().addShutdownHook(new Thread(created::close, "request-logger-shutdown"));
+                shared = created;
+            } catch (IOException e) {
+                System.err.println("Fehler beim Öffnen der Log-Datei: " + e.getMessage());
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Legt einen Eintrag ab, ohne zu blockieren.
+     * @param request Die Anfrage-URL.
+     * @param status Der HTTP-Status oder eine kurze Fehlerbezeichnung.
+     * @param latencyMillis Die Dauer der Anfrage in Millisekunden.
+     * @return false, wenn der Puffer voll war und der Eintrag verworfen wurde.
+     */
+    public boolean log(String request, String status, long latencyMillis) {
+        Entry entry = new Entry(System.currentTimeMillis(), request, status, latencyMillis);
+        long position = tail.get();
+        while (running) {
+            int index = (int) (position & mask);
+            long difference = sequences.getAcquire(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    entries[index] = entry;
+                    sequences.setRelease(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // Der Schreib-Thread ist eine ganze Runde zurück: verwerfen und ihn sofort wecken
+                dropped.incrementAndGet();
+                LockSupport.unpark(writer);
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    private Entry poll() {
+        int index = (int) (head & mask);
+        if (sequences.getAcquire(index) != head + 1) {
+            return null;
+        }
+        Entry entry = entries[index];
+        entries[index] = null;
+        sequences.setRelease(index, head + entries.length);
+        head++;
+        return entry;
+    }
+
+    private void writeLoop() {
+        StringBuilder batch = new StringBuilder();
+        while (true) {
+            boolean stopping = !running;
+            int count = 0;
+            Entry entry;
+            while (count < MAX_BATCH && (entry = poll()) != null) {
+                TIMESTAMP.formatTo(Instant.ofEpochMilli(entry.timestamp()), batch);
+                batch.append(' ').append(entry.status()).append(' ').append(entry.latencyMillis())
+                        .append(" ms Anfrage: ").append(entry.request()).append(System.lineSeparator());
+                count++;
+            }
+            if (count > 0) {
+                write(batch);
+                logged.addAndGet(count);
+                batch.setLength(0);
+            } else if (stopping) {
+                return;
+            } else {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Schreibt eine Gruppe von Zeilen mit einem Aufruf und rotiert danach bei Bedarf.
+     */
+    private void write(CharSequence lines) {
+        ByteBuffer buffer = StandardCharsets.UTF_8.encode(lines.toString());
+        try {
+            while (buffer.hasRemaining()) {
+                fileSize += channel.write(buffer);
+            }
+            batches.incrementAndGet();
+            if (fileSize >= maxBytes) {
+                rotate();
+            }
+        } catch (IOException e) {
+            System.err.println("Fehler beim Schreiben der Log-Datei: " + e.getMessage());
+        }
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileSize = channel.size();
+    }
+
+    private void rotate() throws IOException {
+        channel.close();
+        try {
+            for (int i = maxFiles - 1; i >= 1; i--) {
+                Path older = rotated(i);
+                if (Files.exists(older)) {
+                    Files.move(older, rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            if (maxFiles > 0) {
+                Files.move(path, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.delete(path);
+            }
+            rotations.incrementAndGet();
+        } finally {
+            // Auch wenn das Umbenennen fehlschlägt, wird weiter in die (dann nicht rotierte) Datei geschrieben
+            open();
+        }
+    }
+
+    private Path rotated(int index) {
+        return path.resolveSibling(path.getFileName() + "." + index);
+    }
+
+    /**
+     * Schreibt alle abgelegten Einträge und schließt die Datei.
+     */
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Fehler beim Schließen der Log-Datei: " + e.getMessage());
+        }
+    }
+
+    public long getLogged() {
+        return logged.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    public long getRotations() {
+        return rotations.get();
+    }
+
+    @Override
+    public String toString() {
+        return "RequestLogger[" + path + ": " + logged.get() + " geschrieben in " + batches.get() + " Gruppen, "
+                + dropped.get() + " verworfen, " + rotations.get() + " Rotationen]";
+    }
+}
@@ -0,0 +1,413 @@
+package fhtw.libreoeffis;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+/**
+ * Verzeichnis aller Haltepunkte aus der OGD-Datei wienerlinien-ogd-haltepunkte.csv.
+ * Die Daten werden einmal geladen und kompakt in Puffern gehalten: sortierte Stop-IDs,
+ * eine Tabelle der (mehrfach genutzten) Namen und optionale Koordinaten.
+ * Stop-ID → Name und Name → Stop-IDs sind Hash-Zugriffe mit konstanter Laufzeit.
+ * Die Puffer können direkt aus einem Binär-Snapshot eingeblendet werden
+ * (siehe {@link StopRegistrySnapshot}), sodass beim Start die CSV nicht geparst werden muss.
+ * GUI, TCP-Server und API-Klassen teilen sich eine Instanz über {@link #shared()}.
+ */
+public final class StopRegistry {
+
+    static final String DEFAULT_CSV_PATH = "src/main/java/fhtw/libreoeffis/files/wienerlinien-ogd-haltepunkte.csv";
+    static final String DEFAULT_SNAPSHOT_PATH = "src/main/java/fhtw/libreoeffis/files/wienerlinien-ogd-haltepunkte.bin";
+
+    private static CompletableFuture<StopRegistry> shared;
+
+    // Pro Haltepunkt, aufsteigend nach Stop-ID sortiert
+    private final IntBuffer ids;
+    private final IntBuffer nameRefs;
+    private final DoubleBuffer latitudes;
+    private final DoubleBuffer longitudes;
+    // Offene Adressierung: Slot enthält Index + 1 in ids, 0 = frei
+    private final IntBuffer slots;
+    // Indizes der Haltepunkte, sortiert nach Name und Stop-ID
+    private final IntBuffer displayOrder;
+    // Alphabetisch sortierte Namen, auf die nameRefs verweisen
+    private final String[] names;
+    private volatile Map<String, int[]> idsByName;
+
+    StopRegistry(IntBuffer ids, IntBuffer nameRefs, DoubleBuffer latitudes, DoubleBuffer longitudes,
+                 IntBuffer slots, IntBuffer displayOrder, String[] names) {
+        this.ids = ids;
+        this.nameRefs = nameRefs;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.slots = slots;
+        this.displayOrder = displayOrder;
+        this.names = names;
+    }
+
+    /**
+     * Baut das Verzeichnis aus den geparsten Zeilen auf.
+     * @param ids Die Stop-IDs, aufsteigend sortiert.
+     * @param stopNames Der Name pro Haltepunkt.
+     * @param latitudes Die Breite pro Haltepunkt oder NaN.
+     * @param longitudes Die Länge pro Haltepunkt oder NaN.
+     */
+    private static StopRegistry build(int[] ids, String[] stopNames, double[] latitudes, double[] longitudes) {
+        String[] names = Arrays.stream(stopNames).distinct().sorted().toArray(String[]::new);
+        Map<String, Integer> nameIndex = new HashMap<>(names.length * 2);
+        for (int i = 0; i < names.length; i++) {
+            nameIndex.put(names[i], i);
+        }
+        int[] nameRefs = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            nameRefs[i] = nameIndex.get(stopNames[i]);
+        }
+
+        int[] slots = new int[Integer.highestOneBit(Math.max(1, ids.length) * 2) * 2];
+        for (int i = 0; i < ids.length; i++) {
+            int slot = slot(ids[i], slots.length);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & (slots.length - 1);
+            }
+            slots[slot] = i + 1;
+        }
+
+        // Die Namen sind sortiert und die IDs aufsteigend, daher genügt ein stabiles Sortieren nach Namen
+        int[] displayOrder = IntStream.range(0, ids.length).boxed()
+                .sorted(Comparator.comparingInt(index -> nameRefs[index]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        return new StopRegistry(IntBuffer.wrap(ids), IntBuffer.wrap(nameRefs), DoubleBuffer.wrap(latitudes),
+                DoubleBuffer.wrap(longitudes), IntBuffer.wrap(slots), IntBuffer.wrap(displayOrder), names);
+    }
+
+    /**
+     * Lädt die Haltepunkte aus einer CSV-Datei mit Semikolon als Trennzeichen.
+     * Die Spalten werden über die Kopfzeile gefunden (StopID, StopText und optional
+     * Latitude/Longitude); Zeilen ohne gültige Stop-ID werden übersprungen.
+     * @param csvPath Der Pfad zur CSV-Datei.
+     * @return Das geladene Verzeichnis.
+     * @throws IOException Wenn die Datei nicht gelesen werden kann oder die Spalten fehlen.
+     */
+    public static StopRegistry load(Path csvPath) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(csvPath, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null) {
+                throw new IOException("Leere Haltepunkte-Datei: " + csvPath);
+            }
+            List<String> columns = Arrays.stream(header.replace("\uFEFF", "").split(";"))
+                    .map(column -> column.trim().toLowerCase(Locale.ROOT))
+                    .toList();
+            int idColumn = columns.indexOf("stopid");
+            int nameColumn = columns.indexOf("stoptext");
+            int latColumn = columns.indexOf("latitude");
+            int lonColumn = columns.indexOf("longitude");
+            if (idColumn < 0 || nameColumn < 0) {
+                throw new IOException("Spalten StopID und StopText fehlen in " + csvPath);
+            }
+
+            List<String[]> rows = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(";", -1);
+                if (parts.length > Math.max(idColumn, nameColumn) && parseId(parts[idColumn]) >= 0) {
+                    rows.add(parts);
+                }
+            }
+            rows.sort((a, b) -> Integer.compare(parseId(a[idColumn]), parseId(b[idColumn])));
+
+            int[] ids = new int[rows.size()];
+            String[] stopNames = new String[rows.size()];
+            double[] latitudes = new double[rows.size()];
+            double[] longitudes = new double[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                String[] parts = rows.get(i);
+                ids[i] = parseId(parts[idColumn]);
+                stopNames[i] = parts[nameColumn].trim();
+                latitudes[i] = parseCoordinate(parts, latColumn);
+                longitudes[i] = parseCoordinate(parts, lonColumn);
+            }
+            return build(ids, stopNames, latitudes, longitudes);
+        }
+    }
+
+    /**
+     * Lädt die Haltepunkte über einen Binär-Snapshot. Passt die Prüfsumme des Snapshots
+     * zur CSV, wird er eingeblendet, ohne die CSV zu parsen; sonst wird die CSV geladen
+     * und der Snapshot neu geschrieben.
+     * @param csvPath Der Pfad zur CSV-Datei.
+     * @param snapshotPath Der Pfad zum Snapshot.
+     * @return Das geladene Verzeichnis.
+     * @throws IOException Wenn die CSV nicht gelesen werden kann.
+     */
+    public static StopRegistry load(Path csvPath, Path snapshotPath) throws IOException {
+        long checksum = StopRegistrySnapshot.checksum(csvPath);
+        try {
+            StopRegistry snapshot = StopRegistrySnapshot.read(snapshotPath, checksum);
+            if (snapshot != null) {
+                return snapshot;
+            }
+        } catch (IOException e) {
+            System.err.println("Snapshot der Haltepunkte ist ungültig und wird neu erstellt: " + e.getMessage());
+        }
+
+        StopRegistry registry = load(csvPath);
+        try {
+            StopRegistrySnapshot.write(registry, snapshotPath, checksum);
+        } catch (IOException e) {
+            System.err.println("Snapshot der Haltepunkte konnte nicht geschrieben werden: " + e.getMessage());
+        }
+        return registry;
+    }
+
+    /**
+     * Startet das Laden des gemeinsamen Verzeichnisses im Hintergrund, falls noch nicht geschehen.
+     * @return Die Future mit dem gemeinsamen Verzeichnis.
+     */
+    public static synchronized CompletableFuture<StopRegistry> sharedAsync() {
+        if (shared == null) {
+            CompletableFuture<StopRegistry> future = new CompletableFuture<>();
+            shared = future;
+            Thread.ofVirtual().name("stop-registry-loader").start(() -> {
+                try {
+                    future.complete(load(Path.of(DEFAULT_CSV_PATH), Path.of(DEFAULT_SNAPSHOT_PATH)));
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        }
+        return shared;
+    }
+
+    /**
+     * Gibt das gemeinsame Verzeichnis zurück und wartet bei Bedarf, bis es geladen ist.
+     * @return Das gemeinsame Verzeichnis.
+     * @throws Exception Wenn die Haltepunkte nicht geladen werden konnten.
+     */
+    public static StopRegistry shared() throws Exception {
+        return HttpTransport.await(sharedAsync());
+    }
+
+    public int size() {
+        return ids.limit();
+    }
+
+    /**
+     * @param stopId Die Stop-ID.
+     * @return true, wenn die Stop-ID bekannt ist.
+     */
+    public boolean contains(int stopId) {
+        return indexOf(stopId) >= 0;
+    }
+
+    /**
+     * @param stopId Die Stop-ID.
+     * @return Der Name des Haltepunkts oder null, wenn die Stop-ID unbekannt ist.
+     */
+    public String getName(int stopId) {
+        int index = indexOf(stopId);
+        return index >= 0 ? names[nameRefs.get(index)] : null;
+    }
+
+    /**
+     * @param stopId Die Stop-ID.
+     * @return Die geografische Breite oder NaN, wenn sie nicht bekannt ist.
+     */
+    public double getLatitude(int stopId) {
+        int index = indexOf(stopId);
+        return index >= 0 ? latitudes.get(index) : Double.NaN;
+    }
+
+    /**
+     * @param stopId Die Stop-ID.
+     * @return Die geografische Länge oder NaN, wenn sie nicht bekannt ist.
+     */
+    public double getLongitude(int stopId) {
+        int index = indexOf(stopId);
+        return index >= 0 ? longitudes.get(index) : Double.NaN;
+    }
+
+    /**
+     * Sucht alle Haltepunkte mit einem Namen, z. B. alle Steige am Karlsplatz.
+     * Groß-/Kleinschreibung und Akzente werden ignoriert.
+     * @param name Der Name der Haltestelle.
+     * @return Die Stop-IDs aufsteigend sortiert, leer wenn der Name unbekannt ist.
+     */
+    public int[] getIdsByName(String name) {
+        int[] stopIds = idsByName().get(StopSearchIndex.normalize(name));
+        return stopIds != null ? stopIds.clone() : new int[0];
+    }
+
+    /**
+     * Baut die Zuordnung Name → Stop-IDs erst bei der ersten Namenssuche auf,
+     * damit sie den Start nicht verzögert.
+     */
+    private Map<String, int[]> idsByName() {
+        Map<String, int[]> byName = idsByName;
+        if (byName == null) {
+            Map<String, List<Integer>> grouped = new HashMap<>();
+            for (int i = 0; i < size(); i++) {
+                grouped.computeIfAbsent(StopSearchIndex.normalize(names[nameRefs.get(i)]), key -> new ArrayList<>()).add(ids.get(i));
+            }
+            byName = new HashMap<>(grouped.size() * 2);
+            for (Map.Entry<String, List<Integer>> entry : grouped.entrySet()) {
+                byName.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+            }
+            idsByName = byName;
+        }
+        return byName;
+    }
+
+    /**
+     * Formatiert einen Haltepunkt so, wie er in der GUI angezeigt wird.
+     * @param stopId Die Stop-ID.
+     * @return "Name (ID: stopId)" oder null, wenn die Stop-ID unbekannt ist.
+     */
+    public String getDisplayName(int stopId) {
+        String name = getName(stopId);
+        return name != null ? name + " (ID: " + stopId + ")" : null;
+    }
+
+    /**
+     * Gibt alle Haltepunkte im Anzeigeformat zurück, sortiert nach Name und Stop-ID.
+     * @return Die Anzeigenamen.
+     */
+    public List<String> getDisplayNames() {
+        List<String> displayNames = new ArrayList<>(size());
+        for (int i = 0; i < size(); i++) {
+            int index = displayOrder.get(i);
+            displayNames.add(names[nameRefs.get(index)] + " (ID: " + ids.get(index) + ")");
+        }
+        return displayNames;
+    }
+
+    /**
+     * Übersetzt eine Eingabe in Stop-IDs. Eine Liste von Zahlen (getrennt durch Komma
+     * oder Leerzeichen) wird übernommen, jede andere Eingabe als Haltestellenname
+     * gesucht, sodass z. B. "Karlsplatz" alle Steige der Haltestelle liefert.
+     * @param input Die Eingabe des Benutzers.
+     * @return Die Stop-IDs, leer wenn nichts gefunden wurde.
+     */
+    public List<String> resolve(String input) {
+        String trimmed = input == null ? "" : input.trim();
+        if (trimmed.isEmpty()) {
+            return List.of();
+        }
+        if (isStopIdList(trimmed)) {
+            return Arrays.stream(trimmed.split("[,\\s]+"))
+                    .filter(id -> !id.isEmpty())
+                    .toList();
+        }
+        return Arrays.stream(getIdsByName(trimmed))
+                .mapToObj(Integer::toString)
+                .toList();
+    }
+
+    /**
+     * Prüft, ob eine Eingabe nur aus Stop-IDs besteht (Zahlen, getrennt durch Komma oder Leerzeichen).
+     * Solche Eingaben können ohne geladenes Verzeichnis direkt verwendet werden.
+     * @param input Die Eingabe.
+     * @return true, wenn die Eingabe nur Stop-IDs enthält.
+     */
+    public static boolean isStopIdList(String input) {
+        return input != null && input.matches("\\s*\\d+([,\\s]+\\d+)*[,\\s]*");
+    }
+
+    /**
+     * Liest die Stop-ID aus einem Anzeigenamen wie "Karlsplatz (ID: 4200)".
+     * @param displayName Der Anzeigename.
+     * @return Die Stop-ID oder -1, wenn der Text keine enthält.
+     */
+    public static int parseDisplayId(String displayName) {
+        int start = displayName.lastIndexOf("(ID: ");
+        int end = displayName.lastIndexOf(')');
+        if (start < 0 || end < start) {
+            return -1;
+        }
+        return parseId(displayName.substring(start + 5, end));
+    }
+
+    private int indexOf(int stopId) {
+        int mask = slots.limit() - 1;
+        int slot = slot(stopId, slots.limit());
+        int entry;
+        while ((entry = slots.get(slot)) != 0) {
+            if (ids.get(entry - 1) == stopId) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static int slot(int stopId, int tableSize) {
+        return (stopId * 0x9E3779B9 >>> 16) & (tableSize - 1);
+    }
+
+    // Zugriff für StopRegistrySnapshot; die Puffer werden nur über absolute Indizes gelesen
+    IntBuffer ids() {
+        return ids;
+    }
+
+    IntBuffer nameRefs() {
+        return nameRefs;
+    }
+
+    DoubleBuffer latitudes() {
+        return latitudes;
+    }
+
+    DoubleBuffer longitudes() {
+        return longitudes;
+    }
+
+    IntBuffer slots() {
+        return slots;
+    }
+
+    IntBuffer displayOrder() {
+        return displayOrder;
+    }
+
+    String[] names() {
+        return names;
+    }
+
+    private static int parseId(String text) {
+        try {
+            int id = Integer.parseInt(text.trim());
+            return id >= 0 ? id : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static double parseCoordinate(String[] parts, int column) {
+        if (column < 0 || column >= parts.length || parts[column].isBlank()) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(parts[column].trim().replace(',', '.'));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StopRegistry{Haltepunkte=" + size() + ", Namen=" + names.length + "}";
+    }
+}
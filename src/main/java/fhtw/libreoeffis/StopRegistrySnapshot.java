@@ -0,0 +1,209 @@
+package fhtw.libreoeffis;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Binärformat des {@link StopRegistry}, das beim Start per {@link FileChannel#map}
+ * eingeblendet wird, statt die CSV zu parsen und zu sortieren.
+ * <pre>
+ * Kopf (40 Byte): Magic, Version, CRC32 der CSV, Anzahl Haltepunkte, Anzahl Namen,
+ *                 Anzahl Slots, Länge der Stringtabelle, reserviert
+ * double[n] Breite, double[n] Länge
+ * int[n] Stop-IDs (sortiert), int[n] Namensverweise, int[n] Anzeigereihenfolge
+ * int[slots] Hashtabelle Stop-ID → Index
+ * int[namen + 1] Offsets in die Stringtabelle
+ * byte[] Stringtabelle (UTF-8)
+ * </pre>
+ * Passt die Prüfsumme nicht mehr zur CSV, wird der Snapshot verworfen und neu geschrieben.
+ */
+final class StopRegistrySnapshot {
+
+    private static final int MAGIC = 0x4C4F4853;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 40;
+
+    private StopRegistrySnapshot() {
+    }
+
+    /**
+     * Berechnet die Prüfsumme einer Datei.
+     * @param path Der Pfad zur Datei.
+     * @return Die CRC32-Prüfsumme.
+     * @throws IOException Wenn die Datei nicht gelesen werden kann.
+     */
+    static long checksum(Path path) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(path)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Blendet einen Snapshot ein.
+     * @param path Der Pfad zum Snapshot.
+     * @param checksum Die erwartete Prüfsumme der CSV.
+     * @return Das Verzeichnis oder null, wenn kein passender Snapshot existiert.
+     * @throws IOException Wenn der Snapshot nicht gelesen werden kann oder beschädigt ist.
+     */
+    static StopRegistry read(Path path, long checksum) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // Kopf zuerst normal lesen, damit ein veralteter Snapshot nicht eingeblendet bleibt
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // weiterlesen, bis der Kopf vollständig ist
+            }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC || header.getInt() != VERSION
+                    || header.getLong() != checksum) {
+                return null;
+            }
+            int count = header.getInt();
+            int nameCount = header.getInt();
+            int slotCount = header.getInt();
+            int stringBytes = header.getInt();
+
+            long expectedSize = HEADER_BYTES + 16L * count + 4L * (3L * count + slotCount + nameCount + 1) + stringBytes;
+            if (count < 0 || nameCount < 0 || Integer.bitCount(slotCount) != 1 || channel.size() != expectedSize) {
+                throw new IOException("Ungültige Größe des Snapshots: " + path);
+            }
+
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, expectedSize);
+            int offset = HEADER_BYTES;
+            DoubleBuffer latitudes = mapped.slice(offset, 8 * count).asDoubleBuffer();
+            offset += 8 * count;
+            DoubleBuffer longitudes = mapped.slice(offset, 8 * count).asDoubleBuffer();
+            offset += 8 * count;
+            IntBuffer ids = mapped.slice(offset, 4 * count).asIntBuffer();
+            offset += 4 * count;
+            IntBuffer nameRefs = mapped.slice(offset, 4 * count).asIntBuffer();
+            offset += 4 * count;
+            IntBuffer displayOrder = mapped.slice(offset, 4 * count).asIntBuffer();
+            offset += 4 * count;
+            IntBuffer slots = mapped.slice(offset, 4 * slotCount).asIntBuffer();
+            offset += 4 * slotCount;
+            IntBuffer nameOffsets = mapped.slice(offset, 4 * (nameCount + 1)).asIntBuffer();
+            offset += 4 * (nameCount + 1);
+
+            // Indizes prüfen, damit ein beschädigter Snapshot nicht erst bei der Abfrage auffällt
+            checkRange(nameRefs, 0, nameCount - 1, "Namensverweise", path);
+            checkRange(displayOrder, 0, count - 1, "Anzeigereihenfolge", path);
+            checkRange(slots, 0, count, "Hashtabelle", path);
+
+            // Nur die eindeutigen Namen werden dekodiert, alles andere bleibt im eingeblendeten Puffer
+            String[] names = new String[nameCount];
+            byte[] utf8 = new byte[stringBytes];
+            mapped.get(offset, utf8);
+            for (int i = 0; i < nameCount; i++) {
+                int start = nameOffsets.get(i);
+                int end = nameOffsets.get(i + 1);
+                if (start < 0 || end < start || end > stringBytes) {
+                    throw new IOException("Beschädigte Stringtabelle im Snapshot: " + path);
+                }
+                names[i] = new String(utf8, start, end - start, StandardCharsets.UTF_8);
+            }
+
+            return new StopRegistry(ids, nameRefs, latitudes, longitudes, slots, displayOrder, names);
+        }
+    }
+
+    /**
+     * @param values Die zu prüfenden Einträge.
+     * @param min Der kleinste erlaubte Wert.
+     * @param max Der größte erlaubte Wert.
+     * @param what Die Bezeichnung des Abschnitts für die Fehlermeldung.
+     * @param path Der Pfad zum Snapshot.
+     * @throws IOException Wenn ein Eintrag außerhalb des Bereichs liegt.
+     */
+    private static void checkRange(IntBuffer values, int min, int max, String what, Path path) throws IOException {
+        for (int i = 0; i < values.limit(); i++) {
+            int value = values.get(i);
+            if (value < min || value > max) {
+                throw new IOException("Beschädigte " + what + " im Snapshot: " + path);
+            }
+        }
+    }
+
+    /**
+     * Schreibt einen Snapshot. Die Datei wird zuerst unter einem temporären Namen
+     * geschrieben und dann ersetzt, damit nie ein halber Snapshot gelesen wird.
+     * @param registry Das Verzeichnis.
+     * @param path Der Pfad zum Snapshot.
+     * @param checksum Die Prüfsumme der CSV, aus der das Verzeichnis stammt.
+     * @throws IOException Wenn nicht geschrieben werden kann.
+     */
+    static void write(StopRegistry registry, Path path, long checksum) throws IOException {
+        int count = registry.size();
+        String[] names = registry.names();
+        int slotCount = registry.slots().limit();
+
+        byte[][] encoded = new byte[names.length][];
+        int stringBytes = 0;
+        for (int i = 0; i < names.length; i++) {
+            encoded[i] = names[i].getBytes(StandardCharsets.UTF_8);
+            stringBytes += encoded[i].length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + 16 * count + 4 * (3 * count + slotCount + names.length + 1) + stringBytes);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(checksum)
+                .putInt(count).putInt(names.length).putInt(slotCount).putInt(stringBytes)
+                .putLong(0);
+        for (int i = 0; i < count; i++) {
+            buffer.putDouble(registry.latitudes().get(i));
+        }
+        for (int i = 0; i < count; i++) {
+            buffer.putDouble(registry.longitudes().get(i));
+        }
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(registry.ids().get(i));
+        }
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(registry.nameRefs().get(i));
+        }
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(registry.displayOrder().get(i));
+        }
+        for (int i = 0; i < slotCount; i++) {
+            buffer.putInt(registry.slots().get(i));
+        }
+        int position = 0;
+        for (byte[] name : encoded) {
+            buffer.putInt(position);
+            position += name.length;
+        }
+        buffer.putInt(position);
+        for (byte[] name : encoded) {
+            buffer.put(name);
+        }
+        buffer.flip();
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,280 @@
+package fhtw.libreoeffis;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Suchindex über Haltestellennamen für die Suche während der Eingabe.
+ * Wird einmal beim Laden der Haltestellen aufgebaut und enthält
+ * <ul>
+ *     <li>die normalisierten Namen (Kleinbuchstaben, ohne Akzente, ß als ss),</li>
+ *     <li>einen Trigramm-Index, der tippfehlertolerante Treffer liefert,</li>
+ *     <li>eine sortierte Wortliste für die Präfixsuche (per Binärsuche wie in einem Trie).</li>
+ * </ul>
+ * Treffer werden nach Relevanz sortiert: Namensanfang vor Wortanfang vor Trigramm-Übereinstimmung.
+ * Pro Anfrage wird nur der Suchtext normalisiert, die Einträge selbst werden nicht mehr kopiert.
+ */
+final class StopSearchIndex {
+
+    // Alphabet für Trigramme: Leerzeichen, a-z, 0-9 und ein Sammelzeichen für alles andere
+    private static final int ALPHABET = 38;
+    private static final int[] NO_POSTINGS = new int[0];
+
+    private static final int SCORE_NAME_PREFIX = 1000;
+    private static final int SCORE_WORD_PREFIX = 100;
+    private static final int SCORE_TRIGRAM = 10;
+    private static final int MAX_SCORE = (1 << 23) - 1;
+
+    private final List<String> items;
+    private final String[] normalized;
+    private final int[][] postings;
+    private final String[] words;
+    private final int[] wordItems;
+
+    /**
+     * Baut den Index auf.
+     * @param items Die anzuzeigenden Einträge, z. B. "Karlsplatz (ID: 4200)".
+     */
+    StopSearchIndex(List<String> items) {
+        if (items.size() >= 1 << 20) {
+            throw new IllegalArgumentException("Zu viele Einträge für den Suchindex: " + items.size());
+        }
+        this.items = List.copyOf(items);
+        this.normalized = new String[this.items.size()];
+
+        int[] trigramCounts = new int[ALPHABET * ALPHABET * ALPHABET];
+        List<String> wordList = new ArrayList<>();
+        List<Integer> wordItemList = new ArrayList<>();
+        for (int i = 0; i < normalized.length; i++) {
+            normalized[i] = normalize(this.items.get(i));
+            forEachTrigram(normalized[i], trigram -> trigramCounts[trigram]++);
+            for (String word : normalized[i].split(" ")) {
+                if (!word.isEmpty()) {
+                    wordList.add(word);
+                    wordItemList.add(i);
+                }
+            }
+        }
+
+        // Postings-Listen: aufsteigende Eintragsnummern, jeder Eintrag höchstens einmal pro Trigramm
+        this.postings = new int[trigramCounts.length][];
+        int[] fill = new int[trigramCounts.length];
+        for (int trigram = 0; trigram < trigramCounts.length; trigram++) {
+            postings[trigram] = trigramCounts[trigram] == 0 ? NO_POSTINGS : new int[trigramCounts[trigram]];
+        }
+        for (int i = 0; i < normalized.length; i++) {
+            int item = i;
+            forEachTrigram(normalized[i], trigram -> {
+                int count = fill[trigram];
+                if (count == 0 || postings[trigram][count - 1] != item) {
+                    postings[trigram][fill[trigram]++] = item;
+                }
+            });
+        }
+        for (int trigram = 0; trigram < postings.length; trigram++) {
+            if (fill[trigram] < postings[trigram].length) {
+                postings[trigram] = Arrays.copyOf(postings[trigram], fill[trigram]);
+            }
+        }
+
+        // Wortliste sortieren, damit alle Wörter mit einem Präfix zusammenhängend liegen
+        Integer[] order = new Integer[wordList.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> wordList.get(a).compareTo(wordList.get(b)));
+        this.words = new String[order.length];
+        this.wordItems = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            words[i] = wordList.get(order[i]);
+            wordItems[i] = wordItemList.get(order[i]);
+        }
+    }
+
+    /**
+     * Sucht Einträge zum Suchtext, sortiert nach Relevanz.
+     * Liefern Präfix- und Trigrammsuche nichts, wird wie bisher nach Einträgen gesucht,
+     * die die Zeichen des Suchtexts in derselben Reihenfolge enthalten.
+     * @param searchText Der Suchtext, Groß-/Kleinschreibung und Akzente werden ignoriert.
+     * @param limit Die maximale Anzahl an Treffern.
+     * @return Die Treffer; bei leerem Suchtext alle Einträge.
+     */
+    List<String> search(String searchText, int limit) {
+        String query = normalize(searchText);
+        if (query.isEmpty()) {
+            return items.size() <= limit ? items : items.subList(0, limit);
+        }
+
+        int[] scores = new int[items.size()];
+        int[] wordHits = new int[items.size()];
+        int[] lastToken = new int[items.size()];
+
+        String[] tokens = query.split(" ");
+        for (int t = 0; t < tokens.length; t++) {
+            String token = tokens[t];
+            for (int w = lowerBound(token); w < words.length && words[w].startsWith(token); w++) {
+                int item = wordItems[w];
+                // Jedes Suchwort zählt pro Eintrag nur einmal
+                if (lastToken[item] != t + 1) {
+                    lastToken[item] = t + 1;
+                    wordHits[item]++;
+                    scores[item] += SCORE_WORD_PREFIX;
+                }
+            }
+        }
+
+        int[] trigramHits = new int[items.size()];
+        int[] queryTrigrams = {0};
+        forEachTrigram(query, trigram -> {
+            queryTrigrams[0]++;
+            for (int item : postings[trigram]) {
+                trigramHits[item]++;
+            }
+        });
+
+        long[] ranked = new long[items.size()];
+        int count = 0;
+        for (int i = 0; i < scores.length; i++) {
+            boolean allWords = wordHits[i] == tokens.length;
+            boolean similar = queryTrigrams[0] > 0 && trigramHits[i] * 2 >= queryTrigrams[0];
+            if (!allWords && !similar) {
+                continue;
+            }
+            int score = scores[i] + trigramHits[i] * SCORE_TRIGRAM;
+            if (normalized[i].startsWith(query)) {
+                score += SCORE_NAME_PREFIX;
+            }
+            ranked[count++] = rankKey(score, i);
+        }
+
+        if (count == 0) {
+            for (int i = 0; i < normalized.length; i++) {
+                if (fuzzyMatch(normalized[i], query)) {
+                    ranked[count++] = rankKey(0, i);
+                }
+            }
+        }
+
+        Arrays.sort(ranked, 0, count);
+        List<String> result = new ArrayList<>(Math.min(count, limit));
+        for (int i = 0; i < count && i < limit; i++) {
+            result.add(items.get((int) (ranked[i] & 0xFFFFF)));
+        }
+        return result;
+    }
+
+    int size() {
+        return items.size();
+    }
+
+    /**
+     * Prüft, ob die Zeichen des Suchtexts in derselben Reihenfolge im Text vorkommen.
+     *
+     * @param item Der zu durchsuchende Text.
+     * @param searchText Der Suchtext.
+     * @return true, wenn der Suchtext im Text gefunden wurde, sonst false.
+     */
+    static boolean fuzzyMatch(String item, String searchText) {
+        int searchIndex = 0;
+        for (int i = 0; item.length() > i && searchText.length() > searchIndex; i++) {
+            if (item.charAt(i) == searchText.charAt(searchIndex)) {
+                searchIndex++;
+            }
+        }
+        return searchIndex == searchText.length();
+    }
+
+    /**
+     * Normalisiert einen Text für die Suche: Kleinbuchstaben, Akzente entfernt, ß als ss
+     * und alle anderen Zeichen als einzelnes Leerzeichen zwischen den Wörtern.
+     * @param text Der Text.
+     * @return Der normalisierte Text ohne führende oder abschließende Leerzeichen.
+     */
+    static String normalize(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder result = new StringBuilder(decomposed.length());
+        boolean space = true;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (c == 'ß') {
+                result.append("ss");
+                space = false;
+            } else if (Character.isLetterOrDigit(c)) {
+                result.append(Character.toLowerCase(c));
+                space = false;
+            } else if (!space) {
+                result.append(' ');
+                space = true;
+            }
+        }
+        int length = result.length();
+        if (length > 0 && result.charAt(length - 1) == ' ') {
+            result.setLength(length - 1);
+        }
+        return result.toString();
+    }
+
+    private int lowerBound(String token) {
+        int low = 0;
+        int high = words.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (words[mid].compareTo(token) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Sortierschlüssel: höhere Punktzahl zuerst, dann kürzere Namen, dann die ursprüngliche Reihenfolge.
+     */
+    private long rankKey(int score, int item) {
+        long inverseScore = MAX_SCORE - Math.min(score, MAX_SCORE);
+        long length = Math.min(normalized[item].length(), 0xFFFFF);
+        return inverseScore << 40 | length << 20 | item;
+    }
+
+    /**
+     * Ruft die Aktion für jedes Trigramm des mit Leerzeichen umrahmten Texts auf,
+     * sodass auch Wortanfänge und -enden eigene Trigramme bilden.
+     */
+    private static void forEachTrigram(String text, TrigramConsumer consumer) {
+        if (text.isEmpty()) {
+            return;
+        }
+        int first = 0;
+        int second = code(text.charAt(0));
+        for (int i = 1; i <= text.length(); i++) {
+            int third = i < text.length() ? code(text.charAt(i)) : 0;
+            consumer.accept((first * ALPHABET + second) * ALPHABET + third);
+            first = second;
+            second = third;
+        }
+    }
+
+    private static int code(char c) {
+        if (c == ' ') {
+            return 0;
+        }
+        if (c >= 'a' && c <= 'z') {
+            return 1 + c - 'a';
+        }
+        if (c >= '0' && c <= '9') {
+            return 27 + c - '0';
+        }
+        return ALPHABET - 1;
+    }
+
+    @FunctionalInterface
+    private interface TrigramConsumer {
+        void accept(int trigram);
+    }
+}
@@ -0,0 +1,248 @@
+package fhtw.libreoeffis;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Verteilt Abfahrtsänderungen an die Abonnenten des TCP-Servers.
+ * Abonnierte Haltestellen werden beim {@link HotStopPoller} angeheftet; nach jedem
+ * Durchlauf wird pro Haltestelle einmal mit dem letzten Stand verglichen und nur die
+ * Änderungen an alle Abonnenten dieser Haltestelle geschickt.
+ * <pre>
+ * Rahmen:  #&lt;abo-id&gt; UPD &lt;länge&gt;\n&lt;Zeilen&gt;
+ * Zeile:   +|~|- stopId TAB linie TAB richtung TAB geplant TAB prognose TAB countdown
+ * </pre>
+ * {@code +} ist eine neue Abfahrt, {@code ~} eine geänderte Prognose oder ein neuer
+ * Countdown, {@code -} eine Abfahrt, die nicht mehr angezeigt wird.
+ */
+final class SubscriptionHub {
+
+    /**
+     * Ein Abonnement einer Verbindung.
+     * @param out Die Schreib-Warteschlange der Verbindung.
+     * @param id Die Anfrage-ID, unter der abonniert wurde.
+     * @param stopIds Die abonnierten Stop-IDs.
+     */
+    private record Subscription(TCPCommunication.FrameWriter out, String id, List<String> stopIds) {
+    }
+
+    /**
+     * Der zuletzt verteilte Stand einer Haltestelle und ihre Abonnenten.
+     */
+    private static final class StopState {
+        private Map<String, DepartureRow> departures;
+        private List<Monitor> monitors;
+        private final Set<Subscription> subscribers = new LinkedHashSet<>();
+    }
+
+    private final WienerLinienAPI api;
+    private final HotStopPoller poller;
+    // Geschützt durch synchronized(this)
+    private final Map<String, StopState> stops = new HashMap<>();
+    private final Map<TCPCommunication.FrameWriter, Map<String, Subscription>> byConnection = new HashMap<>();
+
+    /**
+     * @param api Die API, über die der Anfangsstand geladen wird.
+     * @param poller Der Poller, der die abonnierten Haltestellen regelmäßig neu lädt.
+     */
+    SubscriptionHub(WienerLinienAPI api, HotStopPoller poller) {
+        this.api = api;
+        this.poller = poller;
+        poller.addRefreshListener(this::publish);
+    }
+
+    /**
+     * Abonniert Haltestellen für eine Verbindung und reiht den Anfangsstand als OK-Rahmen ein.
+     * Das geschieht unter derselben Sperre wie das Verteilen der Änderungen, sodass der erste
+     * UPD-Rahmen erst nach dem Anfangsstand in der Warteschlange der Verbindung landen kann.
+     * @param out Die Schreib-Warteschlange der Verbindung.
+     * @param id Die Anfrage-ID, unter der später Änderungen geschickt werden.
+     * @param stopIds Die Stop-IDs.
+     * @throws Exception Wenn die ID bereits vergeben ist, der Anfangsstand nicht geladen werden
+     *                   kann oder die Verbindung geschlossen ist.
+     */
+    void subscribe(TCPCommunication.FrameWriter out, String id, List<String> stopIds) throws Exception {
+        // Außerhalb der Sperre laden, damit ein langsamer Abruf andere Verbindungen nicht aufhält
+        Map<String, List<Monitor>> initial = api.getEchtzeitDaten(stopIds);
+
+        Subscription subscription = new Subscription(out, id, List.copyOf(stopIds));
+        StringBuilder snapshot = new StringBuilder();
+        synchronized (this) {
+            Map<String, Subscription> own = byConnection.get(out);
+            if (own != null && own.containsKey(id)) {
+                throw new Exception("Abonnement existiert bereits: " + id);
+            }
+            for (String stopId : subscription.stopIds()) {
+                StopState state = stops.get(stopId);
+                // Alle Abonnenten einer Haltestelle teilen denselben Stand, damit die Änderungen für alle passen
+                List<Monitor> monitors = state != null && state.monitors != null
+                        ? state.monitors
+                        : initial.getOrDefault(stopId, List.of());
+                if (!snapshot.isEmpty()) {
+                    snapshot.append("\n");
+                }
+                snapshot.append(WienerLinienAPI.formatEchtzeitDaten(monitors));
+            }
+            out.send(id, "OK", snapshot.toString());
+
+            // Erst nach dem Anfangsstand für publish sichtbar machen
+            byConnection.computeIfAbsent(out, key -> new HashMap<>()).put(id, subscription);
+            for (String stopId : subscription.stopIds()) {
+                StopState state = stops.computeIfAbsent(stopId, key -> new StopState());
+                if (state.monitors == null) {
+                    state.monitors = initial.getOrDefault(stopId, List.of());
+                    state.departures = index(stopId, state.monitors);
+                }
+                state.subscribers.add(subscription);
+            }
+        }
+        poller.pin(subscription.stopIds());
+    }
+
+    /**
+     * Beendet ein Abonnement.
+     * @param out Die Schreib-Warteschlange der Verbindung.
+     * @param id Die Anfrage-ID des Abonnements.
+     * @return true, wenn das Abonnement existierte.
+     */
+    boolean unsubscribe(TCPCommunication.FrameWriter out, String id) {
+        Subscription subscription;
+        synchronized (this) {
+            Map<String, Subscription> own = byConnection.get(out);
+            subscription = own != null ? own.remove(id) : null;
+            if (subscription == null) {
+                return false;
+            }
+            if (own.isEmpty()) {
+                byConnection.remove(out);
+            }
+            detach(subscription);
+        }
+        poller.unpin(subscription.stopIds());
+        return true;
+    }
+
+    /**
+     * Beendet alle Abonnements einer Verbindung, z. B. wenn sie geschlossen wurde.
+     * @param out Die Schreib-Warteschlange der Verbindung.
+     */
+    void unsubscribeAll(TCPCommunication.FrameWriter out) {
+        Map<String, Subscription> own;
+        synchronized (this) {
+            own = byConnection.remove(out);
+            if (own == null) {
+                return;
+            }
+            own.values().forEach(this::detach);
+        }
+        for (Subscription subscription : own.values()) {
+            poller.unpin(subscription.stopIds());
+        }
+    }
+
+    /**
+     * @param out Die Schreib-Warteschlange der Verbindung.
+     * @return true, wenn die Verbindung mindestens ein Abonnement hat.
+     */
+    synchronized boolean hasSubscriptions(TCPCommunication.FrameWriter out) {
+        return byConnection.containsKey(out);
+    }
+
+    /**
+     * @return Die Anzahl der aktiven Abonnements.
+     */
+    synchronized int size() {
+        return byConnection.values().stream().mapToInt(Map::size).sum();
+    }
+
+    private void detach(Subscription subscription) {
+        for (String stopId : subscription.stopIds()) {
+            StopState state = stops.get(stopId);
+            if (state != null) {
+                state.subscribers.remove(subscription);
+                if (state.subscribers.isEmpty()) {
+                    stops.remove(stopId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Vergleicht die neu geladenen Haltestellen mit dem letzten Stand und reiht für jeden
+     * Abonnenten einen Rahmen mit den Änderungen aller seiner Haltestellen ein. Das Einreihen
+     * blockiert nicht; geschrieben wird vom {@link TCPCommunication.FrameWriter} der Verbindung,
+     * sodass ein langsamer Client den Poller nicht aufhält und die Rahmen in Reihenfolge bleiben.
+     * @param daten Die neu geladenen Monitore pro Stop-ID.
+     */
+    private void publish(Map<String, List<Monitor>> daten) {
+        Map<Subscription, StringBuilder> updates = new LinkedHashMap<>();
+        List<TCPCommunication.FrameWriter> failed = new ArrayList<>();
+        synchronized (this) {
+            for (Map.Entry<String, List<Monitor>> entry : daten.entrySet()) {
+                StopState state = stops.get(entry.getKey());
+                if (state == null) {
+                    continue;
+                }
+                Map<String, DepartureRow> current = index(entry.getKey(), entry.getValue());
+                List<String> delta = diff(state.departures, current);
+                state.monitors = entry.getValue();
+                state.departures = current;
+                if (delta.isEmpty()) {
+                    continue;
+                }
+                // Der Vergleich passiert einmal pro Haltestelle, egal wie viele Abonnenten sie hat
+                for (Subscription subscription : state.subscribers) {
+                    StringBuilder payload = updates.computeIfAbsent(subscription, key -> new StringBuilder());
+                    for (String line : delta) {
+                        payload.append(line).append('\n');
+                    }
+                }
+            }
+
+            // Unter der Sperre einreihen, damit ein späterer Durchlauf nicht vor diesem landet
+            for (Map.Entry<Subscription, StringBuilder> update : updates.entrySet()) {
+                Subscription subscription = update.getKey();
+                try {
+                    subscription.out().send(subscription.id(), "UPD", update.getValue().toString());
+                } catch (IOException e) {
+                    failed.add(subscription.out());
+                }
+            }
+        }
+        failed.forEach(this::unsubscribeAll);
+    }
+
+    /**
+     * Ordnet die Abfahrten einer Haltestelle ihrem Schlüssel aus Steig, Linie, Richtung
+     * und geplanter Abfahrtszeit zu, über den zwei Stände verglichen werden.
+     */
+    private static Map<String, DepartureRow> index(String stopId, List<Monitor> monitors) {
+        return DepartureDelta.index(DepartureRow.fromMonitors(stopId, monitors, System.currentTimeMillis()));
+    }
+
+    /**
+     * Berechnet die Änderungszeilen zwischen zwei Ständen einer Haltestelle.
+     * @param previous Der zuletzt verteilte Stand.
+     * @param current Der neue Stand.
+     * @return Die Änderungszeilen, leer wenn sich nichts geändert hat.
+     */
+    static List<String> diff(Map<String, DepartureRow> previous, Map<String, DepartureRow> current) {
+        DepartureDelta delta = DepartureDelta.between(previous, current);
+        List<String> lines = new ArrayList<>();
+        delta.added().forEach(row -> lines.add(formatDelta('+', row)));
+        delta.changed().forEach(row -> lines.add(formatDelta('~', row)));
+        delta.removed().forEach(row -> lines.add(formatDelta('-', row)));
+        return lines;
+    }
+
+    private static String formatDelta(char operation, DepartureRow row) {
+        return operation + " " + row.key() + "\t" + (row.timeReal() != null ? row.timeReal() : "-")
+                + "\t" + row.countdown();
+    }
+}
@@ -0,0 +1,299 @@
+package fhtw.libreoeffis;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Wiederverwendbarer Client für das gerahmte Protokoll von {@link TCPCommunication}.
+ * Hält eine dauerhafte Verbindung offen, über die mehrere Anfragen gleichzeitig
+ * gesendet werden können. Antworten werden über die Anfrage-ID zugeordnet.
+ * Bricht die Verbindung ab, wird bei der nächsten Anfrage neu verbunden; Abonnements
+ * der alten Verbindung enden dabei und müssen neu angelegt werden.
+ */
+public class TCPClient implements EchtzeitTransport, AutoCloseable {
+
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(15);
+    private static final int CONNECT_TIMEOUT_MILLIS = 3000;
+
+    private static TCPClient shared;
+
+    private final String host;
+    private final int port;
+    private final Duration timeout;
+    private final AtomicLong nextRequestId = new AtomicLong();
+    private Connection connection;
+    private boolean closed;
+
+    /**
+     * Fehlerantwort des Servers (Status ERR), deren Text an den Benutzer weitergegeben werden kann.
+     */
+    public static class ServerException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public ServerException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Eine offene Verbindung mit den darauf noch ausstehenden Anfragen.
+     */
+    private static final class Connection {
+        private final Socket socket;
+        private final OutputStream out;
+        private final Map<String, CompletableFuture<String>> pending = new ConcurrentHashMap<>();
+        private final Map<String, Consumer<String>> subscriptions = new ConcurrentHashMap<>();
+
+        private Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = new BufferedOutputStream(socket.getOutputStream());
+        }
+    }
+
+    public TCPClient(String host, int port) {
+        this(host, port, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * @param host Der Host des Servers.
+     * @param port Der Port des Servers.
+     * @param timeout Wie lange höchstens auf eine Antwort gewartet wird.
+     */
+    public TCPClient(String host, int port, Duration timeout) {
+        this.host = host;
+        this.port = port;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Gibt den gemeinsamen Client für den lokalen Server zurück.
+     * @return Der gemeinsame Client.
+     */
+    public static synchronized TCPClient shared() {
+        if (shared == null) {
+            shared = new TCPClient("localhost", TCPCommunication.SERVER_PORT);
+        }
+        return shared;
+    }
+
+    /**
+     * Ein Abonnement von Abfahrtsänderungen, siehe {@link #subscribe(String, Consumer)}.
+     */
+    public final class Subscription implements AutoCloseable {
+        private final String id;
+        private final Connection connection;
+        private final CompletableFuture<String> snapshot;
+
+        private Subscription(String id, Connection connection, CompletableFuture<String> snapshot) {
+            this.id = id;
+            this.connection = connection;
+            this.snapshot = snapshot;
+        }
+
+        /**
+         * @return Die ID, unter der der Server Änderungen schickt.
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @return Die Future mit dem Anfangsstand als formatierte Echtzeitdaten.
+         */
+        public CompletableFuture<String> getSnapshot() {
+            return snapshot;
+        }
+
+        /**
+         * Beendet das Abonnement, ohne auf die Bestätigung des Servers zu warten.
+         */
+        @Override
+        public void close() {
+            if (connection != null && connection.subscriptions.remove(id) != null) {
+                send(connection, "UNSUB", id);
+            }
+        }
+    }
+
+    /**
+     * Sendet eine Anfrage, ohne auf die Antwort zu warten.
+     * @param stopIds Eine oder mehrere Stop-IDs, getrennt durch Komma.
+     * @return Die Future mit den formatierten Echtzeitdaten; bei einer Fehlerantwort
+     *         wird sie mit einer {@link ServerException} abgeschlossen.
+     */
+    @Override
+    public CompletableFuture<String> requestAsync(String stopIds) {
+        Connection current;
+        try {
+            current = connect();
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return send(current, "GET", stopIds);
+    }
+
+    /**
+     * Abonniert Abfahrtsänderungen für Haltestellen. Der Server schickt danach bei jeder
+     * Aktualisierung nur die geänderten Abfahrten, eine Zeile pro Änderung
+     * (Format siehe {@link SubscriptionHub}).
+     * @param stopIds Eine oder mehrere Stop-IDs, getrennt durch Komma, oder ein Haltestellenname.
+     * @param listener Erhält die Änderungen, im Lese-Thread der Verbindung.
+     * @return Das Abonnement; schlägt die Anmeldung fehl, wird der Anfangsstand
+     *         mit einem Fehler abgeschlossen.
+     */
+    public Subscription subscribe(String stopIds, Consumer<String> listener) {
+        Connection current;
+        try {
+            current = connect();
+        } catch (IOException e) {
+            return new Subscription(null, null, CompletableFuture.failedFuture(e));
+        }
+        String requestId = Long.toString(nextRequestId.incrementAndGet());
+        // Vor dem Senden registrieren, damit keine frühe Änderung verloren geht
+        current.subscriptions.put(requestId, listener);
+        CompletableFuture<String> snapshot = send(current, requestId, "SUB", stopIds)
+                .whenComplete((response, error) -> {
+                    if (error != null) {
+                        current.subscriptions.remove(requestId);
+                    }
+                });
+        return new Subscription(requestId, current, snapshot);
+    }
+
+    private CompletableFuture<String> send(Connection current, String command, String arguments) {
+        return send(current, Long.toString(nextRequestId.incrementAndGet()), command, arguments);
+    }
+
+    private CompletableFuture<String> send(Connection current, String requestId, String command, String arguments) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        String line = "#" + requestId + " " + command + " " + arguments.replaceAll("[\\r\\n]+", " ") + "\n";
+        current.pending.put(requestId, future);
+        try {
+            synchronized (current.out) {
+                current.out.write(line.getBytes(StandardCharsets.UTF_8));
+                current.out.flush();
+            }
+        } catch (IOException e) {
+            current.pending.remove(requestId);
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        return future
+                .orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((response, error) -> current.pending.remove(requestId));
+    }
+
+    /**
+     * Sendet eine Anfrage und wartet auf die Antwort.
+     * @param stopIds Eine oder mehrere Stop-IDs, getrennt durch Komma.
+     * @return Die formatierten Echtzeitdaten.
+     * @throws Exception Wenn die Verbindung fehlschlägt, der Server einen Fehler meldet
+     *                   oder die Antwort nicht rechtzeitig eintrifft.
+     */
+    @Override
+    public String request(String stopIds) throws Exception {
+        return HttpTransport.await(requestAsync(stopIds));
+    }
+
+    private synchronized Connection connect() throws IOException {
+        if (closed) {
+            throw new IOException("Client wurde geschlossen.");
+        }
+        if (connection != null && !connection.socket.isClosed()) {
+            return connection;
+        }
+
+        Socket socket = new Socket();
+        socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+        socket.setTcpNoDelay(true);
+        Connection created = new Connection(socket);
+        connection = created;
+        Thread.ofVirtual().name("tcp-client-reader").start(() -> readLoop(created));
+        return created;
+    }
+
+    /**
+     * Liest Antwort-Rahmen und schließt die passenden Futures ab, bis die Verbindung endet.
+     */
+    private void readLoop(Connection current) {
+        IOException failure = new EOFException("Verbindung zum Server wurde geschlossen.");
+        try {
+            TCPCommunication.LineReader in = new TCPCommunication.LineReader(new BufferedInputStream(current.socket.getInputStream()));
+            String header;
+            while ((header = in.readLine()) != null) {
+                String[] parts = header.substring(header.startsWith("#") ? 1 : 0).split(" ");
+                if (parts.length != 3) {
+                    throw new IOException("Ungültiger Antwort-Rahmen: " + header);
+                }
+                String payload = new String(in.readBytes(Integer.parseInt(parts[2])), StandardCharsets.UTF_8);
+
+                if (parts[1].equals("UPD")) {
+                    Consumer<String> listener = current.subscriptions.get(parts[0]);
+                    if (listener != null) {
+                        listener.accept(payload);
+                    }
+                    continue;
+                }
+                CompletableFuture<String> future = current.pending.remove(parts[0]);
+                if (future == null) {
+                    continue;
+                }
+                if (parts[1].equals("OK")) {
+                    future.complete(payload);
+                } else {
+                    future.completeExceptionally(new ServerException(payload));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            failure = e instanceof IOException io ? io : new IOException(e.getMessage(), e);
+        }
+
+        synchronized (this) {
+            if (connection == current) {
+                connection = null;
+            }
+        }
+        closeQuietly(current);
+        for (CompletableFuture<String> future : current.pending.values()) {
+            future.completeExceptionally(failure);
+        }
+    }
+
+    /**
+     * Schließt die Verbindung; ausstehende Anfragen schlagen fehl.
+     */
+    @Override
+    public void close() {
+        Connection current;
+        synchronized (this) {
+            closed = true;
+            current = connection;
+            connection = null;
+        }
+        if (current != null) {
+            closeQuietly(current);
+        }
+    }
+
+    private static void closeQuietly(Connection current) {
+        try {
+            current.socket.close();
+        } catch (IOException ignored) {
+            // Verbindung ist bereits geschlossen
+        }
+    }
+}
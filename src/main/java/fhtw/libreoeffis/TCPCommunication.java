@@ -2,76 +2,628 @@ package fhtw.libreoeffis;
 
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Klasse für TCP-Kommunikation mit Bezug zur Wiener Linien API.
  * Der Server verarbeitet Anfragen nach Echtzeitdaten und antwortet mit den Ergebnissen.
+ * Jede Verbindung läuft in einem eigenen virtuellen Thread, sodass eine langsame
+ * Upstream-Anfrage andere Clients nicht blockiert.
+ *
+ * <p>Protokoll: Beginnt die erste Zeile einer Verbindung mit {@code #}, bleibt die
+ * Verbindung offen und es können beliebig viele Anfragen hintereinander gesendet werden:
+ * <pre>
+ * Anfrage:  #&lt;id&gt; GET &lt;stopId&gt;[,&lt;stopId&gt;...]\n
+ * Antwort:  #&lt;id&gt; OK|ERR &lt;länge&gt;\n&lt;länge Bytes UTF-8&gt;
+ * </pre>
+ * Antworten können in anderer Reihenfolge als die Anfragen eintreffen und werden
+ * über die ID zugeordnet.
+ *
+ * <p>Mit {@code #<id> SUB <stopId>[,<stopId>...]} wird ein Abonnement angelegt: Die Antwort
+ * enthält den aktuellen Stand, danach schickt der Server unter derselben ID Rahmen mit
+ * Status {@code UPD}, sobald der {@link HotStopPoller} geänderte Abfahrten lädt (Format siehe
+ * {@link SubscriptionHub}). {@code #<id> UNSUB <abo-id>} beendet das Abonnement wieder.
+ * Ein Abruf bei der API wird dabei an alle Abonnenten derselben Haltestelle verteilt.
+ *
+ * <p>Jede andere erste Zeile wird wie bisher als einzelne
+ * Stop-ID-Anfrage beantwortet, danach wird die Verbindung geschlossen.
  */
 public class TCPCommunication {
 
-    private static final int SERVER_PORT = 12345;
-    private static WienerLinienAPI api;
+    static final int SERVER_PORT = 12345;
+    // Maximale Anzahl gleichzeitig bearbeiteter Anfragen pro Verbindung
+    private static final int MAX_PIPELINED_REQUESTS = 64;
+    private static final int MAX_LINE_LENGTH = 8192;
+    private static final Set<String> KNOWN_COMMANDS = Set.of("GET", "SUB", "UNSUB");
+    private static TCPCommunication server;
 
-    static {
+    private static final Metrics.Timer REQUEST_DURATION = Metrics.shared().timer("libreoeffis_tcp_request_duration_seconds",
+            "Dauer der Anfragen an den TCP-Server bis zur geschriebenen Antwort");
+
+    /**
+     * Konfiguration des TCP-Servers.
+     * @param port Der Port, auf dem der Server lauscht.
+     * @param backlog Die Länge der Warteschlange für noch nicht angenommene Verbindungen.
+     * @param idleTimeout Wie lange auf eine Anfrage gewartet wird, bevor die Verbindung geschlossen wird.
+     * @param maxConnections Die maximale Anzahl gleichzeitig bedienter Verbindungen.
+     * @param shutdownTimeout Wie lange beim Herunterfahren auf laufende Anfragen gewartet wird.
+     */
+    public record ServerConfig(int port, int backlog, Duration idleTimeout, int maxConnections, Duration shutdownTimeout) {
+        public static ServerConfig defaults() {
+            return new ServerConfig(SERVER_PORT, 200, Duration.ofSeconds(30), 1000, Duration.ofSeconds(5));
+        }
+    }
+
+    private final WienerLinienAPI serverApi;
+    private final ServerConfig config;
+    private final InProcessTransport localTransport = new InProcessTransport(this);
+    private HotStopPoller poller;
+    private boolean ownsPoller;
+    private SubscriptionHub subscriptions;
+    private final Semaphore connectionPermits;
+    private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+    private final ExecutorService connectionExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("tcp-client-", 0).factory());
+    private ServerSocket serverSocket;
+    private volatile boolean running;
+
+    /**
+     * Erstellt einen TCP-Server, der noch nicht gestartet ist.
+     * @param api Die API, über die Echtzeitdaten abgefragt werden.
+     * @param config Die Konfiguration des Servers.
+     */
+    public TCPCommunication(WienerLinienAPI api, ServerConfig config) {
+        this(api, config, null);
+    }
+
+    /**
+     * Erstellt einen TCP-Server, dessen Abonnements über einen vorhandenen Poller aktualisiert werden.
+     * @param api Die API, über die Echtzeitdaten abgefragt werden.
+     * @param config Die Konfiguration des Servers.
+     * @param poller Der Poller, der die abonnierten Haltestellen lädt, oder null,
+     *               damit der Server beim Start einen eigenen startet.
+     */
+    public TCPCommunication(WienerLinienAPI api, ServerConfig config, HotStopPoller poller) {
+        this.serverApi = api;
+        this.config = config;
+        this.poller = poller;
+        this.connectionPermits = new Semaphore(config.maxConnections());
+    }
+
+    /**
+     * Bindet den Server-Socket und beginnt, Verbindungen anzunehmen.
+     * @throws IOException Wenn der Port nicht gebunden werden kann.
+     */
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        serverSocket = new ServerSocket(config.port(), config.backlog());
+        if (poller == null) {
+            poller = new HotStopPoller(serverApi);
+            ownsPoller = true;
+            poller.start();
+        }
+        subscriptions = new SubscriptionHub(serverApi, poller);
+        registerMetrics();
+        running = true;
+        Thread.ofPlatform().name("tcp-accept").daemon(true).start(this::acceptLoop);
+        System.out.println("TCP-Server gestartet auf Port " + serverSocket.getLocalPort() + ". Wartet auf Anfragen...");
+    }
+
+    /**
+     * Registriert die Gauges dieses Servers; ein später gestarteter Server ersetzt sie.
+     */
+    private void registerMetrics() {
+        Metrics metrics = Metrics.shared();
+        SubscriptionHub hub = subscriptions;
+        metrics.gauge("libreoeffis_tcp_active_connections", "Offene Client-Verbindungen", this::getActiveConnections);
+        metrics.gauge("libreoeffis_tcp_subscriptions", "Offene Abonnements", hub::size);
+        for (double quantile : new double[] {0.5, 0.99}) {
+            metrics.gauge("libreoeffis_tcp_request_latency_quantile_seconds",
+                    "Aus dem Histogramm geschätzte Quantile der Anfragedauer seit dem Start",
+                    () -> REQUEST_DURATION.quantile(quantile), "quantile", String.valueOf(quantile));
+        }
+    }
+
+    /**
+     * Verbucht eine beantwortete Anfrage.
+     * @param command Der Befehl; unbekannte Befehle werden zusammengefasst, damit die Labels begrenzt bleiben.
+     * @param status Der Status der Antwort.
+     * @param startedAt Der Empfangszeitpunkt aus {@link System#nanoTime()}.
+     */
+    private static void recordRequest(String command, String status, long startedAt) {
+        REQUEST_DURATION.recordSince(startedAt);
+        Metrics.shared().counter("libreoeffis_tcp_requests_total", "Beantwortete Anfragen an den TCP-Server",
+                "command", command, "status", status).increment();
+    }
+
+    /**
+     * Fährt den Server geordnet herunter: Es werden keine neuen Verbindungen mehr angenommen,
+     * laufende Anfragen dürfen bis zum Shutdown-Timeout fertig werden, danach werden
+     * verbleibende Verbindungen geschlossen.
+     */
+    public synchronized void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            System.err.println("Fehler beim Schließen des Server-Sockets: " + e.getMessage());
+        }
+
+        connectionExecutor.shutdown();
+        try {
+            if (!connectionExecutor.awaitTermination(config.shutdownTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                for (Socket socket : openSockets) {
+                    closeQuietly(socket);
+                }
+                connectionExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            connectionExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        if (ownsPoller) {
+            poller.stop();
+        }
+        System.out.println("TCP-Server beendet.");
+    }
+
+    /**
+     * @return Der tatsächlich gebundene Port, z. B. wenn Port 0 konfiguriert wurde.
+     */
+    public int getPort() {
+        return serverSocket != null ? serverSocket.getLocalPort() : config.port();
+    }
+
+    /**
+     * @return Der direkte Weg zu diesem Server für Aufrufer in derselben JVM.
+     */
+    public EchtzeitTransport getLocalTransport() {
+        return localTransport;
+    }
+
+    /**
+     * @return Die Anzahl der aktuell offenen Client-Verbindungen.
+     */
+    public int getActiveConnections() {
+        return openSockets.size();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            Socket clientSocket;
+            try {
+                clientSocket = serverSocket.accept();
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Fehler beim Annehmen einer Verbindung: " + e.getMessage());
+                }
+                continue;
+            }
+
+            if (!connectionPermits.tryAcquire()) {
+                Metrics.shared().counter("libreoeffis_tcp_rejected_connections_total",
+                        "Wegen Überlastung abgewiesene Verbindungen").increment();
+                rejectBusy(clientSocket);
+                continue;
+            }
+            openSockets.add(clientSocket);
+            try {
+                connectionExecutor.execute(() -> {
+                    try {
+                        handleClient(clientSocket);
+                    } finally {
+                        openSockets.remove(clientSocket);
+                        connectionPermits.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                // Executor wurde während des Herunterfahrens beendet
+                openSockets.remove(clientSocket);
+                connectionPermits.release();
+                closeQuietly(clientSocket);
+            }
+        }
+    }
+
+    private void handleClient(Socket clientSocket) {
+        try (Socket socket = clientSocket) {
+            socket.setSoTimeout((int) config.idleTimeout().toMillis());
+            LineReader in = new LineReader(new BufferedInputStream(socket.getInputStream()));
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+
+            String firstLine = in.readLine();
+            if (firstLine != null && firstLine.startsWith("#")) {
+                try (FrameWriter writer = new FrameWriter(out)) {
+                    handleFramed(firstLine, in, writer);
+                }
+            } else {
+                System.out.println("Anfrage erhalten: Stop-ID " + firstLine);
+                long startedAt = System.nanoTime();
+                String response;
+                String status = "OK";
+                try {
+                    response = answer(firstLine);
+                } catch (Exception e) {
+                    response = "Fehler beim Abrufen der Echtzeitdaten: " + e.getMessage();
+                    status = "ERR";
+                }
+                out.write((response + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                recordRequest("LEGACY", status, startedAt);
+            }
+        } catch (SocketTimeoutException e) {
+            System.err.println("Verbindung wegen Inaktivität geschlossen: " + clientSocket.getRemoteSocketAddress());
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("Fehler bei der Verarbeitung eines Clients: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Bearbeitet eine dauerhafte Verbindung mit gerahmten Anfragen. Jede Anfrage läuft
+     * in einem eigenen virtuellen Thread; die Antworten werden in die Warteschlange des
+     * {@link FrameWriter} gestellt, sobald sie fertig sind.
+     */
+    private void handleFramed(String firstLine, LineReader in, FrameWriter out) throws IOException {
+        Semaphore pipelinePermits = new Semaphore(MAX_PIPELINED_REQUESTS);
+        String line = firstLine;
+        try {
+            while (line != null && running) {
+                if (!line.isBlank()) {
+                    dispatchFramed(line, out, pipelinePermits);
+                }
+                try {
+                    line = in.readLine();
+                } catch (SocketTimeoutException e) {
+                    // Inaktiv ist die Verbindung nur, wenn weder Anfragen noch Abonnements offen sind
+                    if (pipelinePermits.availablePermits() < MAX_PIPELINED_REQUESTS || subscriptions.hasSubscriptions(out)) {
+                        continue;
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            // Offene Antworten noch zustellen, bevor die Verbindung geschlossen wird
+            pipelinePermits.acquireUninterruptibly(MAX_PIPELINED_REQUESTS);
+            subscriptions.unsubscribeAll(out);
+        }
+    }
+
+    private void dispatchFramed(String line, FrameWriter out, Semaphore pipelinePermits) throws IOException {
+        long startedAt = System.nanoTime();
+        String[] parts = line.substring(1).trim().split("\\s+", 3);
+        String requestId = parts[0];
+        if (requestId.isEmpty() || parts.length < 2) {
+            out.send(requestId, "ERR", "Ungültige Anfrage: " + line);
+            recordRequest("INVALID", "ERR", startedAt);
+            return;
+        }
+        String command = parts[1].toUpperCase();
+        String arguments = parts.length > 2 ? parts[2] : "";
+
+        pipelinePermits.acquireUninterruptibly();
+        Thread.ofVirtual().name("tcp-request-" + requestId).start(() -> {
+            String status = "OK";
+            try {
+                if (command.equals("GET")) {
+                    out.send(requestId, "OK", answer(arguments));
+                } else if (command.equals("SUB")) {
+                    // Der Hub stellt den Anfangsstand selbst in die Warteschlange, vor dem ersten UPD
+                    subscriptions.subscribe(out, requestId, resolve(arguments));
+                } else if (command.equals("UNSUB")) {
+                    if (subscriptions.unsubscribe(out, arguments.trim())) {
+                        out.send(requestId, "OK", "Abonnement beendet: " + arguments.trim());
+                    } else {
+                        status = "ERR";
+                        out.send(requestId, "ERR", "Unbekanntes Abonnement: " + arguments.trim());
+                    }
+                } else {
+                    status = "ERR";
+                    out.send(requestId, "ERR", "Unbekannter Befehl: " + command);
+                }
+            } catch (Exception e) {
+                status = "ERR";
+                try {
+                    out.send(requestId, "ERR", "Fehler beim Abrufen der Echtzeitdaten: " + e.getMessage());
+                } catch (IOException writeError) {
+                    System.err.println("Fehler beim Senden einer Antwort: " + writeError.getMessage());
+                }
+            } finally {
+                pipelinePermits.release();
+                recordRequest(KNOWN_COMMANDS.contains(command) ? command : "OTHER", status, startedAt);
+            }
+        });
+    }
+
+    /**
+     * Beantwortet eine Anfrage mit den formatierten Echtzeitdaten.
+     * Statt Stop-IDs kann auch ein Haltestellenname angegeben werden, der über das
+     * {@link StopRegistry} in die Stop-IDs aller Steige übersetzt wird.
+     * @param request Eine oder mehrere Stop-IDs, getrennt durch Komma oder Leerzeichen, oder ein Haltestellenname.
+     * @return Die formatierten Echtzeitdaten.
+     * @throws Exception Wenn keine Stop-ID angegeben ist, der Name unbekannt ist oder der Abruf fehlschlägt.
+     */
+    private String answer(String request) throws Exception {
+        return serverApi.getFormattedEchtzeitDaten(resolve(request));
+    }
+
+    /**
+     * Beantwortet eine Anfrage wie eine GET-Anfrage über das gerahmte Protokoll, aber ohne Socket.
+     * @param request Eine oder mehrere Stop-IDs oder ein Haltestellenname.
+     * @return Die formatierten Echtzeitdaten.
+     * @throws TCPClient.ServerException Mit derselben Meldung, die ein ERR-Rahmen enthalten würde.
+     */
+    String answerInProcess(String request) throws TCPClient.ServerException {
         try {
-            api = new WienerLinienAPI();
+            return answer(request);
         } catch (Exception e) {
-            System.err.println("Fehler beim Initialisieren der WienerLinienAPI: " + e.getMessage());
+            throw new TCPClient.ServerException("Fehler beim Abrufen der Echtzeitdaten: " + e.getMessage());
         }
     }
 
     /**
-     * Startet einen TCP-Server, der Stop-IDs akzeptiert und Echtzeitdaten zurückgibt.
+     * Übersetzt eine Anfrage in Stop-IDs, Haltestellennamen über das {@link StopRegistry}.
+     * @param request Eine oder mehrere Stop-IDs oder ein Haltestellenname.
+     * @return Die Stop-IDs, nie leer.
+     * @throws Exception Wenn keine Stop-ID angegeben ist oder der Name unbekannt ist.
      */
-    public static void startTCPServer() {
-        new Thread(() -> {
-            try (ServerSocket serverSocket = new ServerSocket(SERVER_PORT)) {
-                System.out.println("TCP-Server gestartet. Wartet auf Anfragen...");
+    private List<String> resolve(String request) throws Exception {
+        List<String> stopIds = parseStopIds(request);
+        if (stopIds.isEmpty()) {
+            throw new Exception("Keine Stop-ID angegeben.");
+        }
+        if (!StopRegistry.isStopIdList(request)) {
+            stopIds = StopRegistry.shared().resolve(request);
+            if (stopIds.isEmpty()) {
+                throw new Exception("Unbekannte Haltestelle: " + request.trim());
+            }
+        }
+        return stopIds;
+    }
+
+    /**
+     * Schreibt die Rahmen einer Verbindung in genau der Reihenfolge, in der sie eingereiht
+     * wurden. Antworten und UPD-Rahmen landen in einer Warteschlange, die ein einziger
+     * virtueller Thread abarbeitet; geflusht wird erst, wenn die Warteschlange leer ist.
+     * Kommt ein Client mit dem Lesen nicht nach oder schlägt das Schreiben fehl, wird der
+     * Ausgabestrom geschlossen, sodass die Verbindung abgebaut wird.
+     */
+    static final class FrameWriter implements AutoCloseable {
+        private static final int MAX_QUEUED_FRAMES = 1024;
+        private static final byte[] END = new byte[0];
+
+        private final OutputStream out;
+        private final BlockingQueue<byte[]> queue = new LinkedBlockingQueue<>(MAX_QUEUED_FRAMES);
+        private final Thread drainer;
+        private volatile boolean closed;
+
+        FrameWriter(OutputStream out) {
+            this.out = out;
+            this.drainer = Thread.ofVirtual().name("tcp-writer").start(this::drain);
+        }
+
+        /**
+         * Reiht einen Rahmen ein, ohne auf das Schreiben zu warten.
+         * @param requestId Die ID der Anfrage bzw. des Abonnements.
+         * @param status "OK", "ERR" oder "UPD".
+         * @param payload Der Inhalt des Rahmens.
+         * @throws IOException Wenn die Verbindung geschlossen ist oder der Client zu langsam liest.
+         */
+        void send(String requestId, String status, String payload) throws IOException {
+            byte[] body = payload.getBytes(StandardCharsets.UTF_8);
+            byte[] header = ("#" + requestId + " " + status + " " + body.length + "\n").getBytes(StandardCharsets.UTF_8);
+            byte[] frame = Arrays.copyOf(header, header.length + body.length);
+            System.arraycopy(body, 0, frame, header.length, body.length);
+            if (closed) {
+                throw new IOException("Verbindung ist geschlossen.");
+            }
+            if (!queue.offer(frame)) {
+                fail();
+                throw new IOException("Client liest zu langsam, Verbindung wird geschlossen.");
+            }
+        }
 
+        private void drain() {
+            try {
                 while (true) {
-                    try (Socket clientSocket = serverSocket.accept();
-                         BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                         PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true)) {
-
-                        String stopId = in.readLine();
-                        System.out.println("Anfrage erhalten: Stop-ID " + stopId);
-
-                        String response;
-                        try {
-                            response = api.getFormattedEchtzeitDaten(stopId);
-                        } catch (Exception e) {
-                            response = "Fehler beim Abrufen der Echtzeitdaten: " + e.getMessage();
-                        }
-
-                        out.println(response);
-                    } catch (IOException e) {
-                        System.err.println("Fehler bei der Verarbeitung eines Clients: " + e.getMessage());
+                    byte[] frame = queue.take();
+                    if (frame == END) {
+                        out.flush();
+                        return;
+                    }
+                    out.write(frame);
+                    if (queue.isEmpty()) {
+                        out.flush();
                     }
                 }
             } catch (IOException e) {
-                System.err.println("Fehler beim Starten des TCP-Servers: " + e.getMessage());
+                fail();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-        }).start();
+        }
+
+        private void fail() {
+            closed = true;
+            queue.clear();
+            try {
+                out.close();
+            } catch (IOException ignored) {
+                // Verbindung ist bereits geschlossen
+            }
+        }
+
+        /**
+         * Schreibt die noch eingereihten Rahmen und beendet den Schreib-Thread.
+         */
+        @Override
+        public void close() {
+            closed = true;
+            try {
+                while (drainer.isAlive() && !queue.offer(END, 100, TimeUnit.MILLISECONDS)) {
+                    // Der Schreib-Thread arbeitet eine volle Warteschlange noch ab
+                }
+                drainer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Liest Zeilen byteweise aus einem Stream, ohne bei einem Timeout bereits gelesene
+     * Zeichen zu verlieren, und erlaubt anschließend das Lesen roher Bytes.
+     */
+    static final class LineReader {
+        private final InputStream in;
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+        LineReader(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * @return Die nächste Zeile ohne Zeilenende oder null am Ende des Streams.
+         * @throws IOException Wenn nicht gelesen werden kann oder die Zeile zu lang ist.
+         */
+        String readLine() throws IOException {
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b == '\n') {
+                    return takeLine();
+                }
+                if (pending.size() >= MAX_LINE_LENGTH) {
+                    throw new IOException("Zeile zu lang.");
+                }
+                pending.write(b);
+            }
+            return pending.size() > 0 ? takeLine() : null;
+        }
+
+        byte[] readBytes(int length) throws IOException {
+            byte[] bytes = in.readNBytes(length);
+            if (bytes.length < length) {
+                throw new EOFException("Verbindung während einer Antwort geschlossen.");
+            }
+            return bytes;
+        }
+
+        private String takeLine() {
+            String line = pending.toString(StandardCharsets.UTF_8);
+            pending.reset();
+            return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+        }
+    }
+
+    private static void rejectBusy(Socket socket) {
+        try (Socket rejected = socket;
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(rejected.getOutputStream(), StandardCharsets.UTF_8), true)) {
+            out.println("Fehler: Server ausgelastet, bitte später erneut versuchen.");
+        } catch (IOException e) {
+            System.err.println("Fehler beim Abweisen eines Clients: " + e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // Verbindung ist bereits geschlossen
+        }
+    }
+
+    /**
+     * Startet einen TCP-Server, der Stop-IDs akzeptiert und Echtzeitdaten zurückgibt.
+     * Mehrere Stop-IDs können durch Komma oder Leerzeichen getrennt in einer Zeile
+     * gesendet werden und werden dann gemeinsam abgefragt.
+     */
+    public static synchronized void startTCPServer() {
+        AppContext context = AppContext.shared();
+        context.start();
+        startTCPServer(context);
+    }
+
+    /**
+     * Startet den TCP-Server mit den Diensten eines Anwendungskontexts, sodass sich Server und
+     * Benutzeroberfläche Cache, Anfragebudget und Poller teilen. Die Hintergrunddienste
+     * des Kontexts startet der Aufrufer.
+     * @param context Der Anwendungskontext.
+     */
+    public static synchronized void startTCPServer(AppContext context) {
+        if (server != null) {
+            return;
+        }
+        TCPCommunication created = new TCPCommunication(context.getWienerLinienAPI(), ServerConfig.defaults(), context.getHotStopPoller());
+        try {
+            created.start();
+            server = created;
+        } catch (IOException e) {
+            System.err.println("Fehler beim Starten des TCP-Servers: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Fährt den mit {@link #startTCPServer()} gestarteten Server geordnet herunter.
+     */
+    public static synchronized void stopTCPServer() {
+        if (server != null) {
+            server.shutdown();
+            server = null;
+        }
+    }
+
+    /**
+     * Zerlegt eine Anfragezeile in die enthaltenen Stop-IDs.
+     * @param request Die Anfragezeile, z. B. "4613" oder "4613,400".
+     * @return Die Liste der Stop-IDs.
+     */
+    private static List<String> parseStopIds(String request) {
+        if (request == null) {
+            return List.of();
+        }
+        return Arrays.stream(request.trim().split("[,\\s]+"))
+                .filter(id -> !id.isEmpty())
+                .toList();
+    }
+
+    /**
+     * Gibt den Weg zum Server zurück: Läuft er in dieser JVM, wird er direkt aufgerufen,
+     * sonst über die gemeinsame, dauerhafte Verbindung von {@link TCPClient}.
+     * @return Der passende Transport.
+     */
+    public static synchronized EchtzeitTransport transport() {
+        return server != null ? server.getLocalTransport() : TCPClient.shared();
     }
 
     /**
      * Sendet eine Stop-ID an den TCP-Server und gibt die Antwort zurück.
+     * Läuft der Server in derselben JVM, wird er ohne Socket direkt aufgerufen (siehe {@link #transport()}).
      * @param stopId Die Stop-ID, die gesendet werden soll.
      * @return Die Antwort vom Server (Echtzeitdaten oder Fehlermeldung).
      */
     public static String sendTCPMessage(String stopId) {
-        try (Socket socket = new Socket("localhost", SERVER_PORT);
-             PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
-
-            out.println(stopId);
-            StringBuilder response = new StringBuilder();
-            String line;
-            while ((line = in.readLine()) != null) {
-                response.append(line).append("\n");
-            }
-            return response.toString().trim();
-        } catch (IOException e) {
+        try {
+            return transport().request(stopId);
+        } catch (TCPClient.ServerException e) {
+            return e.getMessage();
+        } catch (Exception e) {
             return "Fehler beim Senden der Nachricht: " + e.getMessage();
         }
     }
@@ -88,10 +640,13 @@ public class TCPCommunication {
         new Thread(() -> {
             try {
                 Thread.sleep(2000);
-                String response = sendTCPMessage("4613"); // Beispiel-Stop-ID
+                // Bewusst über den Socket, sendTCPMessage würde den Server direkt aufrufen
+                String response = TCPClient.shared().request("4613"); // Beispiel-Stop-ID
                 System.out.println("Antwort vom Server: " + response);
-            } catch (InterruptedException e) {
+            } catch (Exception e) {
                 System.err.println("Fehler: " + e.getMessage());
+            } finally {
+                stopTCPServer();
             }
         }).start();
     }
@@ -1,7 +1,5 @@
 package fhtw.libreoeffis;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
 import java.util.ArrayList;
 import java.util.List;
 import javafx.application.Platform;
@@ -64,20 +62,11 @@ class AlternativeTransportmittel extends Transportmittel {
 }
 
 class TransportmittelHelper {
-    public static List<Transportmittel> parseTransportmittel(JSONObject apiData) throws Exception {
+    public static List<Transportmittel> parseTransportmittel(List<Monitor> monitors) {
         List<Transportmittel> transportmittelList = new ArrayList<>();
-        if (!apiData.has("monitors")) {
-            throw new Exception("Keine Transportmittel-Daten verfügbar.");
-        }
-        JSONArray monitors = apiData.getJSONArray("monitors");
-        for (int i = 0; i < monitors.length(); i++) {
-            JSONObject monitor = monitors.getJSONObject(i);
-            JSONArray lines = monitor.getJSONArray("lines");
-            for (int j = 0; j < lines.length(); j++) {
-                JSONObject line = lines.getJSONObject(j);
-                String name = line.getString("name");
-                String richtung = line.getString("towards");
-                transportmittelList.add(new Transportmittel(name, "", richtung));
+        for (Monitor monitor : monitors) {
+            for (Line line : monitor.lines()) {
+                transportmittelList.add(new Transportmittel(line.name(), "", line.towards()));
             }
         }
         return transportmittelList;
@@ -93,17 +82,71 @@ class TransportmittelHelper {
 }
 
 class AlternativeTransportHelper {
-    private static WienMobileRadAPI wienMobileRadAPI = new WienMobileRadAPI();
+
+    private static final int NEARBY_BIKE_STATIONS = 5;
+    private static final double NEARBY_RADIUS_METERS = 800;
+
+    // Die Radstationen kommen aus dem gemeinsamen Client, damit Feeds und Index nur einmal existieren
+    private static WienMobileRadAPI bikeApi() {
+        return AppContext.shared().getWienMobileRadAPI();
+    }
 
     public static List<AlternativeTransportmittel> getAlternativeTransportmittel() {
         List<AlternativeTransportmittel> alternativeTransportmittel = new ArrayList<>();
-        List<BikeStation> bikeStations = wienMobileRadAPI.getBikeStations();
+        List<BikeStation> bikeStations = bikeApi().getBikeStations();
         for (BikeStation station : bikeStations) {
             alternativeTransportmittel.add(new AlternativeTransportmittel(station.getStationId(), "Fahrrad", station.getAvailableBikes() > 0));
         }
         return alternativeTransportmittel;
     }
 
+    /**
+     * Gibt die Radstationen in der Nähe einer Haltestelle als alternative Transportmittel zurück.
+     * Ohne Koordinaten für die Haltestelle werden alle Stationen zurückgegeben.
+     * @param monitors Die Monitore der Haltestelle, deren Koordinaten verwendet werden.
+     * @return Die alternativen Transportmittel, nächstgelegene zuerst.
+     */
+    public static List<AlternativeTransportmittel> getAlternativeTransportmittel(List<Monitor> monitors) {
+        if (locate(monitors) == null) {
+            return getAlternativeTransportmittel();
+        }
+
+        List<AlternativeTransportmittel> alternativeTransportmittel = new ArrayList<>();
+        for (BikeStationIndex.Match match : nearestBikeStations(monitors, NEARBY_BIKE_STATIONS, NEARBY_RADIUS_METERS)) {
+            BikeStation station = match.station();
+            String name = station.getName() + " (" + Math.round(match.distanceMeters()) + " m)";
+            alternativeTransportmittel.add(new AlternativeTransportmittel(name, "Fahrrad", station.getAvailableBikes() > 0));
+        }
+        return alternativeTransportmittel;
+    }
+
+    private static List<BikeStationIndex.Match> nearestBikeStations(List<Monitor> monitors, int k, double radiusMeters) {
+        Monitor located = locate(monitors);
+        if (located == null) {
+            return List.of();
+        }
+        return nearestBikeStations(located.latitude(), located.longitude(), k, radiusMeters);
+    }
+
+    private static Monitor locate(List<Monitor> monitors) {
+        return monitors.stream()
+                .filter(monitor -> !Double.isNaN(monitor.latitude()) && !Double.isNaN(monitor.longitude()))
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * Sucht die nächstgelegenen Radstationen zu einer Position.
+     * @param latitude Die geografische Breite.
+     * @param longitude Die geografische Länge.
+     * @param k Die maximale Anzahl an Stationen.
+     * @param radiusMeters Der Suchradius in Metern.
+     * @return Die Treffer, aufsteigend nach Entfernung.
+     */
+    public static List<BikeStationIndex.Match> nearestBikeStations(double latitude, double longitude, int k, double radiusMeters) {
+        return bikeApi().nearestBikeStations(latitude, longitude, k, radiusMeters);
+    }
+
     public static void displayAlternativeTransport(TextArea outputArea) {
         new Thread(() -> {
             List<AlternativeTransportmittel> transportList = getAlternativeTransportmittel();
@@ -120,7 +163,7 @@ class AlternativeTransportHelper {
     public static List<String> getAlternativeTransportDetails(String transportType) {
         List<String> details = new ArrayList<>();
         if ("Fahrrad".equalsIgnoreCase(transportType)) {
-            List<BikeStation> bikeStations = wienMobileRadAPI.getBikeStations();
+            List<BikeStation> bikeStations = bikeApi().getBikeStations();
             for (BikeStation station : bikeStations) {
                 details.add("Station: " + station.getStationId() + " - Verfügbare Fahrräder: " + station.getAvailableBikes());
             }
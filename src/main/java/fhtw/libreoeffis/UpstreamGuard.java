@@ -0,0 +1,372 @@
+package fhtw.libreoeffis;
+
+import java.io.IOException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Schutzschicht für einen Upstream-Endpunkt (z. B. den Echtzeitmonitor oder die GBFS-Feeds).
+ * <ul>
+ *   <li>Timeout pro Aufruf, abgeleitet aus den gemessenen Antwortzeiten (wie beim TCP-RTO:
+ *       geglätteter Mittelwert plus vierfache Abweichung), begrenzt durch die Policy.</li>
+ *   <li>Wiederholungen mit exponentiellem Backoff und Jitter, aber nur so viele, wie das
+ *       Wiederholungsbudget hergibt (ein Anteil der normalen Aufrufe).</li>
+ *   <li>Circuit Breaker: Nach mehreren Fehlern in Folge schlagen Aufrufe sofort fehl, bis nach
+ *       einer Pause ein einzelner Probeaufruf wieder durchgelassen wird.</li>
+ *   <li>Bulkhead: Jeder Endpunkt hat eine eigene Obergrenze gleichzeitiger Aufrufe, damit ein
+ *       langsamer Endpunkt nicht alle Ressourcen der anderen belegt.</li>
+ * </ul>
+ * Die letzte bekannte Antwort liefern die Caches ({@link EchtzeitCache}, {@link GbfsFeedCache}),
+ * wenn ein Aufruf hier fehlschlägt.
+ */
+public class UpstreamGuard {
+
+    /**
+     * Einstellungen eines Endpunkts.
+     * @param minTimeout Die kürzeste Zeit, die einem Aufruf gegeben wird.
+     * @param maxTimeout Die längste Zeit, die einem Aufruf gegeben wird (auch vor der ersten Messung).
+     * @param maxRetries Die maximale Anzahl an Wiederholungen pro Aufruf.
+     * @param retryRatio Der Anteil der Aufrufe, der zusätzlich als Wiederholung erlaubt ist.
+     * @param maxConcurrent Die maximale Anzahl gleichzeitiger Aufrufe.
+     * @param failureThreshold Die Anzahl der Fehler in Folge, nach der der Circuit Breaker öffnet.
+     * @param openDuration Wie lange der Circuit Breaker offen bleibt, bevor ein Probeaufruf erfolgt.
+     */
+    public record Policy(Duration minTimeout, Duration maxTimeout, int maxRetries, double retryRatio,
+                         int maxConcurrent, int failureThreshold, Duration openDuration) {
+    }
+
+    /**
+     * Zustand des Circuit Breakers.
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Der Aufruf wurde nicht ausgeführt, weil der Circuit Breaker offen ist.
+     */
+    public static class CircuitOpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public CircuitOpenException(String endpoint) {
+            super("Dienst vorübergehend nicht erreichbar: " + endpoint);
+        }
+    }
+
+    /**
+     * Der Aufruf wurde nicht ausgeführt, weil bereits zu viele Aufrufe laufen.
+     */
+    public static class BulkheadFullException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public BulkheadFullException(String endpoint) {
+            super("Zu viele gleichzeitige Anfragen an: " + endpoint);
+        }
+    }
+
+    private static final Map<String, UpstreamGuard> GUARDS = new ConcurrentHashMap<>();
+    private static final long BASE_BACKOFF_MILLIS = 100;
+    // Höchstens so viele Wiederholungen können angespart werden
+    private static final double MAX_RETRY_TOKENS = 10;
+
+    private final String endpoint;
+    private final Policy policy;
+    private final Semaphore bulkhead;
+
+    // Geschützt durch synchronized(this)
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probeInFlight;
+    private double retryTokens = MAX_RETRY_TOKENS;
+    private double smoothedLatencyMillis = -1;
+    private double latencyDeviationMillis;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong shortCircuited = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param endpoint Der Name des Endpunkts für Meldungen und Statistiken.
+     * @param policy Die Einstellungen.
+     */
+    public UpstreamGuard(String endpoint, Policy policy) {
+        this.endpoint = endpoint;
+        this.policy = policy;
+        this.bulkhead = new Semaphore(policy.maxConcurrent());
+    }
+
+    /**
+     * Gibt die gemeinsame Schutzschicht eines Endpunkts zurück, damit alle Instanzen
+     * derselben API einen Circuit Breaker und ein Bulkhead teilen.
+     * @param endpoint Der Name des Endpunkts.
+     * @param policy Die Einstellungen, falls der Endpunkt noch nicht existiert.
+     * @return Die Schutzschicht des Endpunkts.
+     */
+    public static UpstreamGuard forEndpoint(String endpoint, Policy policy) {
+        return GUARDS.computeIfAbsent(endpoint, name -> new UpstreamGuard(name, policy));
+    }
+
+    /**
+     * @return Alle über {@link #forEndpoint(String, Policy)} angelegten Schutzschichten.
+     */
+    public static Collection<UpstreamGuard> all() {
+        return List.copyOf(GUARDS.values());
+    }
+
+    /**
+     * Führt einen Aufruf geschützt aus.
+     * @param attempt Startet einen Versuch; wird für jede Wiederholung erneut aufgerufen.
+     * @return Die Future mit dem Ergebnis oder dem Fehler des letzten Versuchs.
+     */
+    public <T> CompletableFuture<T> call(Supplier<CompletableFuture<T>> attempt) {
+        calls.incrementAndGet();
+        if (!allowRequest()) {
+            shortCircuited.incrementAndGet();
+            return CompletableFuture.failedFuture(new CircuitOpenException(endpoint));
+        }
+        if (!bulkhead.tryAcquire()) {
+            rejected.incrementAndGet();
+            releaseProbe();
+            return CompletableFuture.failedFuture(new BulkheadFullException(endpoint));
+        }
+        synchronized (this) {
+            retryTokens = Math.min(MAX_RETRY_TOKENS, retryTokens + policy.retryRatio());
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Permit permit = new Permit();
+        result.whenComplete((value, error) -> permit.release());
+        run(attempt, 0, result, permit);
+        return result;
+    }
+
+    /**
+     * Die Bulkhead-Genehmigung eines Aufrufs. Sie wird erst zurückgegeben, wenn das Ergebnis
+     * feststeht und kein Versuch mehr läuft; ein Versuch, der nach seinem Timeout noch
+     * weiterläuft, belegt den Endpunkt also weiterhin.
+     */
+    private final class Permit {
+        private final AtomicInteger holders = new AtomicInteger(1);
+
+        void retain() {
+            holders.incrementAndGet();
+        }
+
+        void release() {
+            if (holders.decrementAndGet() == 0) {
+                bulkhead.release();
+            }
+        }
+    }
+
+    private <T> void run(Supplier<CompletableFuture<T>> attempt, int retry, CompletableFuture<T> result, Permit permit) {
+        long startedAt = System.nanoTime();
+        permit.retain();
+        CompletableFuture<T> future;
+        try {
+            future = attempt.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+
+        // Der Timeout schließt nur diese Hülle ab; der Versuch selbst läuft zu Ende und gibt erst dann die Genehmigung frei
+        CompletableFuture<T> timed = new CompletableFuture<>();
+        future.whenComplete((value, error) -> {
+            boolean inTime = error == null ? timed.complete(value) : timed.completeExceptionally(error);
+            if (!inTime) {
+                // Zu spät: ein bereits geöffneter Antwortkörper wird nicht mehr gelesen
+                closeQuietly(value);
+            }
+            permit.release();
+        });
+
+        timed.orTimeout(currentTimeoutMillis(), TimeUnit.MILLISECONDS).whenComplete((value, error) -> {
+            if (error == null) {
+                onSuccess((System.nanoTime() - startedAt) / 1e6);
+                result.complete(value);
+                return;
+            }
+
+            Throwable cause = unwrap(error);
+            if (cause instanceof TimeoutException || cause instanceof HttpTimeoutException) {
+                timeouts.incrementAndGet();
+            }
+            if (!countsAsFailure(cause)) {
+                // Z. B. 404: Der Dienst funktioniert, die Anfrage war nur nicht erfüllbar
+                onSuccess((System.nanoTime() - startedAt) / 1e6);
+                result.completeExceptionally(cause);
+                return;
+            }
+            failures.incrementAndGet();
+            boolean closed = onFailure();
+
+            if (closed && retry < policy.maxRetries() && tryTakeRetryToken()) {
+                retries.incrementAndGet();
+                long backoff = BASE_BACKOFF_MILLIS << retry;
+                long delay = ThreadLocalRandom.current().nextLong(backoff / 2, backoff * 3 / 2 + 1);
+                CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS)
+                        .execute(() -> run(attempt, retry + 1, result, permit));
+            } else {
+                result.completeExceptionally(cause);
+            }
+        });
+    }
+
+    private static void closeQuietly(Object value) {
+        if (value instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception ignored) {
+                // Das Ergebnis wird ohnehin verworfen
+            }
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        Throwable cause = error;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    private static boolean countsAsFailure(Throwable cause) {
+        if (cause instanceof HttpTransport.HttpStatusException status) {
+            return status.getStatusCode() >= 500 || status.getStatusCode() == 429;
+        }
+        return !(cause instanceof CancellationException);
+    }
+
+    private synchronized boolean allowRequest() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= policy.openDuration().toMillis()) {
+            state = State.HALF_OPEN;
+        }
+        if (state == State.HALF_OPEN && !probeInFlight) {
+            probeInFlight = true;
+            return true;
+        }
+        return false;
+    }
+
+    private synchronized void releaseProbe() {
+        probeInFlight = false;
+    }
+
+    private synchronized void onSuccess(double latencyMillis) {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        probeInFlight = false;
+        if (smoothedLatencyMillis < 0) {
+            smoothedLatencyMillis = latencyMillis;
+            latencyDeviationMillis = latencyMillis / 2;
+        } else {
+            latencyDeviationMillis = 0.75 * latencyDeviationMillis + 0.25 * Math.abs(smoothedLatencyMillis - latencyMillis);
+            smoothedLatencyMillis = 0.875 * smoothedLatencyMillis + 0.125 * latencyMillis;
+        }
+    }
+
+    /**
+     * Verbucht einen Fehler und öffnet ggf. den Circuit Breaker.
+     * @return true, wenn der Circuit Breaker danach noch geschlossen ist.
+     */
+    private synchronized boolean onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= policy.failureThreshold()) {
+            if (state != State.OPEN) {
+                System.err.println("Circuit Breaker geöffnet für " + endpoint + " nach " + consecutiveFailures + " Fehlern.");
+            }
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            probeInFlight = false;
+        }
+        return state == State.CLOSED;
+    }
+
+    private synchronized boolean tryTakeRetryToken() {
+        if (retryTokens < 1) {
+            return false;
+        }
+        retryTokens--;
+        return true;
+    }
+
+    /**
+     * @return Der Timeout für den nächsten Versuch in Millisekunden.
+     */
+    public synchronized long currentTimeoutMillis() {
+        long max = policy.maxTimeout().toMillis();
+        if (smoothedLatencyMillis < 0) {
+            return max;
+        }
+        long adaptive = Math.round(smoothedLatencyMillis + 4 * latencyDeviationMillis);
+        return Math.max(policy.minTimeout().toMillis(), Math.min(max, adaptive));
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return Die Anzahl der gerade laufenden Aufrufe, einschließlich nach ihrem Timeout noch laufender Versuche.
+     */
+    public int getInFlight() {
+        return policy.maxConcurrent() - bulkhead.availablePermits();
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    public long getShortCircuited() {
+        return shortCircuited.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("UpstreamGuard %s: %s, Timeout %d ms, %d Aufrufe, %d Fehler, %d Timeouts, "
+                        + "%d Wiederholungen, %d sofort abgelehnt, %d überlastet",
+                endpoint, getState(), currentTimeoutMillis(), calls.get(), failures.get(), timeouts.get(),
+                retries.get(), shortCircuited.get(), rejected.get());
+    }
+}
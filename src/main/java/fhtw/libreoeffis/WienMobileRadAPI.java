@@ -3,69 +3,171 @@ package fhtw.libreoeffis;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class WienMobileRadAPI {
 
     private static final String BASE_URL = "https://test-api.wstw.at/gateway/WL_WIENMOBIL_API/1";
+    private static final Map<String, String> HEADERS = Map.of("User-Agent", "Mozilla/5.0");
 
-    public List<BikeStation> getBikeStations() {
-        String stationInfoUrl = BASE_URL + "/station_information.json";
-        String stationStatusUrl = BASE_URL + "/station_status.json";
-        List<BikeStation> stations = new ArrayList<>();
+    // Stationsstammdaten ändern sich selten, der Status dagegen laufend
+    private static final GbfsFeedCache.Policy STATION_INFORMATION_POLICY =
+            new GbfsFeedCache.Policy(Duration.ofHours(1), Duration.ofHours(24));
+    private static final GbfsFeedCache.Policy STATION_STATUS_POLICY =
+            new GbfsFeedCache.Policy(Duration.ofSeconds(10), Duration.ofMinutes(5));
 
-        try {
-            JsonNode stationInfoData = fetchJsonData(stationInfoUrl);
-            JsonNode stationStatusData = fetchJsonData(stationStatusUrl);
+    private final GbfsFeedCache feedCache;
+    // Stationen, Index und die Feed-Versionen, aus denen sie verknüpft wurden, werden gemeinsam ersetzt
+    private volatile Joined joined = Joined.EMPTY;
+    private final AtomicReference<CompletableFuture<List<BikeStation>>> inFlight = new AtomicReference<>();
 
-            if (stationInfoData == null || stationStatusData == null) return stations;
+    private record Joined(JsonNode info, JsonNode status, List<BikeStation> stations, BikeStationIndex index) {
+        static final Joined EMPTY = new Joined(null, null, List.of(), BikeStationIndex.EMPTY);
+    }
 
-            for (JsonNode stationNode : stationInfoData.at("/data/stations")) {
-                String stationId = stationNode.get("station_id").asText();
-                String name = stationNode.get("name").asText();
-                double lat = stationNode.get("lat").asDouble();
-                double lon = stationNode.get("lon").asDouble();
+    public WienMobileRadAPI() {
+        this(HttpTransport.shared());
+    }
 
-                JsonNode statusNode = findStationStatus(stationStatusData, stationId);
-                int availableBikes = statusNode != null ? statusNode.get("num_bikes_available").asInt() : 0;
+    public WienMobileRadAPI(HttpTransport transport) {
+        this(transport, new ObjectMapper());
+    }
 
-                stations.add(new BikeStation(stationId, name, lat, lon, availableBikes));
-            }
-        } catch (IOException e) {
+    /**
+     * Erstellt eine API-Instanz mit gemeinsam genutzter HTTP-Schicht und gemeinsamem ObjectMapper.
+     * @param transport Die HTTP-Schicht für die Anfragen.
+     * @param mapper Der ObjectMapper zum Lesen der Feeds.
+     */
+    public WienMobileRadAPI(HttpTransport transport, ObjectMapper mapper) {
+        this.feedCache = new GbfsFeedCache(transport, mapper, HEADERS);
+    }
+
+    /**
+     * Gibt die Radstationen mit ihrer Verfügbarkeit zurück. Die Feeds werden nur neu
+     * geladen, wenn ihre ttl abgelaufen ist; der Join nur, wenn sich ein Feed geändert hat.
+     * Schlägt das Laden fehl, wird der letzte Stand zurückgegeben.
+     * @return Die Stationen als unveränderliche Liste.
+     */
+    public List<BikeStation> getBikeStations() {
+        try {
+            return HttpTransport.await(refresh());
+        } catch (Exception e) {
             e.printStackTrace();
+            return joined.stations();
         }
-        return stations;
     }
 
-    private JsonNode fetchJsonData(String urlString) throws IOException {
-        URL url = new URL(urlString);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestProperty("User-Agent", "Mozilla/5.0");
+    /**
+     * Gibt die zuletzt geladenen Stationen zurück, ohne eine Anfrage zu stellen.
+     * Die Liste ist unveränderlich und kann ohne Sperren gelesen werden.
+     * @return Der aktuelle Stand der Stationen, leer falls noch nichts geladen wurde.
+     */
+    public List<BikeStation> getSnapshot() {
+        return joined.stations();
+    }
 
-        ObjectMapper mapper = new ObjectMapper();
-        return mapper.readTree(connection.getInputStream());
+    /**
+     * Sucht die nächstgelegenen Radstationen um einen Punkt im aktuellen Stationsstand.
+     * Ist bereits ein Stand geladen, wird sofort darin gesucht und die Feeds werden bei
+     * Bedarf im Hintergrund aktualisiert; nur beim ersten Aufruf wird auf das Laden gewartet.
+     * @param latitude Die geografische Breite.
+     * @param longitude Die geografische Länge.
+     * @param k Die maximale Anzahl an Stationen.
+     * @param radiusMeters Der Suchradius in Metern.
+     * @return Die Treffer, aufsteigend nach Entfernung.
+     */
+    public List<BikeStationIndex.Match> nearestBikeStations(double latitude, double longitude, int k, double radiusMeters) {
+        if (joined == Joined.EMPTY) {
+            getBikeStations();
+        } else {
+            refresh();
+        }
+        return joined.index().nearest(latitude, longitude, k, radiusMeters);
     }
 
-    private JsonNode findStationStatus(JsonNode statusData, String stationId) {
-        for (JsonNode statusNode : statusData.at("/data/stations")) {
-            if (statusNode.get("station_id").asText().equals(stationId)) {
-                return statusNode;
+    /**
+     * Lädt beide Feeds und verknüpft sie, falls sich einer geändert hat. Gleichzeitige
+     * Aufrufe teilen sich denselben laufenden Vorgang, statt eine Sperre über die
+     * Netzwerkanfragen zu halten.
+     * @return Die Stationen nach dem Laden.
+     */
+    private CompletableFuture<List<BikeStation>> refresh() {
+        CompletableFuture<List<BikeStation>> created = new CompletableFuture<>();
+        CompletableFuture<List<BikeStation>> existing = inFlight.compareAndExchange(null, created);
+        if (existing != null) {
+            return existing;
+        }
+
+        // Beide Feeds werden parallel abgerufen
+        CompletableFuture<JsonNode> stationInfoFuture = feedCache.getAsync(BASE_URL + "/station_information.json", STATION_INFORMATION_POLICY);
+        CompletableFuture<JsonNode> stationStatusFuture = feedCache.getAsync(BASE_URL + "/station_status.json", STATION_STATUS_POLICY);
+        stationInfoFuture.thenCombine(stationStatusFuture, this::join).whenComplete((stations, error) -> {
+            inFlight.compareAndSet(created, null);
+            if (error != null) {
+                created.completeExceptionally(error);
+            } else {
+                created.complete(stations);
             }
+        });
+        return created;
+    }
+
+    // Läuft nur innerhalb des einen laufenden refresh(), daher ohne Sperre
+    private List<BikeStation> join(JsonNode stationInfoData, JsonNode stationStatusData) {
+        Joined current = joined;
+        if (stationInfoData == null || stationStatusData == null) {
+            return current.stations();
         }
-        return null;
+        if (stationInfoData != current.info() || stationStatusData != current.status()) {
+            List<BikeStation> stations = joinStations(stationInfoData, stationStatusData);
+            current = new Joined(stationInfoData, stationStatusData, stations, new BikeStationIndex(stations));
+            joined = current;
+        }
+        return current.stations();
+    }
+
+    /**
+     * Verknüpft station_information und station_status über die station_id.
+     * Der Status wird in einem Durchlauf in eine Hash-Tabelle indiziert, sodass
+     * der Join linear statt quadratisch in der Anzahl der Stationen ist.
+     * @param stationInfoData Der station_information-Feed.
+     * @param stationStatusData Der station_status-Feed.
+     * @return Die verknüpften Stationen als unveränderliche Liste.
+     */
+    static List<BikeStation> joinStations(JsonNode stationInfoData, JsonNode stationStatusData) {
+        JsonNode statusNodes = stationStatusData.at("/data/stations");
+        Map<String, Integer> availableBikesById = new HashMap<>(statusNodes.size() * 2);
+        for (JsonNode statusNode : statusNodes) {
+            availableBikesById.put(statusNode.get("station_id").asText(), statusNode.path("num_bikes_available").asInt());
+        }
+
+        JsonNode stationNodes = stationInfoData.at("/data/stations");
+        List<BikeStation> stations = new ArrayList<>(stationNodes.size());
+        for (JsonNode stationNode : stationNodes) {
+            String stationId = stationNode.get("station_id").asText();
+            String name = stationNode.get("name").asText();
+            double lat = stationNode.get("lat").asDouble();
+            double lon = stationNode.get("lon").asDouble();
+            int availableBikes = availableBikesById.getOrDefault(stationId, 0);
+
+            stations.add(new BikeStation(stationId, name, lat, lon, availableBikes));
+        }
+        return List.copyOf(stations);
     }
 }
 
 class BikeStation {
-    private String stationId;
-    private String name;
-    private double latitude;
-    private double longitude;
-    private int availableBikes;
+    private final String stationId;
+    private final String name;
+    private final double latitude;
+    private final double longitude;
+    private final int availableBikes;
 
     public BikeStation(String stationId, String name, double latitude, double longitude, int availableBikes) {
         this.stationId = stationId;
@@ -83,6 +185,14 @@ class BikeStation {
         return name;
     }
 
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
     public int getAvailableBikes() {
         return availableBikes;
     }
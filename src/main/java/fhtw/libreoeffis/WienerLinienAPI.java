@@ -1,16 +1,24 @@
 package fhtw.libreoeffis;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.FileWriter;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import org.json.JSONArray;
-import org.json.JSONObject;
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Klasse zur Kommunikation mit der Wiener Linien API.
@@ -21,52 +29,275 @@ public class WienerLinienAPI {
 
     // Basis-URL der Wiener Linien Monitor-API
     private static final String BASE_URL_MONITOR = "https://www.wienerlinien.at/ogd_realtime/monitor";
-    private static final String LOG_FILE = "requests.log";
+
+    // Grenzen für Sammelabfragen mit mehreren stopId-Parametern
+    private static final int MAX_STOP_IDS_PER_REQUEST = 30;
+    private static final int MAX_URL_LENGTH = 2000;
+
+    // Der Monitor antwortet normalerweise in wenigen hundert Millisekunden
+    private static final UpstreamGuard.Policy MONITOR_POLICY = new UpstreamGuard.Policy(
+            Duration.ofSeconds(1), Duration.ofSeconds(8), 2, 0.1, 32, 5, Duration.ofSeconds(15));
+
+    private static final Metrics.Timer UPSTREAM_LATENCY = Metrics.upstreamLatency("monitor");
+    private static final Metrics.Timer PARSE_TIME = Metrics.parseTime("monitor");
+
+    private final EchtzeitCache cache;
+    private final HttpTransport transport;
+    private final UpstreamGuard guard = UpstreamGuard.forEndpoint("wienerlinien-monitor", MONITOR_POLICY);
+    private final RequestBudget requestBudget = new RequestBudget();
+    private final List<Consumer<String>> stopAccessListeners = new CopyOnWriteArrayList<>();
+
+    public WienerLinienAPI() {
+        this(new EchtzeitCache());
+    }
 
     /**
-     * Führt eine Anfrage an die API aus und gibt die Antwort als String zurück.
+     * Erstellt eine API-Instanz mit einem eigenen Echtzeit-Cache.
+     * @param cache Der Cache für die Antworten pro Haltestelle.
+     */
+    public WienerLinienAPI(EchtzeitCache cache) {
+        this(cache, HttpTransport.shared());
+    }
+
+    /**
+     * Erstellt eine API-Instanz mit eigenem Cache und eigener HTTP-Schicht.
+     * @param cache Der Cache für die Antworten pro Haltestelle.
+     * @param transport Die HTTP-Schicht für die Anfragen.
+     */
+    public WienerLinienAPI(EchtzeitCache cache, HttpTransport transport) {
+        this.cache = cache;
+        this.transport = transport;
+    }
+
+    /**
+     * Führt eine Anfrage an die API aus und gibt die enthaltenen Monitore zurück.
      * @param urlString Der URL-String für die Anfrage.
-     * @return Die Antwort der API als JSON-String.
+     * @return Die Monitore der Antwort.
      * @throws Exception Wenn ein Fehler bei der Anfrage auftritt.
      */
-    private String sendRequest(String urlString) throws Exception {
-        URL url = new URL(urlString);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod("GET");
+    private List<Monitor> sendRequest(String urlString) throws Exception {
+        return HttpTransport.await(sendRequestAsync(urlString));
+    }
 
-        int responseCode = connection.getResponseCode();
-        if (responseCode != 200) {
-            throw new Exception("Fehler bei der API-Anfrage: HTTP " + responseCode);
+    /**
+     * Führt eine Anfrage an die API asynchron aus, ohne einen Thread zu blockieren.
+     * Die Antwort wird direkt aus dem Stream dekodiert, ohne sie vorher als String zu puffern.
+     * Timeout, Wiederholungen und Circuit Breaker übernimmt der {@link UpstreamGuard} des Monitors.
+     * @param urlString Der URL-String für die Anfrage.
+     * @return Die Future mit den Monitoren der Antwort.
+     */
+    private CompletableFuture<List<Monitor>> sendRequestAsync(String urlString) {
+        return guard.call(() -> {
+            long startedAt = System.nanoTime();
+            return transport.getStreamAsync(urlString, Map.of())
+                    .thenApply(body -> {
+                        long parseStartedAt = System.nanoTime();
+                        try (InputStream in = body) {
+                            return MonitorDecoder.decode(in);
+                        } catch (IOException e) {
+                            throw new CompletionException(e);
+                        } finally {
+                            PARSE_TIME.recordSince(parseStartedAt);
+                        }
+                    })
+                    .whenComplete((monitors, error) -> logRequest(urlString, error, startedAt));
+        });
+    }
+
+    /**
+     * Gibt die Echtzeitinformationen für eine Haltestelle basierend auf ihrer Stop-ID zurück.
+     * Die Antwort wird aus dem Cache geliefert, solange sie gültig ist.
+     * @param stopId Die ID der Haltestelle.
+     * @return Die Monitore der Haltestelle.
+     * @throws Exception Wenn ein Fehler auftritt.
+     */
+    public List<Monitor> getEchtzeitDaten(String stopId) throws Exception {
+        notifyStopAccess(stopId);
+        return cache.get(stopId, this::fetchEchtzeitDaten);
+    }
+
+    /**
+     * Gibt die Echtzeitinformationen für mehrere Haltestellen zurück.
+     * Nicht gecachte Haltestellen werden in möglichst wenigen Anfragen gemeinsam abgerufen
+     * und die Monitore anschließend wieder den Haltestellen zugeordnet.
+     * @param stopIds Die IDs der Haltestellen.
+     * @return Die Monitore pro Stop-ID, in der Reihenfolge der Anfrage.
+     * @throws Exception Wenn ein Fehler auftritt.
+     */
+    public Map<String, List<Monitor>> getEchtzeitDaten(Collection<String> stopIds) throws Exception {
+        for (String stopId : stopIds) {
+            notifyStopAccess(stopId);
         }
+        return cache.getAll(stopIds, this::fetchEchtzeitDatenBatch);
+    }
 
-        BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-        StringBuilder response = new StringBuilder();
-        String inputLine;
-        while ((inputLine = in.readLine()) != null) {
-            response.append(inputLine);
+    /**
+     * Lädt die Echtzeitdaten mehrerer Haltestellen neu und legt sie im Cache ab,
+     * unabhängig davon, ob die bisherigen Einträge noch gültig sind.
+     * Die Anfragen werden nicht im {@link RequestBudget} verbucht, der Aufrufer
+     * reserviert sie vorher selbst (siehe {@link #countRequests(Collection)}).
+     * @param stopIds Die IDs der Haltestellen.
+     * @return Die neu geladenen Monitore pro Stop-ID.
+     * @throws Exception Wenn ein Fehler auftritt.
+     */
+    Map<String, List<Monitor>> refreshEchtzeitDaten(Collection<String> stopIds) throws Exception {
+        Map<String, List<Monitor>> daten = loadEchtzeitDatenBatch(partitionStopIds(List.copyOf(stopIds)));
+        for (Map.Entry<String, List<Monitor>> entry : daten.entrySet()) {
+            cache.put(entry.getKey(), entry.getValue());
         }
-        in.close();
+        return daten;
+    }
 
-        logRequest(urlString);
+    /**
+     * Gibt zurück, wie viele Upstream-Anfragen für die Haltestellen nötig wären.
+     * @param stopIds Die IDs der Haltestellen.
+     * @return Die Anzahl der Sammelanfragen.
+     */
+    int countRequests(Collection<String> stopIds) {
+        return partitionStopIds(List.copyOf(stopIds)).size();
+    }
 
-        return response.toString();
+    /**
+     * Registriert einen Beobachter, der bei jedem Zugriff auf eine Haltestelle
+     * benachrichtigt wird, z. B. um beliebte Haltestellen vorzuladen.
+     * @param listener Der Beobachter, erhält die Stop-ID.
+     */
+    public void addStopAccessListener(Consumer<String> listener) {
+        stopAccessListeners.add(listener);
+    }
+
+    private void notifyStopAccess(String stopId) {
+        for (Consumer<String> listener : stopAccessListeners) {
+            listener.accept(stopId);
+        }
     }
 
     /**
-     * Gibt die Rohdaten der Echtzeitinformationen für eine Haltestelle basierend auf ihrer Stop-ID zurück.
+     * Gibt das Anfragebudget zurück, in dem alle Upstream-Anfragen verbucht werden.
+     * @return Das Anfragebudget.
+     */
+    public RequestBudget getRequestBudget() {
+        return requestBudget;
+    }
+
+    /**
+     * Ruft die Echtzeitdaten einer Haltestelle direkt von der API ab.
      * @param stopId Die ID der Haltestelle.
-     * @return Die Echtzeitdaten als JSON-String.
+     * @return Die Monitore der Haltestelle.
+     * @throws Exception Wenn ein Fehler auftritt.
+     */
+    private List<Monitor> fetchEchtzeitDaten(String stopId) throws Exception {
+        requestBudget.record(1);
+        return sendRequest(BASE_URL_MONITOR + "?stopId=" + stopId);
+    }
+
+    /**
+     * Ruft die Echtzeitdaten mehrerer Haltestellen gesammelt von der API ab.
+     * @param stopIds Die IDs der Haltestellen.
+     * @return Die Monitore pro Stop-ID.
      * @throws Exception Wenn ein Fehler auftritt.
      */
-    public String getEchtzeitDaten(String stopId) throws Exception {
-        String url = BASE_URL_MONITOR + "?stopId=" + stopId;
-        String response = sendRequest(url);
+    private Map<String, List<Monitor>> fetchEchtzeitDatenBatch(List<String> stopIds) throws Exception {
+        List<List<String>> batches = partitionStopIds(stopIds);
+        requestBudget.record(batches.size());
+        return loadEchtzeitDatenBatch(batches);
+    }
+
+    /**
+     * Führt die Sammelanfragen aus und ordnet die Monitore den Stop-IDs zu.
+     * @param batches Die Stop-IDs gruppiert pro Anfrage.
+     * @return Die Monitore pro Stop-ID.
+     * @throws Exception Wenn ein Fehler auftritt.
+     */
+    private Map<String, List<Monitor>> loadEchtzeitDatenBatch(List<List<String>> batches) throws Exception {
+        // Alle Teilanfragen laufen parallel über die gemeinsame HTTP-Schicht
+        List<CompletableFuture<List<Monitor>>> responses = new ArrayList<>();
+        for (List<String> batch : batches) {
+            StringBuilder url = new StringBuilder(BASE_URL_MONITOR);
+            for (int i = 0; i < batch.size(); i++) {
+                url.append(i == 0 ? "?" : "&").append("stopId=").append(batch.get(i));
+            }
+            responses.add(sendRequestAsync(url.toString()));
+        }
+
+        Map<String, List<Monitor>> result = new HashMap<>();
+        for (int i = 0; i < batches.size(); i++) {
+            result.putAll(groupByStop(HttpTransport.await(responses.get(i)), batches.get(i)));
+        }
+        return result;
+    }
+
+    /**
+     * Teilt die Stop-IDs so auf, dass keine Anfrage die maximale Anzahl an IDs
+     * oder die maximale URL-Länge überschreitet.
+     * @param stopIds Die IDs der Haltestellen.
+     * @return Die Stop-IDs gruppiert pro Anfrage.
+     */
+    private List<List<String>> partitionStopIds(List<String> stopIds) {
+        List<List<String>> batches = new ArrayList<>();
+        List<String> current = new ArrayList<>();
+        int urlLength = BASE_URL_MONITOR.length();
+
+        for (String stopId : stopIds) {
+            int paramLength = "&stopId=".length() + stopId.length();
+            if (!current.isEmpty() && (current.size() >= MAX_STOP_IDS_PER_REQUEST || urlLength + paramLength > MAX_URL_LENGTH)) {
+                batches.add(current);
+                current = new ArrayList<>();
+                urlLength = BASE_URL_MONITOR.length();
+            }
+            current.add(stopId);
+            urlLength += paramLength;
+        }
+        if (!current.isEmpty()) {
+            batches.add(current);
+        }
+        return batches;
+    }
 
-        if (!response.trim().startsWith("{")) {
-            throw new Exception("Ungültige API-Antwort: " + response);
+    /**
+     * Ordnet die Monitore einer Sammelabfrage über ihre RBL-Nummer den Stop-IDs zu.
+     * Haltestellen ohne Monitor erhalten eine leere Liste.
+     * @param monitors Die Monitore der Sammelabfrage.
+     * @param stopIds Die angefragten Stop-IDs.
+     * @return Die Monitore pro Stop-ID.
+     */
+    private Map<String, List<Monitor>> groupByStop(List<Monitor> monitors, List<String> stopIds) {
+        Map<String, List<Monitor>> result = new HashMap<>();
+        for (String stopId : stopIds) {
+            result.put(stopId, new ArrayList<>());
+        }
+        for (Monitor monitor : monitors) {
+            List<Monitor> stopMonitors = result.get(monitor.stopId());
+            if (stopMonitors != null) {
+                stopMonitors.add(monitor);
+            }
         }
+        return result;
+    }
 
-        return response; // Rohdaten zurückgeben
+    /**
+     * Gibt die Abfahrten mehrerer Haltestellen als einzelne Zeilen zurück, z. B. für eine
+     * Anzeige, die nur geänderte Abfahrten neu darstellt (siehe {@link DepartureDelta}).
+     * @param stopIds Die IDs der Haltestellen.
+     * @return Die Abfahrten pro Stop-ID, in der Reihenfolge der Anfrage.
+     * @throws Exception Wenn ein Fehler auftritt.
+     */
+    public Map<String, List<DepartureRow>> getDepartures(Collection<String> stopIds) throws Exception {
+        return toDepartures(getEchtzeitDaten(stopIds));
+    }
+
+    /**
+     * Wandelt Monitore pro Stop-ID in Abfahrtszeilen um.
+     * @param daten Die Monitore pro Stop-ID.
+     * @return Die Abfahrten pro Stop-ID in derselben Reihenfolge.
+     */
+    static Map<String, List<DepartureRow>> toDepartures(Map<String, List<Monitor>> daten) {
+        long now = System.currentTimeMillis();
+        Map<String, List<DepartureRow>> result = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Monitor>> entry : daten.entrySet()) {
+            result.put(entry.getKey(), DepartureRow.fromMonitors(entry.getKey(), entry.getValue(), now));
+        }
+        return result;
     }
 
     /**
@@ -76,40 +307,48 @@ public class WienerLinienAPI {
      * @throws Exception Wenn ein Fehler auftritt.
      */
     public String getFormattedEchtzeitDaten(String stopId) throws Exception {
-        String rawData = getEchtzeitDaten(stopId);
-        JSONObject jsonResponse = new JSONObject(rawData);
-        JSONArray monitors = jsonResponse.getJSONObject("data").getJSONArray("monitors");
+        return formatEchtzeitDaten(getEchtzeitDaten(stopId));
+    }
+
+    /**
+     * Formatiert die Echtzeitdaten mehrerer Haltestellen, die gemeinsam abgerufen werden.
+     * @param stopIds Die IDs der Haltestellen.
+     * @return Die formatierten Echtzeitdaten aller Haltestellen als String.
+     * @throws Exception Wenn ein Fehler auftritt.
+     */
+    public String getFormattedEchtzeitDaten(Collection<String> stopIds) throws Exception {
+        StringBuilder result = new StringBuilder();
+        for (List<Monitor> monitors : getEchtzeitDaten(stopIds).values()) {
+            if (!result.isEmpty()) {
+                result.append("\n");
+            }
+            result.append(formatEchtzeitDaten(monitors));
+        }
+        return result.toString();
+    }
 
+    /**
+     * Formatiert die Monitore einer Haltestelle für die Anzeige.
+     * @param monitors Die Monitore der Haltestelle.
+     * @return Die formatierten Echtzeitdaten als String.
+     */
+    static String formatEchtzeitDaten(List<Monitor> monitors) {
         if (monitors.isEmpty()) {
             return "Keine Echtzeitdaten für diese Haltestelle verfügbar.";
         }
 
         StringBuilder result = new StringBuilder("Echtzeitinformationen:\n");
 
-        for (int i = 0; i < monitors.length(); i++) {
-            JSONObject monitor = monitors.getJSONObject(i);
-            JSONObject locationStop = monitor.getJSONObject("locationStop").getJSONObject("properties");
-            String stopName = locationStop.getString("title");
-
-            result.append("Haltestelle: ").append(stopName).append("\n");
+        for (Monitor monitor : monitors) {
+            result.append("Haltestelle: ").append(monitor.title()).append("\n");
 
-            JSONArray lines = monitor.getJSONArray("lines");
-            for (int j = 0; j < lines.length(); j++) {
-                JSONObject line = lines.getJSONObject(j);
-                String lineName = line.getString("name");
-                String direction = line.getString("towards");
-                JSONArray departures = line.getJSONObject("departures").getJSONArray("departure");
+            for (Line line : monitor.lines()) {
+                result.append("  Linie: ").append(line.name())
+                        .append(", Richtung: ").append(line.towards()).append("\n");
 
-                result.append("  Linie: ").append(lineName)
-                        .append(", Richtung: ").append(direction).append("\n");
-
-                for (int k = 0; k < departures.length(); k++) {
-                    JSONObject departure = departures.getJSONObject(k);
-                    String timePlanned = departure.getJSONObject("departureTime").getString("timePlanned");
-                    int countdown = departure.getJSONObject("departureTime").getInt("countdown");
-
-                    result.append("    Geplante Abfahrt: ").append(timePlanned)
-                            .append(" (Countdown: ").append(countdown).append(" Minuten)\n");
+                for (Departure departure : line.departures()) {
+                    result.append("    Geplante Abfahrt: ").append(departure.timePlanned())
+                            .append(" (Countdown: ").append(departure.countdown()).append(" Minuten)\n");
                 }
             }
         }
@@ -119,6 +358,10 @@ public class WienerLinienAPI {
 
     /**
      * Berechnet eine Route zwischen zwei Haltestellen basierend auf ihren Stop-IDs.
+     * Ist ein GTFS-Fahrplan geladen, sucht der {@link JourneyPlanner} lokal die früheste
+     * Ankunft inklusive Umstiegen. Sonst (oder wenn der Fahrplan die Haltestellen nicht kennt)
+     * wird anhand der Echtzeitdaten eine gemeinsame Linie gesucht; der {@link LineStopIndex}
+     * schränkt die Suche vorab auf die laut Fahrwegen gemeinsamen Linien ein.
      * Fügt die Abfahrtszeit und Ankunftszeit sowie die Fahrzeit hinzu.
      * @param startStopId Die Stop-ID der Start-Haltestelle.
      * @param zielStopId Die Stop-ID der Ziel-Haltestelle.
@@ -126,58 +369,72 @@ public class WienerLinienAPI {
      * @throws Exception Wenn ein Fehler auftritt.
      */
     public String calculateRoute(String startStopId, String zielStopId) throws Exception {
-        JSONObject startData = new JSONObject(getEchtzeitDaten(startStopId)).getJSONObject("data");
-        JSONObject zielData = new JSONObject(getEchtzeitDaten(zielStopId)).getJSONObject("data");
+        JourneyPlanner planner = JourneyPlanner.sharedAsync().getNow(null);
+        if (planner != null) {
+            Optional<JourneyPlanner.Journey> journey = planner.plan(startStopId, zielStopId, ZonedDateTime.now(JourneyPlanner.ZONE));
+            if (journey.isPresent()) {
+                return journey.get().format();
+            }
+        }
 
-        JSONArray startMonitors = startData.getJSONArray("monitors");
-        JSONArray zielMonitors = zielData.getJSONArray("monitors");
+        // Laut Fahrwegen ohne gemeinsame Linie gibt es keine direkte Verbindung, dafür sind keine Echtzeitdaten nötig
+        Set<String> commonLines = null;
+        LineStopIndex lineIndex = LineStopIndex.sharedIfLoaded();
+        if (lineIndex != null && startStopId.matches("\\d+") && zielStopId.matches("\\d+")) {
+            int start = Integer.parseInt(startStopId);
+            int ziel = Integer.parseInt(zielStopId);
+            if (lineIndex.contains(start) && lineIndex.contains(ziel)) {
+                commonLines = new HashSet<>(lineIndex.getCommonLines(start, ziel));
+                if (commonLines.isEmpty()) {
+                    return "Keine direkte Verbindung zwischen Start und Ziel gefunden.";
+                }
+            }
+        }
+
+        Map<String, List<Monitor>> daten = getEchtzeitDaten(List.of(startStopId, zielStopId));
+        List<Monitor> startMonitors = daten.get(startStopId);
+        List<Monitor> zielMonitors = daten.get(zielStopId);
 
         if (startMonitors.isEmpty() || zielMonitors.isEmpty()) {
             return "Keine Daten für Start oder Ziel verfügbar.";
         }
 
-        for (int i = 0; i < startMonitors.length(); i++) {
-            JSONObject startMonitor = startMonitors.getJSONObject(i);
-            JSONArray startLines = startMonitor.getJSONArray("lines");
-
-            for (int j = 0; j < startLines.length(); j++) {
-                JSONObject startLine = startLines.getJSONObject(j);
-                String startLineName = startLine.getString("name");
-                JSONArray startDepartures = startLine.getJSONObject("departures").getJSONArray("departure");
-
-                for (int k = 0; k < zielMonitors.length(); k++) {
-                    JSONObject zielMonitor = zielMonitors.getJSONObject(k);
-                    JSONArray zielLines = zielMonitor.getJSONArray("lines");
-
-                    for (int l = 0; l < zielLines.length(); l++) {
-                        JSONObject zielLine = zielLines.getJSONObject(l);
-                        String zielLineName = zielLine.getString("name");
-
-                        if (startLineName.equals(zielLineName)) {
-                            JSONObject firstDeparture = startDepartures.getJSONObject(0);
-                            String departureTime = formatDateTime(firstDeparture.getJSONObject("departureTime").getString("timePlanned"));
+        // Linien am Ziel nach Namen, damit jede Linie am Start nur einmal nachgeschlagen wird
+        Map<String, Line> zielLines = new HashMap<>();
+        Map<String, Monitor> zielMonitorByLine = new HashMap<>();
+        for (Monitor zielMonitor : zielMonitors) {
+            for (Line zielLine : zielMonitor.lines()) {
+                if (!zielLine.departures().isEmpty() && zielLines.putIfAbsent(zielLine.name(), zielLine) == null) {
+                    zielMonitorByLine.put(zielLine.name(), zielMonitor);
+                }
+            }
+        }
 
-                            ZonedDateTime startTime = ZonedDateTime.parse(departureTime, DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+        for (Monitor startMonitor : startMonitors) {
+            for (Line startLine : startMonitor.lines()) {
+                if (startLine.departures().isEmpty() || (commonLines != null && !commonLines.contains(startLine.name()))) {
+                    continue;
+                }
+                Line zielLine = zielLines.get(startLine.name());
+                if (zielLine == null) {
+                    continue;
+                }
+                Monitor zielMonitor = zielMonitorByLine.get(startLine.name());
 
-                            String zielTimePlanned = formatDateTime(zielLine.getJSONObject("departures")
-                                    .getJSONArray("departure")
-                                    .getJSONObject(0)
-                                    .getJSONObject("departureTime")
-                                    .getString("timePlanned"));
+                String departureTime = formatDateTime(startLine.departures().get(0).timePlanned());
+                ZonedDateTime startTime = ZonedDateTime.parse(departureTime, DateTimeFormatter.ISO_OFFSET_DATE_TIME);
 
-                            ZonedDateTime zielTime = ZonedDateTime.parse(zielTimePlanned, DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+                String zielTimePlanned = formatDateTime(zielLine.departures().get(0).timePlanned());
+                ZonedDateTime zielTime = ZonedDateTime.parse(zielTimePlanned, DateTimeFormatter.ISO_OFFSET_DATE_TIME);
 
-                            Duration travelTime = Duration.between(startTime, zielTime);
+                Duration travelTime = Duration.between(startTime, zielTime);
 
-                            return "Gemeinsame Linie: " + startLineName + "\n" +
-                                    "  Start: " + startMonitor.getJSONObject("locationStop").getJSONObject("properties").getString("title") + "\n" +
-                                    "  Abfahrtszeit: " + startTime.format(DateTimeFormatter.ofPattern("HH:mm")) + "\n" +
-                                    "  Ziel: " + zielMonitor.getJSONObject("locationStop").getJSONObject("properties").getString("title") + "\n" +
-                                    "  Ankunftszeit: " + zielTime.format(DateTimeFormatter.ofPattern("HH:mm")) + "\n" +
-                                    "  Fahrtdauer: " + travelTime.toMinutes() + " Minuten.";
-                        }
-                    }
-                }
+                return "Gemeinsame Linie: " + startLine.name() + "\n" +
+                        "  Start: " + startMonitor.title() + "\n" +
+                        "  Abfahrtszeit: " + startTime.format(DateTimeFormatter.ofPattern("HH:mm")) + "\n" +
+                        "  Ziel: " + zielMonitor.title() + "\n" +
+                        "  Ankunftszeit: " + zielTime.format(DateTimeFormatter.ofPattern("HH:mm")) + "\n" +
+                        "  Fahrtdauer: " + travelTime.toMinutes() + " Minuten.";
             }
         }
 
@@ -194,15 +451,22 @@ public class WienerLinienAPI {
     }
 
     /**
-     * Protokolliert eine API-Anfrage in der Log-Datei.
+     * Protokolliert eine API-Anfrage asynchron über den {@link RequestLogger}, inklusive Status und Dauer,
+     * und verbucht sie in den {@link Metrics}.
      * @param request Die Anfrage-URL.
+     * @param error Der Fehler der Anfrage oder null.
+     * @param startedAt Der Startzeitpunkt aus {@link System#nanoTime()}.
      */
-    private void logRequest(String request) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(LOG_FILE, true))) {
-            writer.write("Anfrage: " + request);
-            writer.newLine();
-        } catch (Exception e) {
-            System.err.println("Fehler beim Schreiben der Log-Datei: " + e.getMessage());
+    private void logRequest(String request, Throwable error, long startedAt) {
+        long latencyNanos = System.nanoTime() - startedAt;
+        UPSTREAM_LATENCY.record(latencyNanos);
+        String status = error == null ? "200" : Metrics.errorStatus(error);
+        if (error != null) {
+            Metrics.upstreamErrors("monitor", status).increment();
+        }
+        RequestLogger logger = RequestLogger.shared();
+        if (logger != null) {
+            logger.log(request, status, TimeUnit.NANOSECONDS.toMillis(latencyNanos));
         }
     }
 
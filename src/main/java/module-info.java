@@ -1,7 +1,8 @@
 module fhtw.libreoeffis {
     requires javafx.controls;
     requires javafx.fxml;
-    requires org.json;
+    requires java.net.http;
+    requires jdk.httpserver;
     requires com.fasterxml.jackson.databind;
 
 
@@ -0,0 +1,72 @@
+package fhtw.libreoeffis;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class DepartureDeltaTest {
+
+    private static final DateTimeFormatter API_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+    private static final ZonedDateTime NOW = ZonedDateTime.parse("2026-10-19T12:00:00.000+0200", API_TIME);
+
+    private static String at(int minutes) {
+        return NOW.plusMinutes(minutes).format(API_TIME);
+    }
+
+    private static Map<String, DepartureRow> state(Departure... departures) {
+        Monitor monitor = new Monitor("4600", "Karlsplatz", 48.2, 16.37,
+                List.of(new Line("U1", "LEOPOLDAU", "ptMetro", List.of(departures))));
+        return DepartureDelta.index(DepartureRow.fromMonitors("4600", List.of(monitor), NOW.toInstant().toEpochMilli()));
+    }
+
+    @Test
+    void detectsAddedChangedAndRemovedDepartures() {
+        Map<String, DepartureRow> previous = state(
+                new Departure(at(2), at(2), 2),
+                new Departure(at(5), at(5), 5));
+        Map<String, DepartureRow> current = state(
+                new Departure(at(5), at(7), 7),
+                new Departure(at(8), null, 8));
+
+        DepartureDelta delta = DepartureDelta.between(previous, current);
+
+        assertEquals(List.of(at(8)), delta.added().stream().map(DepartureRow::timePlanned).toList());
+        assertEquals(List.of(at(7)), delta.changed().stream().map(DepartureRow::timeReal).toList());
+        assertEquals(List.of(at(2)), delta.removed().stream().map(DepartureRow::timePlanned).toList());
+    }
+
+    @Test
+    void isEmptyWithoutChanges() {
+        Map<String, DepartureRow> previous = state(new Departure(at(3), at(3), 3));
+        assertTrue(DepartureDelta.between(previous, state(new Departure(at(3), at(3), 3))).isEmpty());
+    }
+
+    @Test
+    void formatsDeltaLinesForSubscribers() {
+        List<String> lines = SubscriptionHub.diff(state(new Departure(at(3), at(3), 3)), state());
+        assertEquals(List.of("- 4600\tU1\tLEOPOLDAU\t" + at(3) + "\t" + at(3) + "\t3"), lines);
+    }
+
+    @Test
+    void usesRequestedStopIdForMonitorWithoutRbl() {
+        // Der Decoder setzt eine fehlende RBL-Nummer auf ""
+        Monitor monitor = new Monitor("", "Ersatzhaltestelle", Double.NaN, Double.NaN,
+                List.of(new Line("E", "KARLSPLATZ", "ptBusCity", List.of(new Departure(at(3), at(3), 3)))));
+        List<DepartureRow> rows = DepartureRow.fromMonitors("4600", List.of(monitor), NOW.toInstant().toEpochMilli());
+        assertEquals(List.of("4600"), rows.stream().map(DepartureRow::stopId).toList());
+    }
+
+    @Test
+    void countsDownLocallyFromExpectedDeparture() {
+        DepartureRow row = state(new Departure(at(4), at(4), 4)).values().iterator().next();
+        long now = NOW.toInstant().toEpochMilli();
+        assertEquals(4, row.countdownAt(now));
+        assertEquals(1, row.countdownAt(now + 3 * 60_000));
+        assertEquals(0, row.countdownAt(now + 10 * 60_000));
+    }
+}
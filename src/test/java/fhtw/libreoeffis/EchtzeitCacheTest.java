@@ -0,0 +1,135 @@
+package fhtw.libreoeffis;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class EchtzeitCacheTest {
+
+    private static List<Monitor> monitors(String stopId) {
+        return List.of(new Monitor(stopId, "Haltestelle " + stopId, Double.NaN, Double.NaN, List.of()));
+    }
+
+    @Test
+    void servesFreshEntryWithoutLoading() throws Exception {
+        EchtzeitCache cache = new EchtzeitCache();
+        AtomicInteger loads = new AtomicInteger();
+        EchtzeitCache.Loader loader = stopId -> {
+            loads.incrementAndGet();
+            return monitors(stopId);
+        };
+
+        List<Monitor> first = cache.get("4600", loader);
+        List<Monitor> second = cache.get("4600", loader);
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    void mergesConcurrentLoadsOfSameStop() throws Exception {
+        EchtzeitCache cache = new EchtzeitCache();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        EchtzeitCache.Loader loader = stopId -> {
+            loads.incrementAndGet();
+            started.countDown();
+            release.await();
+            return monitors(stopId);
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<Monitor>>> results = new ArrayList<>();
+            results.add(executor.submit(() -> cache.get("4600", loader)));
+            started.await();
+            for (int i = 0; i < 3; i++) {
+                results.add(executor.submit(() -> cache.get("4600", loader)));
+            }
+            // Den Wartenden Zeit geben, sich dem laufenden Ladevorgang anzuschließen
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<List<Monitor>> result : results) {
+                assertEquals("4600", result.get().get(0).stopId());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void fallsBackToLastEntryWhenReloadFails() throws Exception {
+        EchtzeitCache cache = new EchtzeitCache(Duration.ZERO, Duration.ZERO, 16);
+        List<Monitor> loaded = cache.get("4600", EchtzeitCacheTest::monitors);
+
+        List<Monitor> fallback = cache.get("4600", stopId -> {
+            throw new IOException("Upstream nicht erreichbar");
+        });
+
+        assertSame(loaded, fallback);
+        assertEquals(1, cache.getFallbacks());
+    }
+
+    @Test
+    void propagatesErrorWithoutPreviousEntry() {
+        EchtzeitCache cache = new EchtzeitCache();
+        assertThrows(IOException.class, () -> cache.get("4600", stopId -> {
+            throw new IOException("Upstream nicht erreichbar");
+        }));
+    }
+
+    @Test
+    void loadsOnlyMissingStopsInOneBatch() throws Exception {
+        EchtzeitCache cache = new EchtzeitCache();
+        cache.put("4600", monitors("4600"));
+        List<List<String>> batches = new ArrayList<>();
+
+        Map<String, List<Monitor>> result = cache.getAll(List.of("4601", "4600", "4602"), stopIds -> {
+            batches.add(stopIds);
+            Map<String, List<Monitor>> values = new LinkedHashMap<>();
+            stopIds.forEach(stopId -> values.put(stopId, monitors(stopId)));
+            return values;
+        });
+
+        assertEquals(List.of(List.of("4601", "4602")), batches);
+        assertEquals(List.of("4601", "4600", "4602"), new ArrayList<>(result.keySet()));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedEntry() throws Exception {
+        EchtzeitCache cache = new EchtzeitCache(Duration.ofMinutes(1), Duration.ZERO, 2);
+        cache.put("4600", monitors("4600"));
+        cache.put("4601", monitors("4601"));
+        // 4600 wird zuletzt verwendet, also fällt 4601 beim nächsten Eintrag heraus
+        cache.get("4600", stopId -> {
+            throw new AssertionError("4600 ist im Cache");
+        });
+        cache.put("4602", monitors("4602"));
+        assertEquals(1, cache.getEvictions());
+
+        AtomicInteger loads = new AtomicInteger();
+        cache.get("4601", stopId -> {
+            loads.incrementAndGet();
+            return monitors(stopId);
+        });
+        assertEquals(1, loads.get());
+        assertEquals(2, cache.size());
+    }
+}
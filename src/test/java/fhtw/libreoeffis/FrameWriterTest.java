@@ -0,0 +1,58 @@
+package fhtw.libreoeffis;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Prüft die Schreib-Warteschlange einer gerahmten Verbindung.
+ */
+class FrameWriterTest {
+
+    @Test
+    void writesFramesInQueueOrder() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (TCPCommunication.FrameWriter writer = new TCPCommunication.FrameWriter(out)) {
+            writer.send("1", "OK", "Stand");
+            for (int i = 0; i < 100; i++) {
+                writer.send("1", "UPD", "+ " + i);
+            }
+        }
+
+        TCPCommunication.LineReader in = new TCPCommunication.LineReader(
+                new ByteArrayInputStream(out.toByteArray()));
+        List<String> frames = new ArrayList<>();
+        String header;
+        while ((header = in.readLine()) != null) {
+            String[] parts = header.split(" ");
+            frames.add(parts[1] + " " + new String(in.readBytes(Integer.parseInt(parts[2])), StandardCharsets.UTF_8));
+        }
+        assertEquals(101, frames.size());
+        assertEquals("OK Stand", frames.get(0));
+        for (int i = 0; i < 100; i++) {
+            assertEquals("UPD + " + i, frames.get(i + 1));
+        }
+    }
+
+    @Test
+    void rejectsFramesAfterWriteFailure() throws Exception {
+        OutputStream broken = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Verbindung getrennt");
+            }
+        };
+        TCPCommunication.FrameWriter writer = new TCPCommunication.FrameWriter(broken);
+        writer.send("1", "OK", "Stand");
+        writer.close();
+        assertThrows(IOException.class, () -> writer.send("1", "UPD", "+ 1"));
+    }
+}
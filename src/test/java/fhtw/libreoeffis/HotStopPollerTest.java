@@ -0,0 +1,39 @@
+package fhtw.libreoeffis;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Prüft, dass der Poller nach dem Anhalten nicht weiterläuft und wieder gestartet werden kann.
+ */
+class HotStopPollerTest {
+
+    private static void awaitCycles(HotStopPoller poller, long cycles) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (poller.getCycles() < cycles && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(poller.getCycles() >= cycles, "zu wenige Durchläufe: " + poller.getCycles());
+    }
+
+    @Test
+    void restartsAfterStop() throws InterruptedException {
+        WienerLinienAPI api = new WienerLinienAPI(new EchtzeitCache(),
+                new HttpTransport(Duration.ofSeconds(1), Duration.ofSeconds(1)));
+        HotStopPoller poller = new HotStopPoller(api, 5, Duration.ofMillis(10));
+
+        poller.start();
+        awaitCycles(poller, 2);
+        poller.stop();
+        long stopped = poller.getCycles();
+        Thread.sleep(50);
+        assertEquals(stopped, poller.getCycles());
+
+        poller.start();
+        awaitCycles(poller, stopped + 2);
+        poller.stop();
+    }
+}
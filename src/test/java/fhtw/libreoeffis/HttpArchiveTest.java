@@ -0,0 +1,75 @@
+package fhtw.libreoeffis;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Prüft das Schreiben und Lesen von HTTP-Aufzeichnungen.
+ */
+class HttpArchiveTest {
+
+    private Path archive;
+
+    @BeforeEach
+    void createPath() throws IOException {
+        archive = Files.createTempDirectory("aufzeichnung").resolve("anfragen.bin.gz");
+    }
+
+    @Test
+    void readsWhatWasWrittenAndSharesBodies() throws IOException {
+        byte[] body = "{\"data\":{}}".getBytes(StandardCharsets.UTF_8);
+        try (HttpArchive.Writer writer = new HttpArchive.Writer(archive)) {
+            writer.append(new HttpArchive.Exchange("https://a", 200, 1200, Map.of("etag", "1"), body));
+            writer.append(new HttpArchive.Exchange("https://a", 200, 800, Map.of(), body.clone()));
+            assertEquals(1, writer.getBodies());
+        }
+
+        List<HttpArchive.Exchange> exchanges = HttpArchive.read(archive);
+        assertEquals(2, exchanges.size());
+        assertEquals(Map.of("etag", "1"), exchanges.get(0).headers());
+        assertArrayEquals(body, exchanges.get(1).body());
+    }
+
+    @Test
+    void truncatesLongErrorMessages() throws IOException {
+        String message = "Fehler ".repeat(20_000) + "ö";
+        try (HttpArchive.Writer writer = new HttpArchive.Writer(archive)) {
+            writer.append(new HttpArchive.Exchange("https://a", 0, 5, Map.of(HttpArchive.ERROR_HEADER, message), null));
+        }
+
+        HttpArchive.Exchange exchange = HttpArchive.read(archive).get(0);
+        String stored = exchange.headers().get(HttpArchive.ERROR_HEADER);
+        assertTrue(message.startsWith(stored));
+        assertTrue(stored.getBytes(StandardCharsets.UTF_8).length <= 65535);
+        assertNull(exchange.body());
+    }
+
+    @Test
+    void rejectsUnknownBodyReference() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(Files.newOutputStream(archive)))) {
+            out.writeInt(0x4C4F4841);
+            out.writeInt(1);
+            out.writeByte(2);
+            out.writeUTF("https://a");
+            out.writeInt(200);
+            out.writeLong(10);
+            out.writeShort(0);
+            out.writeInt(3);
+        }
+        assertThrows(IOException.class, () -> HttpArchive.read(archive));
+    }
+}
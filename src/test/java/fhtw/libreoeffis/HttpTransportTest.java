@@ -0,0 +1,129 @@
+package fhtw.libreoeffis;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Prüft die {@link HttpTransport} gegen einen lokalen Server anstelle der echten APIs.
+ */
+class HttpTransportTest {
+
+    private static final String BODY = "{\"data\":{\"monitors\":[]}}";
+
+    private HttpServer server;
+    private final CountDownLatch release = new CountDownLatch(1);
+    private HttpTransport transport;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+
+        server.createContext("/gzip", exchange -> {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(BODY.getBytes(StandardCharsets.UTF_8));
+            }
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, compressed.size());
+            try (OutputStream out = exchange.getResponseBody()) {
+                compressed.writeTo(out);
+            }
+        });
+        server.createContext("/feed", exchange -> {
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                exchange.getResponseHeaders().set("ETag", "\"v1\"");
+                exchange.sendResponseHeaders(200, BODY.length());
+                exchange.getResponseBody().write(BODY.getBytes(StandardCharsets.UTF_8));
+            }
+            exchange.close();
+        });
+        server.createContext("/unavailable", exchange -> {
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+        });
+        server.createContext("/stall", exchange -> {
+            // Header und ein Teil des Körpers kommen an, der Rest nie
+            exchange.sendResponseHeaders(200, 1000);
+            exchange.getResponseBody().write("{\"data\":".getBytes(StandardCharsets.UTF_8));
+            exchange.getResponseBody().flush();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+        server.start();
+        transport = new HttpTransport(Duration.ofSeconds(2), Duration.ofMillis(500));
+    }
+
+    @AfterEach
+    void stopServer() {
+        release.countDown();
+        server.stop(0);
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private String getString(String url) throws Exception {
+        try (InputStream in = HttpTransport.await(transport.getStreamAsync(url, Map.of()))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void decodesGzipBody() throws Exception {
+        assertEquals(BODY, getString(url("/gzip")));
+    }
+
+    @Test
+    void returnsNotModifiedWithoutBody() throws Exception {
+        HttpTransport.Response first = HttpTransport.await(transport.sendAsync(url("/feed"), Map.of()));
+        first.body().close();
+        assertEquals("\"v1\"", first.headers().firstValue("ETag").orElse(null));
+
+        HttpTransport.Response second = HttpTransport.await(
+                transport.sendAsync(url("/feed"), Map.of("If-None-Match", "\"v1\"")));
+        assertTrue(second.isNotModified());
+        assertNull(second.body());
+    }
+
+    @Test
+    void mapsServerErrorToStatusException() {
+        HttpTransport.HttpStatusException error = assertThrows(HttpTransport.HttpStatusException.class,
+                () -> getString(url("/unavailable")));
+        assertEquals(503, error.getStatusCode());
+    }
+
+    @Test
+    void failsWhenBodyStallsAfterHeaders() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            assertThrows(HttpTimeoutException.class, () -> getString(url("/stall")));
+        });
+    }
+}
@@ -0,0 +1,81 @@
+package fhtw.libreoeffis;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.util.List;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Prüft den Connection Scan gegen den kleinen GTFS-Datensatz unter src/test/resources/gtfs.
+ */
+class JourneyPlannerTest {
+
+    private static final LocalDate DATE = LocalDate.of(2026, 10, 19);
+
+    private static JourneyPlanner planner;
+
+    @BeforeAll
+    static void loadTimetable() throws Exception {
+        planner = JourneyPlanner.load(Path.of(JourneyPlannerTest.class.getResource("/gtfs").toURI()));
+    }
+
+    private static ZonedDateTime at(int hour, int minute) {
+        return ZonedDateTime.of(DATE, LocalTime.of(hour, minute), JourneyPlanner.ZONE);
+    }
+
+    private static int seconds(int hour, int minute) {
+        return hour * 3600 + minute * 60;
+    }
+
+    @Test
+    void changesLinesWithTransferTime() {
+        JourneyPlanner.Journey journey = planner.plan("A", "C", at(7, 55)).orElseThrow();
+
+        // 13A um 08:11 ist mit zwei Minuten Umstiegszeit ab 08:10 nicht erreichbar
+        List<JourneyPlanner.Leg> rides = journey.legs().stream().filter(leg -> !leg.isWalk()).toList();
+        assertEquals(List.of("U1", "13A"), rides.stream().map(JourneyPlanner.Leg::line).toList());
+        assertEquals(seconds(8, 15), rides.get(1).departure());
+        assertEquals(seconds(8, 0), journey.departure());
+        assertEquals(seconds(8, 25), journey.arrival());
+        assertEquals(1, journey.transfers());
+    }
+
+    @Test
+    void resolvesStopsByName() {
+        JourneyPlanner.Journey journey = planner.plan("Alpha", "Gamma", at(7, 55)).orElseThrow();
+        assertEquals(seconds(8, 25), journey.arrival());
+    }
+
+    @Test
+    void usesTripsOfPreviousServiceDayAfterMidnight() {
+        // Die Fahrt um 24:30 gehört zum Betriebstag davor
+        JourneyPlanner.Journey journey = planner.plan("E", "F", at(0, 10)).orElseThrow();
+        assertEquals(seconds(0, 30), journey.departure());
+        assertEquals(seconds(0, 40), journey.arrival());
+    }
+
+    @Test
+    void usesTripsOfNextServiceDayBeforeMidnight() {
+        JourneyPlanner.Journey journey = planner.plan("G", "H", at(23, 50)).orElseThrow();
+        assertEquals(seconds(24, 15), journey.departure());
+        assertEquals("00:25", JourneyPlanner.formatTime(journey.arrival()));
+    }
+
+    @Test
+    void readsRowsWithOmittedTrailingFields() {
+        // In stops.txt fehlen bei Alpha location_type und parent_station, bei B1 nur parent_station
+        JourneyPlanner.Journey journey = planner.plan("Alpha", "B1", at(7, 55)).orElseThrow();
+        assertEquals(seconds(8, 10), journey.arrival());
+    }
+
+    @Test
+    void findsNothingBeyondMaximumJourneyTime() {
+        assertTrue(planner.plan("A", "C", at(9, 0)).isEmpty());
+    }
+}
@@ -0,0 +1,70 @@
+package fhtw.libreoeffis;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Prüft den Streaming-Decoder gegen die kleine Monitor-Antwort unter src/test/resources/fixtures.
+ */
+class MonitorDecoderTest {
+
+    private static List<Monitor> decodeFixture() throws IOException {
+        try (InputStream in = MonitorDecoderTest.class.getResourceAsStream("/fixtures/monitor.json")) {
+            return MonitorDecoder.decode(in);
+        }
+    }
+
+    @Test
+    void decodesStopLinesAndDepartures() throws IOException {
+        Monitor karlsplatz = decodeFixture().get(0);
+
+        assertEquals("4600", karlsplatz.stopId());
+        assertEquals("Karlsplatz", karlsplatz.title());
+        assertEquals(48.200758, karlsplatz.latitude(), 1e-9);
+        assertEquals(16.3676, karlsplatz.longitude(), 1e-9);
+
+        Line line = karlsplatz.lines().get(0);
+        assertEquals("U1", line.name());
+        assertEquals("LEOPOLDAU", line.towards());
+        assertEquals("ptMetro", line.type());
+        // Abfahrten ohne geplante Zeit werden ausgelassen
+        assertEquals(List.of(
+                new Departure("2024-06-03T12:12:00.000+0200", "2024-06-03T12:12:15.000+0200", 2),
+                new Departure("2024-06-03T12:15:00.000+0200", null, 5)), line.departures());
+    }
+
+    @Test
+    void defaultsMissingRblAndCoordinates() throws IOException {
+        Monitor replacement = decodeFixture().get(1);
+
+        assertEquals("", replacement.stopId());
+        assertEquals("Ersatzhaltestelle", replacement.title());
+        assertTrue(Double.isNaN(replacement.latitude()));
+        assertTrue(Double.isNaN(replacement.longitude()));
+        assertEquals(List.of(), replacement.lines().get(0).departures());
+    }
+
+    @Test
+    void decodesSameResultFromString() throws IOException {
+        String json = "{\"unbekannt\":[{\"a\":1}],\"data\":{\"monitors\":[]}}";
+        assertEquals(List.of(), MonitorDecoder.decode(json));
+    }
+
+    @Test
+    void rejectsResponseWithoutMonitors() {
+        assertThrows(IOException.class, () -> MonitorDecoder.decode("{\"message\":{\"value\":\"Fehler\"}}"));
+        assertThrows(IOException.class, () -> MonitorDecoder.decode("[]"));
+    }
+
+    @Test
+    void keepsMissingRealtimeAsNull() throws IOException {
+        assertNull(decodeFixture().get(0).lines().get(0).departures().get(1).timeReal());
+    }
+}
@@ -0,0 +1,83 @@
+package fhtw.libreoeffis;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Prüft, dass ein geschriebener Snapshot dasselbe Verzeichnis liefert wie die CSV.
+ */
+class StopRegistrySnapshotTest {
+
+    private static final String CSV = """
+            StopID;StopText;Latitude;Longitude
+            4602;Karlsplatz;48.2006;16.3696
+            4600;Karlsplatz;48.2008;16.3676
+            1401;Stephansplatz;48.2083;16.3713
+            147;Aspernstraße;;
+            """;
+
+    private Path csv;
+    private Path snapshot;
+    private long checksum;
+
+    @BeforeEach
+    void writeCsv() throws IOException {
+        Path directory = Files.createTempDirectory("haltepunkte");
+        csv = Files.writeString(directory.resolve("haltepunkte.csv"), CSV, StandardCharsets.UTF_8);
+        snapshot = directory.resolve("haltepunkte.bin");
+        checksum = StopRegistrySnapshot.checksum(csv);
+    }
+
+    @Test
+    void readsWhatWasWritten() throws IOException {
+        StopRegistry registry = StopRegistry.load(csv);
+        StopRegistrySnapshot.write(registry, snapshot, checksum);
+        StopRegistry restored = StopRegistrySnapshot.read(snapshot, checksum);
+
+        assertNotNull(restored);
+        assertEquals(registry.size(), restored.size());
+        for (int stopId : new int[] {4602, 4600, 1401, 147, 9999}) {
+            assertEquals(registry.getName(stopId), restored.getName(stopId));
+        }
+        assertEquals("Aspernstraße", restored.getName(147));
+        assertEquals(registry.getDisplayNames(), restored.getDisplayNames());
+        assertArrayEquals(new int[] {4600, 4602}, restored.getIdsByName("karlsplatz"));
+        assertEquals(48.2083, restored.getLatitude(1401), 1e-9);
+    }
+
+    @Test
+    void ignoresSnapshotOfOtherCsv() throws IOException {
+        StopRegistrySnapshot.write(StopRegistry.load(csv), snapshot, checksum);
+        assertNull(StopRegistrySnapshot.read(snapshot, checksum + 1));
+    }
+
+    @Test
+    void rejectsNameReferenceOutOfRange() throws IOException {
+        StopRegistry registry = StopRegistry.load(csv);
+        StopRegistrySnapshot.write(registry, snapshot, checksum);
+
+        // Erster Namensverweis liegt nach Kopf, Breiten, Längen und IDs
+        long nameRefs = 40 + 20L * registry.size();
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, Integer.MAX_VALUE), nameRefs);
+        }
+
+        assertThrows(IOException.class, () -> StopRegistrySnapshot.read(snapshot, checksum));
+        // Das Laden über die CSV erstellt den Snapshot neu
+        assertEquals("Karlsplatz", StopRegistry.load(csv, snapshot).getName(4600));
+        assertNotNull(StopRegistrySnapshot.read(snapshot, checksum));
+    }
+}
@@ -0,0 +1,58 @@
+package fhtw.libreoeffis;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+class UpstreamGuardTest {
+
+    private static UpstreamGuard guard(int maxConcurrent) {
+        return new UpstreamGuard("test", new UpstreamGuard.Policy(Duration.ofMillis(50), Duration.ofMillis(50),
+                0, 0, maxConcurrent, 100, Duration.ofSeconds(30)));
+    }
+
+    @Test
+    void keepsPermitUntilTimedOutAttemptFinishes() throws Exception {
+        UpstreamGuard guard = guard(1);
+        CompletableFuture<String> attempt = new CompletableFuture<>();
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> guard.call(() -> attempt).get());
+        assertInstanceOf(TimeoutException.class, error.getCause());
+        assertEquals(1, guard.getInFlight());
+        assertInstanceOf(UpstreamGuard.BulkheadFullException.class,
+                assertThrows(ExecutionException.class, () -> guard.call(() -> attempt).get()).getCause());
+
+        attempt.complete("spät");
+        assertEquals(0, guard.getInFlight());
+        assertEquals("ok", guard.call(() -> CompletableFuture.completedFuture("ok")).get());
+    }
+
+    @Test
+    void closesResultThatArrivesAfterTimeout() throws Exception {
+        UpstreamGuard guard = guard(4);
+        CompletableFuture<AutoCloseable> attempt = new CompletableFuture<>();
+        assertThrows(ExecutionException.class, () -> guard.call(() -> attempt).get());
+
+        AtomicBoolean closed = new AtomicBoolean();
+        attempt.complete(() -> closed.set(true));
+        assertTrue(closed.get());
+    }
+
+    @Test
+    void releasesPermitAfterFailure() {
+        UpstreamGuard guard = guard(1);
+        assertThrows(ExecutionException.class,
+                () -> guard.call(() -> CompletableFuture.failedFuture(new IOException("Upstream nicht erreichbar"))).get());
+        assertEquals(0, guard.getInFlight());
+        assertEquals(1, guard.getFailures());
+    }
+}